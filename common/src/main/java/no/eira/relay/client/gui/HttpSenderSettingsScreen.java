@@ -1,5 +1,6 @@
 package no.eira.relay.client.gui;
 
+import no.eira.relay.CommonClass;
 import no.eira.relay.Constants;
 import no.eira.relay.blockentity.HttpSenderBlockEntity;
 import no.eira.relay.enums.EnumAuthType;
@@ -16,12 +17,9 @@ import net.minecraft.client.gui.screens.Screen;
 import net.minecraft.network.chat.Component;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
-import java.util.concurrent.CompletableFuture;
 
 public class HttpSenderSettingsScreen extends Screen {
 
@@ -365,56 +363,58 @@ public class HttpSenderSettingsScreen extends Screen {
         testResultColor = 0xFFFF55;
         testButton.active = false;
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                HttpClient client = HttpClient.newHttpClient();
-                HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                        .uri(new URI(urlText));
-
-                // Add auth headers for testing
-                switch (authType) {
-                    case BEARER -> {
-                        if (authValue != null && !authValue.isEmpty()) {
-                            requestBuilder.header("Authorization", "Bearer " + authValue);
-                        }
-                    }
-                    case BASIC -> {
-                        if (authValue != null && !authValue.isEmpty()) {
-                            String encoded = Base64.getEncoder().encodeToString(
-                                authValue.getBytes(StandardCharsets.UTF_8));
-                            requestBuilder.header("Authorization", "Basic " + encoded);
-                        }
+        try {
+            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                    .uri(new URI(urlText));
+
+            // Add auth headers for testing
+            switch (authType) {
+                case BEARER -> {
+                    if (authValue != null && !authValue.isEmpty()) {
+                        requestBuilder.header("Authorization", "Bearer " + authValue);
                     }
-                    case CUSTOM_HEADER -> {
-                        if (customHeaderName != null && !customHeaderName.isEmpty()) {
-                            requestBuilder.header(customHeaderName, customHeaderValue != null ? customHeaderValue : "");
-                        }
+                }
+                case BASIC -> {
+                    if (authValue != null && !authValue.isEmpty()) {
+                        String encoded = Base64.getEncoder().encodeToString(
+                            authValue.getBytes(StandardCharsets.UTF_8));
+                        requestBuilder.header("Authorization", "Basic " + encoded);
                     }
                 }
-
-                if (httpMethod == EnumHttpMethod.POST) {
-                    requestBuilder.header("Content-Type", "application/json")
-                            .POST(HttpRequest.BodyPublishers.ofString("{}", StandardCharsets.UTF_8));
-                } else {
-                    requestBuilder.GET();
+                case CUSTOM_HEADER -> {
+                    if (customHeaderName != null && !customHeaderName.isEmpty()) {
+                        requestBuilder.header(customHeaderName, customHeaderValue != null ? customHeaderValue : "");
+                    }
                 }
+            }
 
-                HttpResponse<String> response = client.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofString());
-                int status = response.statusCode();
+            if (httpMethod == EnumHttpMethod.POST) {
+                requestBuilder.header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{}", StandardCharsets.UTF_8));
+            } else {
+                requestBuilder.GET();
+            }
 
-                if (status >= 200 && status < 300) {
-                    testResult = "OK: " + status;
+            // Use the shared client so the test reuses pooled connections
+            CommonClass.HTTP_CLIENT.sendAsync(requestBuilder).whenComplete((response, error) -> {
+                if (error != null) {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    testResult = "Error: " + cause.getMessage();
+                    testResultColor = 0xFF5555;
+                } else if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                    testResult = "OK: " + response.statusCode();
                     testResultColor = 0x55FF55;
                 } else {
-                    testResult = "Error: " + status;
+                    testResult = "Error: " + response.statusCode();
                     testResultColor = 0xFF5555;
                 }
-            } catch (Exception e) {
-                testResult = "Error: " + e.getMessage();
-                testResultColor = 0xFF5555;
-            }
+                testButton.active = true;
+            });
+        } catch (Exception e) {
+            testResult = "Error: " + e.getMessage();
+            testResultColor = 0xFF5555;
             testButton.active = true;
-        });
+        }
     }
 
     private boolean checkValues() {
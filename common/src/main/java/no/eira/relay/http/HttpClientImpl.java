@@ -2,6 +2,7 @@ package no.eira.relay.http;
 
 import no.eira.relay.Constants;
 import no.eira.relay.http.api.IHttpClient;
+import no.eira.relay.platform.Services;
 
 import java.io.IOException;
 import java.net.URI;
@@ -10,11 +11,90 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpClientImpl implements IHttpClient {
 
+    // Shared by every sender block so keep-alive connections and HTTP/2 sessions are reused.
+    // Built lazily because the config is not loaded yet when CommonClass is initialized.
+    private volatile HttpClient client;
+    private volatile Duration requestTimeout;
+
+    /**
+     * Get the shared client, creating it from config on first use
+     */
+    private HttpClient client() {
+        HttpClient current = client;
+        if (current == null) {
+            synchronized (this) {
+                current = client;
+                if (current == null) {
+                    current = createClient();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private HttpClient createClient() {
+        int threads = Services.HTTP_CONFIG.getClientThreads();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "EiraRelay-HttpClient-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        requestTimeout = Duration.ofSeconds(Services.HTTP_CONFIG.getRequestTimeoutSeconds());
+        HttpClient.Version version = Services.HTTP_CONFIG.preferHttp2()
+                ? HttpClient.Version.HTTP_2
+                : HttpClient.Version.HTTP_1_1;
+
+        Constants.LOG.info("Created shared HTTP client ({}, {} threads)", version, threads);
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofSeconds(Services.HTTP_CONFIG.getConnectTimeoutSeconds()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    private HttpRequest buildPost(String url, String parameters, Map<String, String> headers) throws URISyntaxException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(new URI(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(parameters, StandardCharsets.UTF_8));
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.timeout(requestTimeout).build();
+    }
+
+    private HttpRequest buildGet(String fullUrl, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(fullUrl))
+                .GET();
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.timeout(requestTimeout).build();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request) {
+        HttpClient shared = client();
+        return shared.sendAsync(request.timeout(requestTimeout).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
     @Override
     public String sendPost(String url, String parameters) {
         return sendPost(url, parameters, Collections.emptyMap());
@@ -23,18 +103,9 @@ public class HttpClientImpl implements IHttpClient {
     @Override
     public String sendPost(String url, String parameters, Map<String, String> headers) {
         try {
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(new URI(url))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(parameters, StandardCharsets.UTF_8));
-
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                builder.header(header.getKey(), header.getValue());
-            }
-
-            HttpRequest request = builder.build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpClient shared = client();
+            HttpRequest request = buildPost(url, parameters, headers);
+            HttpResponse<String> response = shared.send(request, HttpResponse.BodyHandlers.ofString());
             Constants.LOG.debug("HTTP POST {} - Status: {}", url, response.statusCode());
             return response.body();
         } catch (URISyntaxException | IOException | InterruptedException e) {
@@ -52,19 +123,9 @@ public class HttpClientImpl implements IHttpClient {
     public String sendGet(String url, String parameters, Map<String, String> headers) {
         try {
             String fullUrl = parameters.isEmpty() ? url : url + "?" + parameters;
-            URI uri = URI.create(fullUrl);
-
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .GET();
-
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                builder.header(header.getKey(), header.getValue());
-            }
-
-            HttpRequest request = builder.build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpClient shared = client();
+            HttpRequest request = buildGet(fullUrl, headers);
+            HttpResponse<String> response = shared.send(request, HttpResponse.BodyHandlers.ofString());
             Constants.LOG.debug("HTTP GET {} - Status: {}", fullUrl, response.statusCode());
             return response.body();
         } catch (IOException | InterruptedException e) {
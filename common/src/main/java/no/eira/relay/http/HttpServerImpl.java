@@ -4,17 +4,22 @@ import no.eira.relay.http.api.IHttpHandler;
 import no.eira.relay.http.api.IHttpServer;
 import no.eira.relay.platform.Services;
 import no.eira.relay.utils.ImplLoader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import org.apache.http.HttpMessage;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.security.Provider;
 import java.util.*;
 
 public class HttpServerImpl implements IHttpServer {
 
     private HttpServer server;
+    private RequestExecutor requestExecutor;
 
     //private Map<Integer, IHttpHandler> handlerMap;
     private Map<String, IHttpHandler> handlerMap;
@@ -28,10 +33,15 @@ public class HttpServerImpl implements IHttpServer {
         handlerToRegisterQueue = new HashMap<String, IHttpHandler>();
     }
 
+    private static final byte[] OVERLOADED_RESPONSE =
+        "{\"error\": \"Server busy\"}".getBytes(StandardCharsets.UTF_8);
+
     public boolean startServer() throws IOException {
         System.out.println("PORT: " + Services.HTTP_CONFIG.getPort());
+        requestExecutor = RequestExecutor.boundedPool(
+            Services.HTTP_CONFIG.getWorkerThreads(), Services.HTTP_CONFIG.getWorkerQueueCapacity());
         server = HttpServer.create(new InetSocketAddress(Services.HTTP_CONFIG.getPort()), 0);
-        server.setExecutor(null); // creates a default executor
+        server.setExecutor(requestExecutor);
         server.start();
         this.handleHandlersInQueue();
         return true;
@@ -96,10 +106,37 @@ public class HttpServerImpl implements IHttpServer {
     }
 
     private void registerAndPutInMap(IHttpHandler handler) {
-        server.createContext(handler.getUrl(), handler);
+        HttpHandler wrappedHandler = exchange -> {
+            // Shed load when the executor is saturated
+            if (RequestExecutor.isShedding()) {
+                sendOverloadedResponse(exchange);
+                return;
+            }
+            handler.handle(exchange);
+        };
+        server.createContext(handler.getUrl(), wrappedHandler);
         handlerMap.put(handler.getUrl(), handler);
     }
 
+    /**
+     * Send 503 Service Unavailable response
+     */
+    private void sendOverloadedResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, OVERLOADED_RESPONSE.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(OVERLOADED_RESPONSE);
+        }
+    }
+
+    /**
+     * Get the request executor, or null if the server has not been started
+     */
+    public RequestExecutor getRequestExecutor() {
+        return requestExecutor;
+    }
+
     @Override
     public void stopServer() {
         if(server != null){
@@ -107,6 +144,9 @@ public class HttpServerImpl implements IHttpServer {
             server = null;
             //System.gc();
         }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
     }
 
 
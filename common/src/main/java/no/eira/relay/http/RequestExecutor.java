@@ -0,0 +1,124 @@
+package no.eira.relay.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for HTTP exchanges with load shedding.
+ *
+ * Runs each exchange on a fixed platform pool with a bounded queue. When the
+ * queue is full, the exchange is run inline on the dispatcher thread with a
+ * shedding flag set, so the server can answer 503 immediately instead of
+ * dropping the connection.
+ */
+public class RequestExecutor implements Executor {
+
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    private final ExecutorService delegate;
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private RequestExecutor(ExecutorService delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Create an executor backed by a fixed platform thread pool.
+     * @param threads Number of worker threads
+     * @param queueCapacity Requests that may wait for a worker before shedding
+     */
+    public static RequestExecutor boundedPool(int threads, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "EiraRelay-HTTP-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+        return new RequestExecutor(pool);
+    }
+
+    /**
+     * Whether the exchange being handled on this thread was shed because the
+     * executor is saturated. Checked by the server before delegating.
+     */
+    public static boolean isShedding() {
+        return SHEDDING.get() != null;
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        queuedRequests.incrementAndGet();
+        try {
+            delegate.execute(() -> runTracked(exchange));
+        } catch (RejectedExecutionException e) {
+            queuedRequests.decrementAndGet();
+            shed(exchange);
+        }
+    }
+
+    private void runTracked(Runnable exchange) {
+        queuedRequests.decrementAndGet();
+        activeRequests.incrementAndGet();
+        try {
+            exchange.run();
+        } finally {
+            activeRequests.decrementAndGet();
+            completedRequests.increment();
+        }
+    }
+
+    private void shed(Runnable exchange) {
+        rejectedRequests.increment();
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    }
+
+    /**
+     * Stop accepting work and wait briefly for in-flight requests
+     */
+    public void shutdown() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public int getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    public long getCompletedRequests() {
+        return completedRequests.sum();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+}
@@ -6,6 +6,16 @@ public interface IHttpServerConfig {
 
     int getPort();
 
+    // Request execution
+    int getWorkerThreads();
+    int getWorkerQueueCapacity();
+
+    // Outbound requests (HTTP Sender)
+    int getConnectTimeoutSeconds();
+    int getRequestTimeoutSeconds();
+    boolean preferHttp2();
+    int getClientThreads();
+
     List<GlobalParam> getGlobalParams();
 
     String getGlobalRedirect();
@@ -3,6 +3,8 @@ package org.eira.core;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
+import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
 import org.eira.core.api.EiraAPI;
 import org.eira.core.api.events.*;
 import org.eira.core.impl.EiraAPIImpl;
@@ -33,9 +35,16 @@ public class EiraCore {
         // Register debug subscribers
         registerDebugSubscribers();
 
+        // Deliver MAIN_THREAD events on the server thread
+        NeoForge.EVENT_BUS.addListener(this::onServerTick);
+
         LOG.info("Eira Core initialized - Event bus ready for cross-mod communication");
     }
 
+    private void onServerTick(ServerTickEvent.Post event) {
+        apiInstance.onServerTick();
+    }
+
     /**
      * Register debug subscribers to verify event publishing works.
      * These log events at DEBUG level for troubleshooting.
@@ -13,4 +13,10 @@ public record AdventureCompletedEvent(
     long durationSeconds
 ) implements EiraEvent {
     public static final String TYPE = "ADVENTURE_COMPLETED";
+
+    /** Routing key for keyed subscriptions: the adventure ID */
+    @Override
+    public Object routingKey() {
+        return adventureId;
+    }
 }
@@ -12,4 +12,10 @@ public record AdventureFailedEvent(
     String reason
 ) implements EiraEvent {
     public static final String TYPE = "ADVENTURE_FAILED";
+
+    /** Routing key for keyed subscriptions: the adventure ID */
+    @Override
+    public Object routingKey() {
+        return adventureId;
+    }
 }
@@ -11,4 +11,10 @@ public record AdventureStartedEvent(
     UUID teamId
 ) implements EiraEvent {
     public static final String TYPE = "ADVENTURE_STARTED";
+
+    /** Routing key for keyed subscriptions: the adventure ID */
+    @Override
+    public Object routingKey() {
+        return adventureId;
+    }
 }
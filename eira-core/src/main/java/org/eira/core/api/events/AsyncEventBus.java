@@ -0,0 +1,81 @@
+package org.eira.core.api.events;
+
+import java.util.function.Consumer;
+
+/**
+ * Event bus whose handlers can run off the publishing thread.
+ *
+ * The bus returned by EiraAPI.events() in Eira Core implements this. Code that
+ * may run against another bus should check first:
+ * <pre>
+ * if (EiraAPI.get().events() instanceof AsyncEventBus bus) {
+ *     // Handlers that touch the world run on the server thread
+ *     bus.subscribe(MyEvent.class, event -> {
+ *         // Change blocks
+ *     }, DeliveryMode.MAIN_THREAD);
+ * }
+ * </pre>
+ */
+public interface AsyncEventBus extends EiraEventBus {
+
+    /**
+     * Subscribe to events of a specific type with a delivery mode.
+     * ASYNC and MAIN_THREAD subscribers get a bounded queue; when it is full
+     * the newest event is dropped.
+     *
+     * @param eventType The class of events to subscribe to
+     * @param handler   The handler to call when events are published
+     * @param mode      Where the handler runs
+     * @param <T>       The event type
+     */
+    default <T extends EiraEvent> void subscribe(Class<T> eventType, Consumer<T> handler, DeliveryMode mode) {
+        subscribe(eventType, handler, mode, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Subscribe to events of a specific type with a delivery mode and a
+     * policy for when the subscriber falls behind.
+     *
+     * @param eventType The class of events to subscribe to
+     * @param handler   The handler to call when events are published
+     * @param mode      Where the handler runs
+     * @param overflow  What to drop when the subscriber's queue is full (ignored for SYNC)
+     * @param <T>       The event type
+     */
+    <T extends EiraEvent> void subscribe(Class<T> eventType, Consumer<T> handler,
+                                         DeliveryMode mode, OverflowPolicy overflow);
+
+    /**
+     * Subscribe to events of a specific type with a matching routing key,
+     * with a delivery mode and overflow policy.
+     *
+     * @param eventType The class of events to subscribe to
+     * @param key       Routing key to match against EiraEvent.routingKey()
+     * @param handler   The handler to call when matching events are published
+     * @param mode      Where the handler runs
+     * @param overflow  What to drop when the subscriber's queue is full (ignored for SYNC)
+     * @param <T>       The event type
+     */
+    <T extends EiraEvent> void subscribe(Class<T> eventType, Object key, Consumer<T> handler,
+                                         DeliveryMode mode, OverflowPolicy overflow);
+
+    /**
+     * Unsubscribe a handler subscribed without a routing key.
+     * Events already queued for an ASYNC or MAIN_THREAD handler are discarded.
+     *
+     * @param eventType The class of events
+     * @param handler   The handler to remove
+     * @param <T>       The event type
+     */
+    @Override
+    <T extends EiraEvent> void unsubscribe(Class<T> eventType, Consumer<T> handler);
+
+    /**
+     * Publish an event to all subscribers.
+     * SYNC handlers run before this returns; others are only queued.
+     *
+     * @param event The event to publish
+     */
+    @Override
+    void publish(EiraEvent event);
+}
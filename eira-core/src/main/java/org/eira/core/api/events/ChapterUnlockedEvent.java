@@ -11,4 +11,10 @@ public record ChapterUnlockedEvent(
     String chapterId
 ) implements EiraEvent {
     public static final String TYPE = "CHAPTER_UNLOCKED";
+
+    /** Routing key for keyed subscriptions: the story ID */
+    @Override
+    public Object routingKey() {
+        return storyId;
+    }
 }
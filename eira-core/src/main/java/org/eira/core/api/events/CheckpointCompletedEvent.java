@@ -13,4 +13,10 @@ public record CheckpointCompletedEvent(
 ) implements EiraEvent {
     /** Event type identifier for cross-mod compatibility */
     public static final String TYPE = "CHECKPOINT_COMPLETED";
+
+    /** Routing key for keyed subscriptions: the game ID */
+    @Override
+    public Object routingKey() {
+        return gameId;
+    }
 }
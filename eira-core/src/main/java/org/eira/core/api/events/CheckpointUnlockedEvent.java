@@ -11,4 +11,10 @@ public record CheckpointUnlockedEvent(
     String checkpointId
 ) implements EiraEvent {
     public static final String TYPE = "CHECKPOINT_UNLOCKED";
+
+    /** Routing key for keyed subscriptions: the adventure ID */
+    @Override
+    public Object routingKey() {
+        return adventureId;
+    }
 }
@@ -0,0 +1,22 @@
+package org.eira.core.api.events;
+
+/**
+ * Where a subscriber's handler runs when an event is published.
+ */
+public enum DeliveryMode {
+
+    /** On the publishing thread, before publish() returns */
+    SYNC,
+
+    /**
+     * On the event bus's worker threads. Each subscriber receives its events
+     * in publish order, one at a time.
+     */
+    ASYNC,
+
+    /**
+     * On the server thread at the end of the next server tick, in publish order.
+     * Use this for handlers that touch world state.
+     */
+    MAIN_THREAD
+}
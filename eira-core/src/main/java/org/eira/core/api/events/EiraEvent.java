@@ -1,11 +1,20 @@
 package org.eira.core.api.events;
 
 /**
- * Marker interface for all Eira events.
+ * Base interface for all Eira events.
  *
  * All events that can be published or subscribed to via the Eira event bus
  * must implement this interface.
  */
 public interface EiraEvent {
-    // Marker interface - no methods required
+
+    /**
+     * Key used to route this event to keyed subscriptions, such as a trigger ID,
+     * endpoint or team ID. Subscriptions without a key receive the event regardless.
+     *
+     * @return The key, or null if this event only reaches subscriptions without one
+     */
+    default Object routingKey() {
+        return null;
+    }
 }
@@ -1,5 +1,7 @@
 package org.eira.core.api.events;
 
+import java.util.Collection;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 /**
@@ -15,14 +17,24 @@ import java.util.function.Consumer;
  *     // Handle event
  * });
  *
+ * // Only events whose routingKey() is "door-1"
+ * EiraAPI.get().events().subscribe(ExternalTriggerEvent.class, "door-1", event -> {
+ *     // Open the door
+ * });
+ *
  * // Publish events
  * EiraAPI.get().events().publish(new MyEvent(data));
  * </pre>
+ *
+ * Handlers run on the publishing thread. Buses that can run them elsewhere
+ * implement {@link AsyncEventBus}.
  */
 public interface EiraEventBus {
 
     /**
      * Subscribe to events of a specific type.
+     * Handlers also receive events of its subtypes; subscribing to
+     * EiraEvent receives every event.
      *
      * @param eventType The class of events to subscribe to
      * @param handler   The handler to call when events are published
@@ -31,7 +43,27 @@ public interface EiraEventBus {
     <T extends EiraEvent> void subscribe(Class<T> eventType, Consumer<T> handler);
 
     /**
-     * Unsubscribe a handler from events.
+     * Subscribe to events of a specific type whose routing key equals the given
+     * key, e.g. ExternalTriggerEvent for one triggerId. Only matching events
+     * reach the handler.
+     *
+     * The default implementation subscribes a wrapper that compares keys, so
+     * every event of the type still passes through it. Buses that index keys
+     * (such as the one in Eira Core) override this, and then many keyed
+     * subscribers cost no more per publish than one.
+     *
+     * @param eventType The class of events to subscribe to
+     * @param key       Routing key to match against EiraEvent.routingKey()
+     * @param handler   The handler to call when matching events are published
+     * @param <T>       The event type
+     */
+    default <T extends EiraEvent> void subscribe(Class<T> eventType, Object key, Consumer<T> handler) {
+        Objects.requireNonNull(key, "key");
+        subscribe(eventType, KeyedHandlers.wrap(this, eventType, key, handler));
+    }
+
+    /**
+     * Unsubscribe a handler subscribed without a routing key.
      *
      * @param eventType The class of events
      * @param handler   The handler to remove
@@ -39,6 +71,21 @@ public interface EiraEventBus {
      */
     <T extends EiraEvent> void unsubscribe(Class<T> eventType, Consumer<T> handler);
 
+    /**
+     * Unsubscribe a handler registered for a routing key.
+     *
+     * @param eventType The class of events
+     * @param key       The routing key it was subscribed with
+     * @param handler   The handler to remove
+     * @param <T>       The event type
+     */
+    default <T extends EiraEvent> void unsubscribe(Class<T> eventType, Object key, Consumer<T> handler) {
+        Consumer<T> wrapper = KeyedHandlers.unwrap(this, eventType, key, handler);
+        if (wrapper != null) {
+            unsubscribe(eventType, wrapper);
+        }
+    }
+
     /**
      * Publish an event to all subscribers.
      *
@@ -47,7 +94,34 @@ public interface EiraEventBus {
     void publish(EiraEvent event);
 
     /**
-     * Check if there are any subscribers for an event type.
+     * Publish several events, in order, as if publish() were called for each.
+     * Cheaper than separate calls when many events are published at once.
+     *
+     * @param events The events to publish
+     */
+    default void publishAll(Collection<? extends EiraEvent> events) {
+        for (EiraEvent event : events) {
+            publish(event);
+        }
+    }
+
+    /**
+     * Hand events to the bus's background pipeline and return at once. They are
+     * published in order on the pipeline thread, so handlers run there, later
+     * than with publish(). The pipeline is bounded: events that do not fit are
+     * not published. Buses without a pipeline publish the events before returning.
+     *
+     * @param events The events to publish
+     * @return How many events were accepted, from the start of the collection
+     */
+    default int offerAll(Collection<? extends EiraEvent> events) {
+        publishAll(events);
+        return events.size();
+    }
+
+    /**
+     * Check if there are any subscribers for an event type,
+     * counting subscribers to its supertypes.
      *
      * @param eventType The event type to check
      * @return true if there are subscribers
@@ -12,4 +12,10 @@ public record ExternalTriggerEvent(
 ) implements EiraEvent {
     /** Event type identifier for cross-mod compatibility */
     public static final String TYPE = "EXTERNAL_TRIGGER";
+
+    /** Routing key for keyed subscriptions: the trigger ID */
+    @Override
+    public Object routingKey() {
+        return triggerId;
+    }
 }
@@ -12,4 +12,10 @@ public record HttpReceivedEvent(
 ) implements EiraEvent {
     /** Event type identifier for cross-mod compatibility */
     public static final String TYPE = "HTTP_RECEIVED";
+
+    /** Routing key for keyed subscriptions: the endpoint path */
+    @Override
+    public Object routingKey() {
+        return endpoint;
+    }
 }
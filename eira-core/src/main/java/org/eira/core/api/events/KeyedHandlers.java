@@ -0,0 +1,55 @@
+package org.eira.core.api.events;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Wrappers behind the default keyed subscribe and unsubscribe of EiraEventBus.
+ *
+ * A keyed handler is subscribed as a wrapper that only passes on events with
+ * the matching routing key. The wrappers are kept here, by bus, type, key and
+ * handler, so unsubscribe can remove the one that was subscribed.
+ */
+final class KeyedHandlers {
+
+    private static final Map<Registration, Deque<Consumer<?>>> WRAPPERS = new ConcurrentHashMap<>();
+
+    private KeyedHandlers() {
+    }
+
+    /**
+     * Create and remember the wrapper for a keyed handler
+     */
+    static <T extends EiraEvent> Consumer<T> wrap(EiraEventBus bus, Class<T> eventType, Object key, Consumer<T> handler) {
+        Consumer<T> wrapper = event -> {
+            if (key.equals(event.routingKey())) {
+                handler.accept(event);
+            }
+        };
+        WRAPPERS.compute(new Registration(bus, eventType, key, handler), (registration, wrappers) -> {
+            Deque<Consumer<?>> result = wrappers != null ? wrappers : new ArrayDeque<>();
+            result.push(wrapper);
+            return result;
+        });
+        return wrapper;
+    }
+
+    /**
+     * Forget and return a wrapper created for the keyed handler, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends EiraEvent> Consumer<T> unwrap(EiraEventBus bus, Class<T> eventType, Object key, Consumer<T> handler) {
+        Consumer<?>[] found = new Consumer<?>[1];
+        WRAPPERS.computeIfPresent(new Registration(bus, eventType, key, handler), (registration, wrappers) -> {
+            found[0] = wrappers.pop();
+            return wrappers.isEmpty() ? null : wrappers;
+        });
+        return (Consumer<T>) found[0];
+    }
+
+    private record Registration(EiraEventBus bus, Class<?> eventType, Object key, Consumer<?> handler) {
+    }
+}
@@ -0,0 +1,13 @@
+package org.eira.core.api.events;
+
+/**
+ * What happens when an ASYNC or MAIN_THREAD subscriber's queue is full.
+ */
+public enum OverflowPolicy {
+
+    /** Discard the event being published; queued events are kept */
+    DROP_NEWEST,
+
+    /** Discard the oldest queued event to make room for the new one */
+    DROP_OLDEST
+}
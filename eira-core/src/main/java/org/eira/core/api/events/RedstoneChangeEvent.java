@@ -12,4 +12,10 @@ public record RedstoneChangeEvent(
 ) implements EiraEvent {
     /** Event type identifier for cross-mod compatibility */
     public static final String TYPE = "REDSTONE_CHANGE";
+
+    /** Routing key for keyed subscriptions: the block position */
+    @Override
+    public Object routingKey() {
+        return pos;
+    }
 }
@@ -13,4 +13,10 @@ public record SecretRevealedEvent(
     int maxLevel
 ) implements EiraEvent {
     public static final String TYPE = "SECRET_REVEALED";
+
+    /** Routing key for keyed subscriptions: the story ID */
+    @Override
+    public Object routingKey() {
+        return storyId;
+    }
 }
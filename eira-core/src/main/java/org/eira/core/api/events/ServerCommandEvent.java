@@ -12,4 +12,10 @@ public record ServerCommandEvent(
 ) implements EiraEvent {
     /** Event type identifier for cross-mod compatibility */
     public static final String TYPE = "SERVER_COMMAND";
+
+    /** Routing key for keyed subscriptions: the command name */
+    @Override
+    public Object routingKey() {
+        return command;
+    }
 }
@@ -11,4 +11,10 @@ public record TeamCreatedEvent(
     UUID creatorId
 ) implements EiraEvent {
     public static final String TYPE = "TEAM_CREATED";
+
+    /** Routing key for keyed subscriptions: the team ID */
+    @Override
+    public Object routingKey() {
+        return team != null ? team.id() : null;
+    }
 }
@@ -10,4 +10,10 @@ public record TeamDisbandedEvent(
     String teamName
 ) implements EiraEvent {
     public static final String TYPE = "TEAM_DISBANDED";
+
+    /** Routing key for keyed subscriptions: the team ID */
+    @Override
+    public Object routingKey() {
+        return teamId;
+    }
 }
@@ -10,4 +10,10 @@ public record TeamMemberJoinedEvent(
     UUID playerId
 ) implements EiraEvent {
     public static final String TYPE = "TEAM_MEMBER_JOINED";
+
+    /** Routing key for keyed subscriptions: the team ID */
+    @Override
+    public Object routingKey() {
+        return teamId;
+    }
 }
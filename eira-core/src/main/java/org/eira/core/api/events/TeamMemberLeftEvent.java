@@ -12,4 +12,10 @@ public record TeamMemberLeftEvent(
     LeaveReason reason
 ) implements EiraEvent {
     public static final String TYPE = "TEAM_MEMBER_LEFT";
+
+    /** Routing key for keyed subscriptions: the team ID */
+    @Override
+    public Object routingKey() {
+        return teamId;
+    }
 }
@@ -12,7 +12,7 @@ import org.eira.core.api.team.TeamManager;
  */
 public class EiraAPIImpl implements EiraAPI {
 
-    private final EiraEventBus eventBus;
+    private final SimpleEventBus eventBus;
     private final TeamManager teamManager;
     private final PlayerManager playerManager;
     private final StoryManager storyManager;
@@ -50,4 +50,11 @@ public class EiraAPIImpl implements EiraAPI {
     public AdventureManager adventures() {
         return adventureManager;
     }
+
+    /**
+     * Called at the end of every server tick on the server thread
+     */
+    public void onServerTick() {
+        eventBus.runMainThreadDeliveries();
+    }
 }
@@ -0,0 +1,188 @@
+package org.eira.core.impl;
+
+import org.eira.core.EiraCore;
+import org.eira.core.api.events.EiraEvent;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated ring buffer that carries events from any number of publishing
+ * threads to one consumer thread, which publishes them on the bus in batches.
+ *
+ * Producers claim a run of slots by advancing a sequence number with a CAS,
+ * write their events and mark each slot with its sequence; there are no locks
+ * and nothing is allocated per event. The consumer takes every contiguous
+ * published slot at once and hands the batch to SimpleEventBus.publishBatch,
+ * which resolves subscriptions once per run of same-class events. A full ring
+ * rejects offers instead of blocking the publisher.
+ */
+final class EventPipeline {
+
+    // Upper bound on how long an idle consumer sleeps if a wake-up is missed
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final SimpleEventBus bus;
+    private final EiraEvent[] slots;
+    private final int mask;
+    // Sequence number written into each slot once its event is visible, -1 before the first
+    private final AtomicLongArray slotSequences;
+    // Highest sequence claimed by a producer
+    private final AtomicLong claimed = new AtomicLong(-1);
+    // Highest sequence the consumer has finished with; slots up to here can be reused
+    private volatile long consumed = -1;
+
+    private volatile Thread consumer;
+    private volatile boolean consumerParked;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param capacity Events the ring holds, rounded up to a power of two
+     */
+    EventPipeline(SimpleEventBus bus, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        if (size < capacity) size <<= 1;
+        this.bus = bus;
+        this.slots = new EiraEvent[size];
+        this.mask = size - 1;
+        this.slotSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slotSequences.set(i, -1);
+        }
+    }
+
+    /**
+     * Start the consumer thread. It runs for the life of the bus.
+     */
+    synchronized void start() {
+        if (consumer != null) return;
+        Thread thread = new Thread(this::run, "Eira-Events-Pipeline");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    /**
+     * Add events to the ring, as many as fit, in order
+     * @return Number accepted, from the start of the collection
+     */
+    int offerAll(Collection<? extends EiraEvent> events) {
+        // Copy before claiming: every claimed slot must be written, or the consumer waits on it forever
+        EiraEvent[] batch = events.toArray(new EiraEvent[0]);
+        int count = batch.length;
+        if (count == 0) return 0;
+
+        long first;
+        int accepted;
+        while (true) {
+            long current = claimed.get();
+            long free = slots.length - (current - consumed);
+            if (free <= 0) {
+                rejected.add(count);
+                return 0;
+            }
+            accepted = (int) Math.min(count, free);
+            if (claimed.compareAndSet(current, current + accepted)) {
+                first = current + 1;
+                break;
+            }
+        }
+
+        for (int i = 0; i < accepted; i++) {
+            long sequence = first + i;
+            int index = (int) sequence & mask;
+            slots[index] = batch[i];
+            // Release: the consumer sees the event once it sees the sequence
+            slotSequences.lazySet(index, sequence);
+        }
+        if (accepted < count) {
+            rejected.add(count - accepted);
+        }
+
+        if (consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+        return accepted;
+    }
+
+    private void run() {
+        long next = consumed + 1;
+        while (true) {
+            long end = availableFrom(next);
+            if (end < next) {
+                idle(next);
+                continue;
+            }
+            publish(next, end);
+            next = end + 1;
+        }
+    }
+
+    /**
+     * Highest sequence from next onwards whose slots are all published, or next - 1 if none are
+     */
+    private long availableFrom(long next) {
+        long limit = claimed.get();
+        long end = next - 1;
+        while (end < limit && slotSequences.get((int) (end + 1) & mask) == end + 1) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Publish one batch and free its slots. A batch that wraps around the ring is published in two runs.
+     */
+    private void publish(long from, long to) {
+        int start = (int) from & mask;
+        int count = (int) (to - from + 1);
+        int firstRun = Math.min(count, slots.length - start);
+        try {
+            bus.publishBatch(slots, start, start + firstRun);
+            if (count > firstRun) {
+                bus.publishBatch(slots, 0, count - firstRun);
+            }
+        } catch (RuntimeException e) {
+            // publishBatch already isolates handler errors; this guards the consumer thread itself
+            EiraCore.LOG.error("Error publishing a batch from the event pipeline", e);
+        }
+        Arrays.fill(slots, start, start + firstRun, null);
+        if (count > firstRun) {
+            Arrays.fill(slots, 0, count - firstRun, null);
+        }
+        batches.increment();
+        consumed = to;
+    }
+
+    private void idle(long next) {
+        consumerParked = true;
+        // Re-check after announcing the park so a producer that missed the flag is still seen
+        if (claimed.get() < next) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        } else {
+            Thread.onSpinWait();
+        }
+        consumerParked = false;
+    }
+
+    /**
+     * Events waiting in the ring
+     */
+    int size() {
+        return (int) (claimed.get() - consumed);
+    }
+
+    long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    long getBatchCount() {
+        return batches.sum();
+    }
+}
@@ -1,71 +1,518 @@
 package org.eira.core.impl;
 
 import org.eira.core.EiraCore;
+import org.eira.core.api.events.AsyncEventBus;
+import org.eira.core.api.events.DeliveryMode;
 import org.eira.core.api.events.EiraEvent;
-import org.eira.core.api.events.EiraEventBus;
+import org.eira.core.api.events.OverflowPolicy;
 
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
  * Thread-safe implementation of the Eira event bus.
  *
- * Uses ConcurrentHashMap and CopyOnWriteArrayList to ensure thread safety
- * when publishing and subscribing to events from different threads.
+ * Subscribers are registered per event type in CopyOnWriteArrayLists. An event
+ * reaches subscribers of its own class and of every superclass and interface
+ * it implements, so subscribing to EiraEvent receives everything.
+ *
+ * Subscriptions can carry a routing key, matched against EiraEvent.routingKey().
+ * The subscriptions for each concrete event class are resolved once into an
+ * array of unkeyed subscriptions plus a hash map from key to keyed ones, and
+ * cached; publish() is then one lookup for the class, one for the event's key
+ * and a loop over two arrays, however many other keys are subscribed. Any
+ * subscribe or unsubscribe replaces the cache, and the next publish of each
+ * class rebuilds its entry. Throughput is counted with LongAdders,
+ * which publish() updates without allocating or locking.
+ *
+ * SYNC handlers run inside publish(). ASYNC and MAIN_THREAD handlers only get
+ * the event added to their bounded queue there; ASYNC queues are drained by a
+ * small pool of daemon threads and MAIN_THREAD queues by runMainThreadDeliveries(),
+ * which Eira Core calls at the end of every server tick.
+ *
+ * publishAll() publishes a batch with one counter update and one subscription
+ * lookup per run of same-class events. offerAll() hands a batch to an
+ * EventPipeline, a preallocated ring buffer whose consumer thread publishes
+ * it the same way; the pipeline is created on first use.
  */
-public class SimpleEventBus implements EiraEventBus {
+public class SimpleEventBus implements AsyncEventBus {
+
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    // Events an ASYNC or MAIN_THREAD subscriber can have waiting before the overflow policy applies
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    // Events an ASYNC worker delivers to one subscriber before letting others run
+    private static final int ASYNC_BATCH_SIZE = 64;
+    // Events the offerAll() ring buffer holds
+    public static final int PIPELINE_CAPACITY = 8192;
+
+    // Registered subscriptions without a key, by the type they subscribed to
+    private final Map<Class<?>, List<Subscription>> subscribers = new ConcurrentHashMap<>();
+    // Registered subscriptions with a key, by type and then key
+    private final Map<Class<?>, Map<Object, List<Subscription>>> keyedSubscribers = new ConcurrentHashMap<>();
+    // Resolved subscriptions by concrete event class; replaced as a whole when subscriptions change
+    private volatile Map<Class<?>, Dispatch> dispatchTable = new ConcurrentHashMap<>();
+
+    /**
+     * Everything subscribed to one concrete event class, including its supertypes
+     * @param unkeyed Subscriptions that receive every event of the class
+     * @param keyed Subscriptions by routing key
+     */
+    private record Dispatch(Subscription[] unkeyed, Map<Object, Subscription[]> keyed) {
+
+        private static final Dispatch EMPTY = new Dispatch(NO_SUBSCRIPTIONS, Map.of());
 
-    private final Map<Class<?>, List<Consumer<?>>> subscribers = new ConcurrentHashMap<>();
+        Subscription[] forKey(Object key) {
+            if (key == null || keyed.isEmpty()) return NO_SUBSCRIPTIONS;
+            return keyed.getOrDefault(key, NO_SUBSCRIPTIONS);
+        }
+
+        boolean isEmpty() {
+            return unkeyed.length == 0 && keyed.isEmpty();
+        }
+    }
+
+    private final int queueCapacity;
+    private final ExecutorService asyncExecutor;
+    // MAIN_THREAD subscriptions with queued events, in the order they became ready
+    private final Queue<Subscription> mainThreadReady = new ConcurrentLinkedQueue<>();
+    // Created by the first offerAll()
+    private volatile EventPipeline pipeline;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder unhandled = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder handlerErrors = new LongAdder();
+    private final LongAdder publishNanos = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public SimpleEventBus() {
+        this(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param asyncThreads Worker threads for ASYNC subscribers
+     * @param queueCapacity Events each ASYNC or MAIN_THREAD subscriber can have waiting
+     */
+    public SimpleEventBus(int asyncThreads, int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Each subscription has at most one drain task queued, so this queue is bounded by the subscriber count
+        this.asyncExecutor = Executors.newFixedThreadPool(asyncThreads, runnable -> {
+            Thread thread = new Thread(runnable, "Eira-Events-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     @Override
     public <T extends EiraEvent> void subscribe(Class<T> eventType, Consumer<T> handler) {
-        subscribers.computeIfAbsent(eventType, k -> new CopyOnWriteArrayList<>())
-            .add(handler);
+        subscribe(eventType, handler, DeliveryMode.SYNC, OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Override
+    public <T extends EiraEvent> void subscribe(Class<T> eventType, Consumer<T> handler,
+                                                DeliveryMode mode, OverflowPolicy overflow) {
+        Subscription subscription = new Subscription(handler, mode, overflow, queueCapacity);
+        synchronized (subscribers) {
+            subscribers.computeIfAbsent(eventType, k -> new CopyOnWriteArrayList<>())
+                .add(subscription);
+            invalidateDispatchTable();
+        }
+
+        if (EiraCore.LOG.isDebugEnabled()) {
+            EiraCore.LOG.debug("Subscribed to event: {} ({})", eventType.getSimpleName(), mode);
+        }
+    }
+
+    @Override
+    public <T extends EiraEvent> void subscribe(Class<T> eventType, Object key, Consumer<T> handler) {
+        subscribe(eventType, key, handler, DeliveryMode.SYNC, OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Override
+    public <T extends EiraEvent> void subscribe(Class<T> eventType, Object key, Consumer<T> handler,
+                                                DeliveryMode mode, OverflowPolicy overflow) {
+        Objects.requireNonNull(key, "key");
+        Subscription subscription = new Subscription(handler, mode, overflow, queueCapacity);
+        synchronized (subscribers) {
+            keyedSubscribers.computeIfAbsent(eventType, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key, k -> new CopyOnWriteArrayList<>())
+                .add(subscription);
+            invalidateDispatchTable();
+        }
 
-        EiraCore.LOG.debug("Subscribed to event: {}", eventType.getSimpleName());
+        if (EiraCore.LOG.isDebugEnabled()) {
+            EiraCore.LOG.debug("Subscribed to event: {} with key {} ({})", eventType.getSimpleName(), key, mode);
+        }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <T extends EiraEvent> void unsubscribe(Class<T> eventType, Consumer<T> handler) {
-        List<Consumer<?>> handlers = subscribers.get(eventType);
-        if (handlers != null) {
-            handlers.remove(handler);
-            if (handlers.isEmpty()) {
+        synchronized (subscribers) {
+            List<Subscription> registered = subscribers.get(eventType);
+            if (registered == null || !remove(registered, handler)) return;
+            if (registered.isEmpty()) {
                 subscribers.remove(eventType);
             }
+            invalidateDispatchTable();
+        }
+    }
+
+    @Override
+    public <T extends EiraEvent> void unsubscribe(Class<T> eventType, Object key, Consumer<T> handler) {
+        synchronized (subscribers) {
+            Map<Object, List<Subscription>> byKey = keyedSubscribers.get(eventType);
+            if (byKey == null) return;
+            List<Subscription> registered = byKey.get(key);
+            if (registered == null || !remove(registered, handler)) return;
+            if (registered.isEmpty()) {
+                byKey.remove(key);
+                if (byKey.isEmpty()) {
+                    keyedSubscribers.remove(eventType);
+                }
+            }
+            invalidateDispatchTable();
+        }
+    }
+
+    /**
+     * Cancel and remove the first subscription of a handler
+     * @return false if the handler was not in the list
+     */
+    private static boolean remove(List<Subscription> registered, Consumer<?> handler) {
+        for (Subscription subscription : registered) {
+            if (subscription.handler() == handler) {
+                subscription.cancel();
+                registered.remove(subscription);
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public void publish(EiraEvent event) {
-        List<Consumer<?>> handlers = subscribers.get(event.getClass());
-        if (handlers == null || handlers.isEmpty()) {
-            EiraCore.LOG.debug("No subscribers for event: {}", event.getClass().getSimpleName());
-            return;
+        published.increment();
+        Dispatch dispatch = dispatchFor(event.getClass());
+        if (EiraCore.LOG.isDebugEnabled()) {
+            int subscribers = dispatch.unkeyed().length + dispatch.forKey(event.routingKey()).length;
+            if (subscribers == 0) {
+                EiraCore.LOG.debug("No subscribers for event: {}", event.getClass().getSimpleName());
+            } else {
+                EiraCore.LOG.debug("Publishing event {} to {} subscriber(s)", event.getClass().getSimpleName(), subscribers);
+            }
         }
+        dispatch(dispatch, event);
+    }
 
-        EiraCore.LOG.debug("Publishing event {} to {} subscriber(s)",
-            event.getClass().getSimpleName(), handlers.size());
+    @Override
+    public void publishAll(Collection<? extends EiraEvent> events) {
+        EiraEvent[] batch = events.toArray(new EiraEvent[0]);
+        publishBatch(batch, 0, batch.length);
+    }
 
-        for (Consumer<?> handler : handlers) {
-            try {
-                ((Consumer<EiraEvent>) handler).accept(event);
-            } catch (Exception e) {
-                // Log error but don't propagate - other handlers should still run
-                EiraCore.LOG.error("Error in event handler for {}: {}",
-                    event.getClass().getSimpleName(), e.getMessage(), e);
+    /**
+     * Publish events[from] to events[to - 1] in order. Consecutive events of the
+     * same class share one subscription lookup, and the counters are updated once.
+     */
+    void publishBatch(EiraEvent[] events, int from, int to) {
+        if (from >= to) return;
+        published.add(to - from);
+        if (EiraCore.LOG.isDebugEnabled()) {
+            EiraCore.LOG.debug("Publishing batch of {} event(s)", to - from);
+        }
+
+        Class<?> dispatchClass = null;
+        Dispatch dispatch = null;
+        for (int i = from; i < to; i++) {
+            EiraEvent event = events[i];
+            if (event.getClass() != dispatchClass) {
+                dispatchClass = event.getClass();
+                dispatch = dispatchFor(dispatchClass);
+            }
+            dispatch(dispatch, event);
+        }
+    }
+
+    @Override
+    public int offerAll(Collection<? extends EiraEvent> events) {
+        return pipeline().offerAll(events);
+    }
+
+    private EventPipeline pipeline() {
+        EventPipeline current = pipeline;
+        if (current == null) {
+            synchronized (this) {
+                current = pipeline;
+                if (current == null) {
+                    current = new EventPipeline(this, PIPELINE_CAPACITY);
+                    current.start();
+                    pipeline = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Deliver one event to its unkeyed subscribers and those matching its key
+     */
+    private void dispatch(Dispatch dispatch, EiraEvent event) {
+        Subscription[] unkeyed = dispatch.unkeyed();
+        Subscription[] keyed = dispatch.forKey(event.routingKey());
+        if (unkeyed.length == 0 && keyed.length == 0) {
+            unhandled.increment();
+            return;
+        }
+        deliver(unkeyed, event);
+        deliver(keyed, event);
+    }
+
+    private void deliver(Subscription[] subscriptions, EiraEvent event) {
+        for (Subscription subscription : subscriptions) {
+            switch (subscription.mode()) {
+                case SYNC -> invoke(subscription, event);
+                case ASYNC -> {
+                    queue(subscription, event);
+                    if (subscription.trySchedule()) {
+                        scheduleAsync(subscription);
+                    }
+                }
+                case MAIN_THREAD -> {
+                    queue(subscription, event);
+                    if (subscription.trySchedule()) {
+                        mainThreadReady.add(subscription);
+                    }
+                }
             }
         }
     }
 
     @Override
     public boolean hasSubscribers(Class<? extends EiraEvent> eventType) {
-        List<Consumer<?>> handlers = subscribers.get(eventType);
-        return handlers != null && !handlers.isEmpty();
+        return !dispatchFor(eventType).isEmpty();
+    }
+
+    /**
+     * Run queued MAIN_THREAD handlers. Must be called from the server thread;
+     * Eira Core calls it at the end of every server tick. Only events queued
+     * before the call are delivered, so handlers that publish more events
+     * cannot keep the tick running.
+     */
+    public void runMainThreadDeliveries() {
+        int ready = mainThreadReady.size();
+        for (int i = 0; i < ready; i++) {
+            Subscription subscription = mainThreadReady.poll();
+            if (subscription == null) break;
+            drain(subscription, queueCapacity);
+            subscription.unschedule();
+            // Events queued while draining, or after the last poll, wait for the next tick
+            if (subscription.hasQueued() && subscription.trySchedule()) {
+                mainThreadReady.add(subscription);
+            }
+        }
+    }
+
+    private void queue(Subscription subscription, EiraEvent event) {
+        if (!subscription.enqueue(event)) {
+            dropped.increment();
+            if (EiraCore.LOG.isDebugEnabled()) {
+                EiraCore.LOG.debug("Event queue full for a {} subscriber, dropped an event",
+                    subscription.mode());
+            }
+        }
+    }
+
+    private void scheduleAsync(Subscription subscription) {
+        try {
+            asyncExecutor.execute(() -> drainAsync(subscription));
+        } catch (RejectedExecutionException e) {
+            subscription.unschedule();
+            EiraCore.LOG.warn("Event bus workers unavailable, asynchronous event left queued");
+        }
+    }
+
+    /**
+     * Deliver a batch of one ASYNC subscriber's events, then hand the worker back
+     * and reschedule if more arrived. Only one drain per subscriber runs at a time.
+     */
+    private void drainAsync(Subscription subscription) {
+        drain(subscription, ASYNC_BATCH_SIZE);
+        subscription.unschedule();
+        if (subscription.hasQueued() && subscription.trySchedule()) {
+            scheduleAsync(subscription);
+        }
+    }
+
+    private void drain(Subscription subscription, int maxEvents) {
+        EiraEvent event;
+        for (int i = 0; i < maxEvents && (event = subscription.poll()) != null; i++) {
+            if (subscription.isCancelled()) return;
+            invoke(subscription, event);
+        }
+    }
+
+    private void invoke(Subscription subscription, EiraEvent event) {
+        long start = System.nanoTime();
+        try {
+            subscription.handler().accept(event);
+            deliveries.increment();
+        } catch (Exception e) {
+            handlerErrors.increment();
+            // Log error but don't propagate - other handlers should still run
+            EiraCore.LOG.error("Error in event handler for {}: {}",
+                event.getClass().getSimpleName(), e.getMessage(), e);
+        }
+        publishNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Subscriptions that receive events of a class, from the cache or resolved now
+     */
+    private Dispatch dispatchFor(Class<?> eventClass) {
+        Map<Class<?>, Dispatch> table = dispatchTable;
+        Dispatch dispatch = table.get(eventClass);
+        if (dispatch == null) {
+            // A table replaced meanwhile is discarded, so a stale entry here is never used again
+            dispatch = table.computeIfAbsent(eventClass, this::resolveDispatch);
+        }
+        return dispatch;
+    }
+
+    /**
+     * Collect the subscriptions of a class and all its supertypes: the class
+     * itself first, then superclasses, then interfaces, each type once.
+     */
+    private Dispatch resolveDispatch(Class<?> eventClass) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        for (Class<?> type = eventClass; type != null; type = type.getSuperclass()) {
+            types.add(type);
+        }
+        Deque<Class<?>> pending = new ArrayDeque<>(types);
+        while (!pending.isEmpty()) {
+            for (Class<?> implemented : pending.poll().getInterfaces()) {
+                if (types.add(implemented)) {
+                    pending.add(implemented);
+                }
+            }
+        }
+
+        List<Subscription> unkeyed = new ArrayList<>();
+        Map<Object, List<Subscription>> keyed = new HashMap<>();
+        for (Class<?> type : types) {
+            List<Subscription> registered = subscribers.get(type);
+            if (registered != null) {
+                unkeyed.addAll(registered);
+            }
+            Map<Object, List<Subscription>> byKey = keyedSubscribers.get(type);
+            if (byKey != null) {
+                byKey.forEach((key, list) -> keyed.computeIfAbsent(key, k -> new ArrayList<>()).addAll(list));
+            }
+        }
+        if (unkeyed.isEmpty() && keyed.isEmpty()) {
+            return Dispatch.EMPTY;
+        }
+
+        Map<Object, Subscription[]> keyedArrays = new HashMap<>(keyed.size() * 2);
+        keyed.forEach((key, list) -> keyedArrays.put(key, list.toArray(NO_SUBSCRIPTIONS)));
+        return new Dispatch(unkeyed.toArray(NO_SUBSCRIPTIONS), keyedArrays);
+    }
+
+    /**
+     * Drop every resolved dispatch entry. Called after the subscribers change;
+     * publishers that read the new table resolve against the changed subscribers.
+     */
+    private void invalidateDispatchTable() {
+        dispatchTable = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Events published, singly or in batches
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * Published events that had no subscribers
+     */
+    public long getUnhandledCount() {
+        return unhandled.sum();
+    }
+
+    /**
+     * Handler invocations that returned normally
+     */
+    public long getDeliveryCount() {
+        return deliveries.sum();
+    }
+
+    /**
+     * Handler invocations that threw
+     */
+    public long getHandlerErrorCount() {
+        return handlerErrors.sum();
+    }
+
+    /**
+     * Total time spent running handlers, in nanoseconds
+     */
+    public long getHandlerNanos() {
+        return publishNanos.sum();
+    }
+
+    /**
+     * Events dropped because an ASYNC or MAIN_THREAD subscriber's queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Events waiting in the offerAll() pipeline
+     */
+    public int getPipelineQueuedCount() {
+        EventPipeline current = pipeline;
+        return current != null ? current.size() : 0;
+    }
+
+    /**
+     * Events offerAll() could not fit in the pipeline
+     */
+    public long getPipelineRejectedCount() {
+        EventPipeline current = pipeline;
+        return current != null ? current.getRejectedCount() : 0;
+    }
+
+    /**
+     * Batches published by the pipeline thread
+     */
+    public long getPipelineBatchCount() {
+        EventPipeline current = pipeline;
+        return current != null ? current.getBatchCount() : 0;
+    }
+
+    /**
+     * Events waiting in ASYNC and MAIN_THREAD subscriber queues
+     */
+    public int getQueuedCount() {
+        int queued = 0;
+        for (List<Subscription> registered : subscribers.values()) {
+            for (Subscription subscription : registered) {
+                queued += subscription.queuedCount();
+            }
+        }
+        for (Map<Object, List<Subscription>> byKey : keyedSubscribers.values()) {
+            for (List<Subscription> registered : byKey.values()) {
+                for (Subscription subscription : registered) {
+                    queued += subscription.queuedCount();
+                }
+            }
+        }
+        return queued;
     }
 }
@@ -0,0 +1,97 @@
+package org.eira.core.impl;
+
+import org.eira.core.api.events.DeliveryMode;
+import org.eira.core.api.events.EiraEvent;
+import org.eira.core.api.events.OverflowPolicy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One handler registered on SimpleEventBus, with its delivery mode.
+ *
+ * ASYNC and MAIN_THREAD subscriptions own a bounded queue of events waiting
+ * for the handler. The scheduled flag makes sure at most one thread drains
+ * the queue at a time, which keeps each subscriber's events in order.
+ */
+final class Subscription {
+
+    private final Consumer<EiraEvent> handler;
+    private final DeliveryMode mode;
+    private final OverflowPolicy overflow;
+    // Null for SYNC subscriptions
+    private final ArrayBlockingQueue<EiraEvent> queue;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean cancelled;
+
+    @SuppressWarnings("unchecked")
+    Subscription(Consumer<? extends EiraEvent> handler, DeliveryMode mode, OverflowPolicy overflow, int queueCapacity) {
+        this.handler = (Consumer<EiraEvent>) handler;
+        this.mode = mode;
+        this.overflow = overflow;
+        this.queue = mode == DeliveryMode.SYNC ? null : new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    Consumer<EiraEvent> handler() {
+        return handler;
+    }
+
+    DeliveryMode mode() {
+        return mode;
+    }
+
+    /**
+     * Queue an event for the handler, applying the overflow policy when the queue is full
+     * @return false if an event was dropped
+     */
+    boolean enqueue(EiraEvent event) {
+        if (queue.offer(event)) return true;
+        if (overflow == OverflowPolicy.DROP_NEWEST) return false;
+        // DROP_OLDEST: make room; retry because a drainer or another publisher may race us
+        do {
+            queue.poll();
+        } while (!queue.offer(event));
+        return false;
+    }
+
+    EiraEvent poll() {
+        return queue.poll();
+    }
+
+    boolean hasQueued() {
+        return queue != null && !queue.isEmpty();
+    }
+
+    int queuedCount() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Claim the right to drain the queue
+     * @return false if a drain is already scheduled or running
+     */
+    boolean trySchedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Give up the right to drain. Callers must check hasQueued() afterwards,
+     * since events may have arrived after their last poll.
+     */
+    void unschedule() {
+        scheduled.set(false);
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop delivering to this handler and discard queued events
+     */
+    void cancel() {
+        cancelled = true;
+        if (queue != null) queue.clear();
+    }
+}
@@ -22,6 +22,12 @@ public class HttpServerConfig implements IHttpServerConfig {
     private static String globalRedirect;
 
     private final ForgeConfigSpec.IntValue port;
+    private final ForgeConfigSpec.IntValue workerThreads;
+    private final ForgeConfigSpec.IntValue workerQueueCapacity;
+    private final ForgeConfigSpec.IntValue connectTimeoutSeconds;
+    private final ForgeConfigSpec.IntValue requestTimeoutSeconds;
+    private final ForgeConfigSpec.BooleanValue preferHttp2;
+    private final ForgeConfigSpec.IntValue clientThreads;
 
     static {
         Pair<HttpServerConfig, ForgeConfigSpec> pair = new ForgeConfigSpec.Builder()
@@ -37,6 +43,30 @@ public class HttpServerConfig implements IHttpServerConfig {
                 .comment("Http Server Port")
                 .defineInRange("port", 8080, 0, 65535);
         builder.pop();
+
+        builder.push("Request Execution");
+        workerThreads = builder
+                .comment("Number of worker threads handling HTTP requests")
+                .defineInRange("workerThreads", 8, 1, 256);
+        workerQueueCapacity = builder
+                .comment("Requests that may wait for a worker before new requests get 503")
+                .defineInRange("queueCapacity", 256, 1, 100000);
+        builder.pop();
+
+        builder.push("Outbound Requests");
+        connectTimeoutSeconds = builder
+                .comment("Seconds to wait for a connection when an HTTP Sender block fires")
+                .defineInRange("connectTimeoutSeconds", 10, 1, 300);
+        requestTimeoutSeconds = builder
+                .comment("Seconds to wait for a response when an HTTP Sender block fires")
+                .defineInRange("requestTimeoutSeconds", 30, 1, 600);
+        preferHttp2 = builder
+                .comment("Prefer HTTP/2 for outbound requests (falls back to HTTP/1.1 if the server does not support it)")
+                .define("preferHttp2", true);
+        clientThreads = builder
+                .comment("Threads used by the shared outbound HTTP client")
+                .defineInRange("clientThreads", 4, 1, 64);
+        builder.pop();
     }
 
     /**
@@ -45,6 +75,12 @@ public class HttpServerConfig implements IHttpServerConfig {
      */
     public HttpServerConfig() {
         this.port = INSTANCE.port;
+        this.workerThreads = INSTANCE.workerThreads;
+        this.workerQueueCapacity = INSTANCE.workerQueueCapacity;
+        this.connectTimeoutSeconds = INSTANCE.connectTimeoutSeconds;
+        this.requestTimeoutSeconds = INSTANCE.requestTimeoutSeconds;
+        this.preferHttp2 = INSTANCE.preferHttp2;
+        this.clientThreads = INSTANCE.clientThreads;
     }
 
     public static void loadGlobalParamsConfig() {
@@ -137,6 +173,36 @@ public class HttpServerConfig implements IHttpServerConfig {
         return port.get();
     }
 
+    @Override
+    public int getWorkerThreads() {
+        return workerThreads.get();
+    }
+
+    @Override
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity.get();
+    }
+
+    @Override
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds.get();
+    }
+
+    @Override
+    public int getRequestTimeoutSeconds() {
+        return requestTimeoutSeconds.get();
+    }
+
+    @Override
+    public boolean preferHttp2() {
+        return preferHttp2.get();
+    }
+
+    @Override
+    public int getClientThreads() {
+        return clientThreads.get();
+    }
+
     @Override
     public List<GlobalParam> getGlobalParams() {
         return globalParams;
@@ -0,0 +1,17 @@
+package no.eira.relay.enums;
+
+/**
+ * Least severe request the access log writes. Server errors are ERROR,
+ * client errors WARN and everything else INFO.
+ */
+public enum EnumAccessLogLevel {
+
+    // No access log
+    OFF,
+    // Only 5xx responses and requests that failed without a response
+    ERROR,
+    // 4xx and 5xx responses
+    WARN,
+    // Every request, subject to sampleRate
+    INFO
+}
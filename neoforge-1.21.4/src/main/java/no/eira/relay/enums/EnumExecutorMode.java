@@ -0,0 +1,12 @@
+package no.eira.relay.enums;
+
+/**
+ * How the HTTP server runs request handlers.
+ */
+public enum EnumExecutorMode {
+
+    // One virtual thread per request, capped by maxConcurrentRequests
+    VIRTUAL,
+    // Fixed platform thread pool with a bounded queue
+    POOL
+}
@@ -0,0 +1,12 @@
+package no.eira.relay.enums;
+
+/**
+ * Network transport used by the HTTP server.
+ */
+public enum EnumTransport {
+
+    // The JDK's built-in com.sun.net.httpserver server
+    JDK,
+    // Eira Relay's NIO server with selector threads and pooled buffers
+    NIO
+}
@@ -0,0 +1,97 @@
+package no.eira.relay.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.http.handlers.HandlerResult;
+import no.eira.relay.platform.Services;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Sends the result of a main-thread action once it is known.
+ *
+ * Requests made with ?wait=true get a future for their world action instead of
+ * an immediate "queued" reply. The handler registers the response here and
+ * returns, so no HTTP worker thread is parked while the server thread gets to
+ * the task; the response is written on a virtual thread when the future
+ * completes or its deadline passes.
+ */
+public class CompletionResponder {
+
+    private static final ExecutorService EXECUTOR =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("EiraRelay-Completion-", 0).factory());
+
+    /**
+     * Writes a result to an exchange, usually a handler's own sendJsonResponse
+     */
+    @FunctionalInterface
+    public interface ResponseWriter {
+        void send(HttpExchange exchange, HandlerResult result) throws IOException;
+    }
+
+    /**
+     * Send the result to the exchange when the future completes. Returns
+     * immediately; a result that is already known is sent inline.
+     */
+    public static void respond(HttpExchange exchange, CompletableFuture<HandlerResult> future, ResponseWriter writer) {
+        whenComplete(future, result -> {
+            try {
+                writer.send(exchange, result);
+            } catch (IOException e) {
+                // Client went away while waiting
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Pass the result to the consumer when the future completes, with timeouts
+     * and failures turned into error results. Never runs the consumer on the
+     * thread that completed the future, which may be the main server thread.
+     */
+    public static void whenComplete(CompletableFuture<HandlerResult> future, Consumer<HandlerResult> consumer) {
+        if (future.isDone()) {
+            consumer.accept(resultOf(future));
+            return;
+        }
+        future.whenCompleteAsync((result, error) ->
+            consumer.accept(error == null ? result : failure(error)), EXECUTOR);
+    }
+
+    private static HandlerResult resultOf(CompletableFuture<HandlerResult> future) {
+        try {
+            return future.join();
+        } catch (RuntimeException e) {
+            return failure(e);
+        }
+    }
+
+    /**
+     * Executor for work that waits on a future, shared with other deferred responses
+     */
+    static Executor executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Error result for a failed or timed out action
+     */
+    public static HandlerResult failure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return new HandlerResult(504, Map.of(
+                "success", false,
+                "error", "Timed out waiting for the server thread",
+                "timeoutMs", Services.HTTP_CONFIG.getWaitTimeoutMillis()
+            ));
+        }
+        return HandlerResult.error(500, "Action failed: " + cause.getMessage());
+    }
+}
@@ -1,14 +1,22 @@
 package no.eira.relay.http;
 
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import no.eira.relay.Constants;
+import no.eira.relay.enums.EnumExecutorMode;
+import no.eira.relay.enums.EnumTransport;
 import no.eira.relay.http.api.IHttpHandler;
 import no.eira.relay.http.api.IHttpServer;
 import no.eira.relay.http.handlers.BroadcastHandler;
+import no.eira.relay.http.handlers.EventStreamHandler;
+import no.eira.relay.http.handlers.HttpReceiverBlockHandler;
+import no.eira.relay.http.handlers.MetricsHandler;
 import no.eira.relay.http.handlers.RedstoneHandler;
 import no.eira.relay.http.handlers.StatusHandler;
 import no.eira.relay.http.handlers.TriggerHandler;
+import no.eira.relay.http.metrics.RelayMetrics;
+import no.eira.relay.http.middleware.*;
+import no.eira.relay.http.nio.NioHttpServer;
 import no.eira.relay.platform.Services;
 import no.eira.relay.utils.ImplLoader;
 
@@ -18,77 +26,239 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class HttpServerImpl implements IHttpServer {
 
     private HttpServer server;
     private RateLimiter rateLimiter;
-
-    //private Map<Integer, IHttpHandler> handlerMap;
-    private Map<String, IHttpHandler> handlerMap;
-    //USING MAP INSTEAD OF QUEUE FOR FAST RETRIEVAL OF A HANDLER FROM THE QUEUE BY ITS KEY
-    private Map<String, IHttpHandler> handlerToRegisterQueue;
-
+    private ReplayCache replayCache;
+    private IdempotencyCache idempotencyCache;
+    private RequestExecutor requestExecutor;
+    private EventStream eventStream;
+    private WebSocketServer webSocketServer;
+    private AccessLog accessLog;
+
+    // Registered handlers by URL, in registration order. Guarded by this; read freely.
+    private final Map<String, IHttpHandler> handlerMap = Collections.synchronizedMap(new LinkedHashMap<>());
+    // Routing table built from handlerMap, replaced as a whole whenever handlers or the config change
+    private volatile Router router = Router.empty();
+
+    // Middleware stages built from the config at startup and on reload, compiled into each route
+    private CorsMiddleware corsStage;
+    private Middleware authStage;
+    // Kept across reloads so per-key counters survive
+    private final ApiKeyAuthMiddleware apiKeyAuth = new ApiKeyAuthMiddleware();
+    private Middleware bodyLimitStage;
+    private boolean metricsEnabled;
+    // CORS stage for responses sent outside a route (404, 405, preflight)
+    private volatile CorsMiddleware cors;
+    // Stages added with addMiddleware, run just before the handler
+    private final List<Middleware> customMiddleware = new CopyOnWriteArrayList<>();
+    // Per-route metrics by "METHOD template", kept across recompiles
+    private final Map<String, MetricsMiddleware> routeMetrics = new ConcurrentHashMap<>();
 
     public HttpServerImpl(){
-        handlerMap = new HashMap<String, IHttpHandler>();
-        //urlToHandlerMap = new HashMap<String, IHttpHandler>();
-        handlerToRegisterQueue = new HashMap<String, IHttpHandler>();
     }
 
     // Default to localhost for security - only accessible from this machine
     private static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
 
+    // Requests waiting for the access log writer before new ones are dropped
+    private static final int ACCESS_LOG_CAPACITY = 8192;
+
+    private static final byte[] OVERLOADED_RESPONSE =
+        "{\"error\": \"Server busy\"}".getBytes(StandardCharsets.UTF_8);
+
     /**
      * Initialize rate limiter based on config
      */
     private void initRateLimiter() {
         if (Services.HTTP_CONFIG.isRateLimitEnabled()) {
             int requestsPerMinute = Services.HTTP_CONFIG.getRateLimitPerMinute();
-            rateLimiter = new RateLimiter(requestsPerMinute, 60000); // 1 minute window
-            System.out.println("[EiraRelay] Rate limiting enabled: " + requestsPerMinute + " requests/minute");
+            int maxClients = Services.HTTP_CONFIG.getRateLimitMaxClients();
+            rateLimiter = new RateLimiter(requestsPerMinute, 60000, maxClients); // 1 minute window
+            Constants.LOG.info("Rate limiting enabled: {} requests/minute", requestsPerMinute);
         } else {
             rateLimiter = null;
         }
     }
 
+    /**
+     * Initialize the Idempotency-Key cache based on config
+     */
+    private void initIdempotencyCache() {
+        if (Services.HTTP_CONFIG.isIdempotencyEnabled()) {
+            int windowSeconds = Services.HTTP_CONFIG.getIdempotencyWindowSeconds();
+            idempotencyCache = new IdempotencyCache(windowSeconds,
+                Services.HTTP_CONFIG.getIdempotencyMaxKeys(), Services.HTTP_CONFIG.getMaxBodyBytes());
+            Constants.LOG.info("Idempotency keys enabled: responses kept for {}s", windowSeconds);
+        } else {
+            idempotencyCache = null;
+        }
+    }
+
+    /**
+     * Create the replay cache for signed receiver requests
+     */
+    private void initReplayCache() {
+        replayCache = new ReplayCache(Services.HTTP_CONFIG.getSignatureMaxSkewSeconds(),
+            Services.HTTP_CONFIG.getReplayCacheSize());
+        HttpReceiverBlockHandler.setReplayCache(replayCache);
+    }
+
+    /**
+     * Build the config-dependent middleware stages. Takes effect on the next router rebuild.
+     */
+    private void initMiddleware() {
+        corsStage = Services.HTTP_CONFIG.isCorsEnabled()
+            ? new CorsMiddleware(Services.HTTP_CONFIG.getCorsOrigins())
+            : null;
+
+        boolean requireAuth = Services.HTTP_CONFIG.requireAuth();
+        apiKeyAuth.configure(requireAuth, Services.HTTP_CONFIG.getApiKeys());
+        if (requireAuth && apiKeyAuth.getKeyCount() == 0) {
+            Constants.LOG.warn("requireAuth is enabled but no API keys are configured; all requests will be rejected");
+        }
+        authStage = requireAuth ? apiKeyAuth : null;
+
+        bodyLimitStage = new BodyLimitMiddleware(Services.HTTP_CONFIG.getMaxBodyBytes());
+        metricsEnabled = Services.HTTP_CONFIG.isMetricsEnabled();
+    }
+
+    /**
+     * Create and start the access log, or apply changed settings to the running one
+     */
+    private void initAccessLog() {
+        if (accessLog == null) {
+            accessLog = new AccessLog(Services.HTTP_CONFIG.getAccessLogLevel(),
+                Services.HTTP_CONFIG.getAccessLogSampleRate(), ACCESS_LOG_CAPACITY);
+            accessLog.start();
+        } else {
+            accessLog.configure(Services.HTTP_CONFIG.getAccessLogLevel(), Services.HTTP_CONFIG.getAccessLogSampleRate());
+        }
+    }
+
+    /**
+     * Create the request executor based on config
+     */
+    private void initRequestExecutor() {
+        if (Services.HTTP_CONFIG.getExecutorMode() == EnumExecutorMode.POOL) {
+            int threads = Services.HTTP_CONFIG.getWorkerThreads();
+            int queueCapacity = Services.HTTP_CONFIG.getWorkerQueueCapacity();
+            requestExecutor = RequestExecutor.boundedPool(threads, queueCapacity);
+            Constants.LOG.info("Request executor: pool of {} threads, queue {}", threads, queueCapacity);
+        } else {
+            int maxConcurrent = Services.HTTP_CONFIG.getMaxConcurrentRequests();
+            requestExecutor = RequestExecutor.virtualThreads(maxConcurrent);
+            Constants.LOG.info("Request executor: virtual threads, max {} concurrent", maxConcurrent);
+        }
+    }
+
     public boolean startServer() throws IOException {
         int port = Services.HTTP_CONFIG.getPort();
         // Initialize rate limiter
         initRateLimiter();
+        initIdempotencyCache();
+        initReplayCache();
+        initMiddleware();
+        initAccessLog();
+        initRequestExecutor();
+        eventStream = new EventStream(Services.HTTP_CONFIG.getEventStreamMaxClients(),
+            Services.HTTP_CONFIG.getEventStreamBufferSize());
+        eventStream.start();
         // Bind to localhost by default for security
         InetSocketAddress address = new InetSocketAddress(DEFAULT_BIND_ADDRESS, port);
-        server = HttpServer.create(address, 0);
-        server.setExecutor(null); // creates a default executor
+        server = createTransport(address);
+        server.setExecutor(requestExecutor);
+        // Recompile routes registered before startup with the middleware built above
+        rebuildRouter();
+        // Single root context; requests are routed by the router
+        server.createContext("/", this::dispatch);
         server.start();
         this.initBuiltInHandlers();
-        this.handleHandlersInQueue();
         StatusHandler.recordServerStart();
-        System.out.println("HTTP Server started on " + DEFAULT_BIND_ADDRESS + ":" + port);
+        Constants.LOG.info("HTTP Server started on {}:{}", DEFAULT_BIND_ADDRESS, port);
+        if (Services.HTTP_CONFIG.isWebSocketEnabled()) {
+            startWebSocketServer();
+        }
         return true;
     }
 
+    /**
+     * Start the WebSocket endpoint on its own port. A failure here leaves the HTTP server running.
+     */
+    private void startWebSocketServer() {
+        int port = Services.HTTP_CONFIG.getWebSocketPort();
+        webSocketServer = new WebSocketServer(DEFAULT_BIND_ADDRESS, port,
+            Services.HTTP_CONFIG.getWebSocketMaxConnections(),
+            Services.HTTP_CONFIG.getMaxBodyBytes(),
+            Services.HTTP_CONFIG.getEventStreamBufferSize(),
+            eventStream, rateLimiter, apiKeyAuth, webSocketOrigins());
+        try {
+            webSocketServer.start();
+            Constants.LOG.info("WebSocket server started on {}:{}/ws", DEFAULT_BIND_ADDRESS, port);
+        } catch (IOException e) {
+            Constants.LOG.warn("Failed to start WebSocket server on port {}", port, e);
+            webSocketServer = null;
+        }
+    }
+
+    /**
+     * Origins browsers may open WebSocket connections from: the CORS origins, or none while CORS is disabled
+     */
+    private List<String> webSocketOrigins() {
+        return Services.HTTP_CONFIG.isCorsEnabled() ? Services.HTTP_CONFIG.getCorsOrigins() : List.of();
+    }
+
+    /**
+     * Create the underlying server for the configured transport
+     */
+    private HttpServer createTransport(InetSocketAddress address) throws IOException {
+        if (Services.HTTP_CONFIG.getTransport() == EnumTransport.NIO) {
+            int selectorThreads = Services.HTTP_CONFIG.getNioSelectorThreads();
+            Constants.LOG.info("Transport: NIO with {} selector thread(s)", selectorThreads);
+            return NioHttpServer.create(address, selectorThreads,
+                Services.HTTP_CONFIG.getNioBufferSize(),
+                Services.HTTP_CONFIG.getKeepAliveMaxRequests(),
+                Services.HTTP_CONFIG.getIdleTimeoutSeconds(),
+                Services.HTTP_CONFIG.getMaxBodyBytes());
+        }
+        return HttpServer.create(address, 0);
+    }
+
     /**
      * Register built-in handlers for the new API endpoints
      */
     private void initBuiltInHandlers() {
+        // Handlers registered before startup (or kept from a previous start) take precedence
+
         // Register /status endpoint
-        registerHandler(new StatusHandler());
+        registerIfAbsent(new StatusHandler(this));
+
+        // Register /metrics endpoint (Prometheus text format)
+        registerIfAbsent(new MetricsHandler(this));
 
-        // Register /trigger endpoint (handles /trigger/{triggerId})
-        registerHandler(new TriggerHandler());
+        // Register /trigger endpoint (handles /trigger/{triggerId} and /trigger/batch)
+        registerIfAbsent(new TriggerHandler());
 
         // Register /redstone endpoint
-        registerHandler(new RedstoneHandler());
+        registerIfAbsent(new RedstoneHandler());
 
         // Register /broadcast endpoint
-        registerHandler(new BroadcastHandler());
+        registerIfAbsent(new BroadcastHandler());
 
-        System.out.println("[EiraRelay] Built-in handlers registered: /status, /trigger, /redstone, /broadcast");
+        // Register /events endpoint (Server-Sent Events)
+        registerIfAbsent(new EventStreamHandler(this));
+
+        Constants.LOG.info("Built-in handlers registered: /status, /trigger, /redstone, /broadcast, /events");
     }
 
-    private void handleHandlersInQueue() {
-        handlerToRegisterQueue.values().forEach(this::registerHandler);
+    private synchronized void registerIfAbsent(IHttpHandler handler) {
+        if (!handlerMap.containsKey(handler.getUrl())) {
+            registerHandler(handler);
+        }
     }
 
     @Override
@@ -98,123 +268,294 @@ public class HttpServerImpl implements IHttpServer {
     }
 
     @Override
-    public void registerHandler(IHttpHandler handler) {
-        if(server == null){
-            handlerToRegisterQueue.put(handler.getUrl(), handler);
-        }else{
-            this.handleRegisteringHandlers(handler);
-        }
+    public synchronized void registerHandler(IHttpHandler handler) {
+        // A handler for the same URL replaces the existing one
+        handlerMap.put(handler.getUrl(), handler);
+        rebuildRouter();
     }
 
     @Override
     public IHttpHandler getHandlerByUrl(String url) {
-        if(handlerMap.get(url) != null)return handlerMap.get(url);
-        if(handlerToRegisterQueue.get(url) != null)return handlerToRegisterQueue.get(url);
-        return null;
+        return handlerMap.get(url);
     }
 
     @Override
-    public void unregisterHandler(String url) {
+    public synchronized void unregisterHandler(String url) {
         if (url == null || url.isEmpty()) return;
 
-        // Remove from queue if not yet registered
-        handlerToRegisterQueue.remove(url);
-
-        // Remove from active handlers
-        if (handlerMap.containsKey(url)) {
-            handlerMap.remove(url);
-            if (server != null) {
-                try {
-                    server.removeContext(url);
-                } catch (IllegalArgumentException e) {
-                    // Context doesn't exist, ignore
-                }
-            }
+        if (handlerMap.remove(url) != null) {
+            rebuildRouter();
         }
     }
 
-    private void handleRegisteringHandlers(IHttpHandler handler) {
-        if(!handlerMap.containsKey(handler.getUrl())) {
-            registerAndPutInMap(handler);
-        }else{
-            //ALREADY CONTAINING A HANDLER FOR THAT ID (FOR THAT BLOCK IN OUR TEST)
-            //FOR NOW JUST OVERRIDE WITH NEW ONE
-            server.removeContext(handler.getUrl());
-            registerAndPutInMap(handler);
+    /**
+     * Add a middleware stage to every route, run after the built-in checks and
+     * just before the handler
+     */
+    public synchronized void addMiddleware(Middleware middleware) {
+        customMiddleware.add(middleware);
+        rebuildRouter();
+    }
 
+    /**
+     * Apply config changes without restarting: recreate the rate limiter and
+     * idempotency cache if their settings changed, recompile every route and
+     * pass the new settings to the WebSocket server.
+     * Port and transport changes still need a restart.
+     */
+    @Override
+    public synchronized void reloadConfig() {
+        if (server == null) return;
+
+        if (rateLimitSettingsChanged()) {
+            initRateLimiter();
+        }
+        if (idempotencySettingsChanged()) {
+            initIdempotencyCache();
+        }
+        if (replayCache.getMaxSkewSeconds() != Services.HTTP_CONFIG.getSignatureMaxSkewSeconds()
+                || replayCache.getMaxEntries() != Services.HTTP_CONFIG.getReplayCacheSize()) {
+            initReplayCache();
+        }
+        initMiddleware();
+        initAccessLog();
+        rebuildRouter();
+        if (webSocketServer != null) {
+            webSocketServer.reconfigure(rateLimiter, webSocketOrigins());
         }
+        Constants.LOG.info("Configuration reloaded, request pipeline recompiled");
     }
 
-    private void registerAndPutInMap(IHttpHandler handler) {
-        // Wrap handler with middleware for rate limiting and CORS
-        HttpHandler wrappedHandler = exchange -> {
-            // Add CORS headers if enabled
-            if (Services.HTTP_CONFIG.isCorsEnabled()) {
-                addCorsHeaders(exchange);
+    private boolean rateLimitSettingsChanged() {
+        RateLimiter current = rateLimiter;
+        if (!Services.HTTP_CONFIG.isRateLimitEnabled()) {
+            return current != null;
+        }
+        return current == null
+            || current.getMaxRequests() != Services.HTTP_CONFIG.getRateLimitPerMinute()
+            || current.getMaxClients() != Services.HTTP_CONFIG.getRateLimitMaxClients();
+    }
+
+    private boolean idempotencySettingsChanged() {
+        IdempotencyCache current = idempotencyCache;
+        if (!Services.HTTP_CONFIG.isIdempotencyEnabled()) {
+            return current != null;
+        }
+        return current == null
+            || current.getWindowSeconds() != Services.HTTP_CONFIG.getIdempotencyWindowSeconds()
+            || current.getMaxKeys() != Services.HTTP_CONFIG.getIdempotencyMaxKeys();
+    }
+
+    /**
+     * Rebuild the routing table, compiling each route's middleware chain from
+     * the stages that are enabled. Called when handlers change and on config reload.
+     */
+    private synchronized void rebuildRouter() {
+        List<IHttpHandler> handlers;
+        synchronized (handlerMap) {
+            handlers = new ArrayList<>(handlerMap.values());
+        }
+
+        RateLimiter limiter = rateLimiter;
+        Middleware rateLimitStage = limiter != null ? new RateLimitMiddleware(limiter) : null;
+        Middleware idempotencyStage = idempotencyCache != null ? new IdempotencyMiddleware(idempotencyCache) : null;
+        List<Middleware> custom = List.copyOf(customMiddleware);
+
+        router = Router.build(handlers, (template, method, handler) -> {
+            List<Middleware> stages = new ArrayList<>();
+            if (metricsEnabled) {
+                String httpMethod = method != null ? method : "*";
+                stages.add(routeMetrics.computeIfAbsent(httpMethod + " " + template,
+                    k -> new MetricsMiddleware(template, httpMethod)));
+            }
+            if (corsStage != null) stages.add(corsStage);
+            if (rateLimitStage != null) stages.add(rateLimitStage);
+            if (authStage != null) stages.add(authStage);
+            if (bodyLimitStage != null) stages.add(bodyLimitStage);
+            // Only POST requests carry an Idempotency-Key
+            if (idempotencyStage != null && (method == null || method.equals("POST"))) {
+                stages.add(idempotencyStage);
+            }
+            stages.addAll(custom);
+            return Middleware.compile(stages, context -> handler.handle(context.exchange()));
+        });
+        cors = corsStage;
+    }
+
+    /**
+     * Entry point for every request: route, then run the route's compiled middleware and handler.
+     * Every request, including those answered here, is handed to the access log afterwards.
+     */
+    private void dispatch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String apiKeyId = null;
+        boolean failed = false;
+        try {
+            // Shed load when the executor is saturated
+            if (RequestExecutor.isShedding()) {
+                RelayMetrics.SHED_REQUESTS.increment();
+                sendOverloadedResponse(exchange);
+                return;
+            }
+
+            CorsMiddleware corsHeaders = cors;
+            Router.RouteMatch match = router.lookup(exchange.getRequestURI().getPath());
+            if (match == null) {
+                RelayMetrics.NOT_FOUND_REQUESTS.increment();
+                if (corsHeaders != null) corsHeaders.apply(exchange);
+                sendErrorResponse(exchange, 404, "Not found");
+                return;
             }
 
             // Handle CORS preflight
             if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                if (corsHeaders != null) corsHeaders.apply(exchange);
                 exchange.sendResponseHeaders(204, -1);
                 return;
             }
 
-            // Check rate limit
-            if (rateLimiter != null) {
-                String clientIp = exchange.getRemoteAddress().getAddress().getHostAddress();
-                if (!rateLimiter.isAllowed(clientIp)) {
-                    long retryAfter = rateLimiter.getRetryAfterMs(clientIp);
-                    sendRateLimitResponse(exchange, retryAfter);
-                    return;
-                }
+            Middleware.Chain chain = match.chainFor(exchange.getRequestMethod());
+            if (chain == null) {
+                RelayMetrics.METHOD_NOT_ALLOWED_REQUESTS.increment();
+                if (corsHeaders != null) corsHeaders.apply(exchange);
+                exchange.getResponseHeaders().set("Allow", String.join(", ", match.allowedMethods()));
+                sendErrorResponse(exchange, 405, "Method not allowed");
+                return;
             }
 
-            // Delegate to actual handler
-            handler.handle(exchange);
-        };
-
-        server.createContext(handler.getUrl(), wrappedHandler);
-        handlerMap.put(handler.getUrl(), handler);
+            // The body is read by the body limit stage and shared through RequestContext
+            RequestContext context = RequestContext.attach(exchange);
+            context.setRoute(match.template(), match.pathParams());
+            try {
+                chain.proceed(context);
+            } finally {
+                apiKeyId = context.apiKeyId();
+                RequestContext.release(context.exchange());
+            }
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            throw e;
+        } finally {
+            AccessLog log = accessLog;
+            if (log != null) log.record(exchange, apiKeyId, start, failed);
+        }
     }
 
     /**
-     * Add CORS headers to response
+     * Send 503 Service Unavailable response
      */
-    private void addCorsHeaders(HttpExchange exchange) {
-        List<String> origins = Services.HTTP_CONFIG.getCorsOrigins();
-        String allowOrigin = origins.isEmpty() ? "*" : String.join(", ", origins);
+    private void sendOverloadedResponse(HttpExchange exchange) throws IOException {
+        byte[] responseBytes = OVERLOADED_RESPONSE;
 
-        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", allowOrigin);
-        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, Authorization, X-Api-Key");
-        exchange.getResponseHeaders().add("Access-Control-Max-Age", "86400"); // 24 hours
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, responseBytes.length);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
     }
 
     /**
-     * Send 429 Too Many Requests response
+     * Send a JSON error response
      */
-    private void sendRateLimitResponse(HttpExchange exchange, long retryAfterMs) throws IOException {
-        String json = "{\"error\": \"Rate limit exceeded\", \"retryAfterMs\": " + retryAfterMs + "}";
+    private void sendErrorResponse(HttpExchange exchange, int statusCode, String error) throws IOException {
+        String json = "{\"error\": \"" + error + "\"}";
         byte[] responseBytes = json.getBytes(StandardCharsets.UTF_8);
 
         exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.getResponseHeaders().set("Retry-After", String.valueOf((retryAfterMs + 999) / 1000)); // Seconds
-        exchange.sendResponseHeaders(429, responseBytes.length);
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
 
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(responseBytes);
         }
-
-        System.out.println("[EiraRelay] Rate limited request from " +
-            exchange.getRemoteAddress().getAddress().getHostAddress());
     }
 
     @Override
     public void stopServer() {
+        // Close event streams first so the server does not wait for them
+        if (eventStream != null) {
+            eventStream.stop();
+        }
+        if (webSocketServer != null) {
+            webSocketServer.stop();
+            webSocketServer = null;
+        }
         if(server != null){
             server.stop(1);
             server = null;
             //System.gc();
         }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+        // Last, so requests finishing during shutdown are still logged
+        if (accessLog != null) {
+            accessLog.stop();
+            accessLog = null;
+        }
+    }
+
+    /**
+     * Get the event stream, or null if the server has not been started
+     */
+    public EventStream getEventStream() {
+        return eventStream;
+    }
+
+    /**
+     * Get the WebSocket server, or null if it is disabled or not running
+     */
+    public WebSocketServer getWebSocketServer() {
+        return webSocketServer;
+    }
+
+    /**
+     * Get the access log, or null if the server has not been started
+     */
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    /**
+     * Get the rate limiter, or null if rate limiting is disabled
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Get the Idempotency-Key cache, or null if it is disabled
+     */
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    /**
+     * Get the replay cache for signed receiver requests, or null before the server starts
+     */
+    public ReplayCache getReplayCache() {
+        return replayCache;
+    }
+
+    /**
+     * API key checks, shared by HTTP routes and the WebSocket handshake
+     */
+    public ApiKeyAuthMiddleware getApiKeyAuth() {
+        return apiKeyAuth;
+    }
+
+    /**
+     * Per-route request metrics (empty if metrics are disabled)
+     */
+    public Collection<MetricsMiddleware> getRouteMetrics() {
+        return routeMetrics.values();
+    }
+
+    /**
+     * Get the request executor, or null if the server has not been started
+     */
+    public RequestExecutor getRequestExecutor() {
+        return requestExecutor;
     }
 }
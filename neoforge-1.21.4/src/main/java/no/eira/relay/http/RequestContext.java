@@ -0,0 +1,326 @@
+package no.eira.relay.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.platform.Services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-exchange request state shared by the server middleware and handlers.
+ *
+ * The server attaches a context to each routed request before its middleware
+ * runs. The body is read once in bulk (up to a size cap) by the body limit
+ * stage, and query/JSON parameters are parsed lazily on first use. Handlers get
+ * the context with {@link #get(HttpExchange)} instead of reading the request
+ * stream themselves, so token checks, global params and event publishing all
+ * see the same data.
+ *
+ * Contexts are kept in a map keyed by exchange rather than in exchange
+ * attributes, because the JDK server shares attributes across every exchange
+ * on the same HttpContext. The server releases the context when the handler
+ * returns.
+ */
+public class RequestContext {
+
+    private static final Map<HttpExchange, RequestContext> CONTEXTS = new ConcurrentHashMap<>();
+    private static final Gson GSON = new Gson();
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private HttpExchange exchange;
+    private byte[] body;
+
+    private String bodyText;
+    private JsonElement json;
+    private boolean jsonParsed;
+    private Map<String, String> queryParameters;
+    private Map<String, String> parameters;
+    private String route;
+    private Map<String, String> pathParameters = Collections.emptyMap();
+    private String apiKeyId;
+
+    private RequestContext(HttpExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    /**
+     * Attach a new context to the exchange without reading the body yet
+     */
+    public static RequestContext attach(HttpExchange exchange) {
+        RequestContext context = new RequestContext(exchange);
+        CONTEXTS.put(exchange, context);
+        return context;
+    }
+
+    /**
+     * Read the request body and attach a new context to the exchange.
+     * @param exchange The exchange to read
+     * @param maxBodyBytes Largest body accepted
+     * @throws BodyTooLargeException if the body exceeds maxBodyBytes
+     */
+    public static RequestContext create(HttpExchange exchange, int maxBodyBytes) throws IOException {
+        RequestContext context = new RequestContext(exchange);
+        context.readBody(maxBodyBytes);
+        CONTEXTS.put(exchange, context);
+        return context;
+    }
+
+    /**
+     * Read the request body if it has not been read yet
+     * @param maxBodyBytes Largest body accepted
+     * @throws BodyTooLargeException if the body exceeds maxBodyBytes
+     */
+    public void readBody(int maxBodyBytes) throws IOException {
+        if (body != null) return;
+
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null) {
+            try {
+                if (Long.parseLong(contentLength.trim()) > maxBodyBytes) {
+                    throw new BodyTooLargeException(maxBodyBytes);
+                }
+            } catch (NumberFormatException e) {
+                // Let the stream read below decide
+            }
+        }
+
+        byte[] read;
+        try (InputStream is = exchange.getRequestBody()) {
+            read = is.readNBytes(maxBodyBytes + 1);
+        }
+        if (read.length > maxBodyBytes) {
+            throw new BodyTooLargeException(maxBodyBytes);
+        }
+        body = read.length == 0 ? EMPTY_BODY : read;
+    }
+
+    /**
+     * Send the rest of the request through another exchange that wraps this
+     * one (e.g. to record the response). The context moves to the new exchange.
+     */
+    public void replaceExchange(HttpExchange wrapper) {
+        CONTEXTS.remove(exchange, this);
+        exchange = wrapper;
+        CONTEXTS.put(wrapper, this);
+    }
+
+    /**
+     * Get the context attached to the exchange, reading it up to the configured
+     * maxBodyBytes if the exchange did not pass through the server middleware.
+     */
+    public static RequestContext get(HttpExchange exchange) throws IOException {
+        RequestContext context = CONTEXTS.get(exchange);
+        if (context != null) {
+            return context;
+        }
+        return create(exchange, Services.HTTP_CONFIG.getMaxBodyBytes());
+    }
+
+    /**
+     * Drop the context attached to the exchange once its handler has returned
+     */
+    public static void release(HttpExchange exchange) {
+        CONTEXTS.remove(exchange);
+    }
+
+    public HttpExchange exchange() {
+        return exchange;
+    }
+
+    public String method() {
+        return exchange.getRequestMethod();
+    }
+
+    public String path() {
+        return exchange.getRequestURI().getPath();
+    }
+
+    /**
+     * Route template that matched the request, e.g. /trigger/{triggerId}, or null if not routed
+     */
+    public String route() {
+        return route;
+    }
+
+    /**
+     * Value of a {name} segment in the matched route, or null
+     */
+    public String pathParam(String name) {
+        return pathParameters.get(name);
+    }
+
+    public Map<String, String> pathParameters() {
+        return pathParameters;
+    }
+
+    void setRoute(String route, Map<String, String> pathParameters) {
+        this.route = route;
+        this.pathParameters = pathParameters;
+    }
+
+    /**
+     * Id of the API key that authenticated the request, or null when API keys are not required
+     */
+    public String apiKeyId() {
+        return apiKeyId;
+    }
+
+    public void setApiKeyId(String apiKeyId) {
+        this.apiKeyId = apiKeyId;
+    }
+
+    /**
+     * Whether the client asked to wait for the real outcome of a world action,
+     * with ?wait=true or an X-Eira-Wait: true header
+     */
+    public boolean waitRequested() {
+        return isTrue(queryParameters().get("wait")) || isTrue(header("X-Eira-Wait"));
+    }
+
+    private static boolean isTrue(String value) {
+        return value != null && (value.equalsIgnoreCase("true") || value.equals("1"));
+    }
+
+    public String clientIp() {
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    public String header(String name) {
+        return exchange.getRequestHeaders().getFirst(name);
+    }
+
+    /**
+     * Raw body bytes (empty array if there is no body)
+     */
+    public byte[] body() {
+        if (body == null) {
+            // Not read by the server middleware
+            try {
+                readBody(Services.HTTP_CONFIG.getMaxBodyBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return body;
+    }
+
+    public String bodyAsString() {
+        if (bodyText == null) {
+            bodyText = new String(body(), StandardCharsets.UTF_8);
+        }
+        return bodyText;
+    }
+
+    /**
+     * Body parsed as JSON, or null if it is empty or not valid JSON
+     */
+    public JsonElement json() {
+        if (!jsonParsed) {
+            jsonParsed = true;
+            if (body().length > 0) {
+                try {
+                    JsonElement parsed = JsonParser.parseString(bodyAsString());
+                    json = parsed.isJsonNull() ? null : parsed;
+                } catch (JsonParseException e) {
+                    json = null;
+                }
+            }
+        }
+        return json;
+    }
+
+    /**
+     * Deserialize the JSON body into the given type
+     * @return The parsed body, or null if it is empty or does not match the type
+     */
+    public <T> T bodyAs(Class<T> type) {
+        JsonElement element = json();
+        if (element == null) return null;
+        try {
+            return GSON.fromJson(element, type);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parameters from the URL query string
+     */
+    public Map<String, String> queryParameters() {
+        if (queryParameters == null) {
+            queryParameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        }
+        return queryParameters;
+    }
+
+    /**
+     * Request parameters: string fields of the JSON body for POST,
+     * the query string for GET.
+     */
+    public Map<String, String> parameters() {
+        if (parameters == null) {
+            if ("post".equalsIgnoreCase(method())) {
+                parameters = parseJsonParameters();
+            } else if ("get".equalsIgnoreCase(method())) {
+                parameters = queryParameters();
+            } else {
+                parameters = Collections.emptyMap();
+            }
+        }
+        return parameters;
+    }
+
+    private Map<String, String> parseJsonParameters() {
+        JsonElement element = json();
+        if (element == null || !element.isJsonObject()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> result = new HashMap<>();
+        JsonObject object = element.getAsJsonObject();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString())
+                continue;
+            result.put(entry.getKey(), value.getAsString());
+        }
+        return result;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        if (query == null || query.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> result = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            result.put(key, value);
+        }
+        return result;
+    }
+
+    /**
+     * Thrown when the request body is larger than the configured limit
+     */
+    public static class BodyTooLargeException extends IOException {
+        public BodyTooLargeException(int maxBodyBytes) {
+            super("Request body exceeds " + maxBodyBytes + " bytes");
+        }
+    }
+}
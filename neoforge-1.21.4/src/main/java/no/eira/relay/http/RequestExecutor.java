@@ -0,0 +1,159 @@
+package no.eira.relay.http;
+
+import no.eira.relay.enums.EnumExecutorMode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for HTTP exchanges with load shedding.
+ *
+ * Runs each exchange either on its own virtual thread (capped by a concurrency
+ * limit) or on a fixed platform pool with a bounded queue. When the limit or
+ * queue is full, the exchange is run inline on the dispatcher thread with a
+ * shedding flag set, so the server middleware can answer 503 immediately
+ * instead of dropping the connection.
+ */
+public class RequestExecutor implements Executor {
+
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
+
+    private final EnumExecutorMode mode;
+    private final ExecutorService delegate;
+    private final Semaphore permits; // Only used in VIRTUAL mode
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    private RequestExecutor(EnumExecutorMode mode, ExecutorService delegate, Semaphore permits) {
+        this.mode = mode;
+        this.delegate = delegate;
+        this.permits = permits;
+    }
+
+    /**
+     * Create an executor that starts one virtual thread per request.
+     * @param maxConcurrentRequests Requests allowed in flight before shedding
+     */
+    public static RequestExecutor virtualThreads(int maxConcurrentRequests) {
+        ThreadFactory factory = Thread.ofVirtual().name("EiraRelay-HTTP-", 0).factory();
+        return new RequestExecutor(EnumExecutorMode.VIRTUAL,
+                Executors.newThreadPerTaskExecutor(factory),
+                new Semaphore(maxConcurrentRequests));
+    }
+
+    /**
+     * Create an executor backed by a fixed platform thread pool.
+     * @param threads Number of worker threads
+     * @param queueCapacity Requests that may wait for a worker before shedding
+     */
+    public static RequestExecutor boundedPool(int threads, int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "EiraRelay-HTTP-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+        return new RequestExecutor(EnumExecutorMode.POOL, pool, null);
+    }
+
+    /**
+     * Whether the exchange being handled on this thread was shed because the
+     * executor is saturated. Checked by the server middleware.
+     */
+    public static boolean isShedding() {
+        return SHEDDING.get() != null;
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        if (permits != null && !permits.tryAcquire()) {
+            shed(exchange);
+            return;
+        }
+
+        queuedRequests.incrementAndGet();
+        try {
+            delegate.execute(() -> runTracked(exchange));
+        } catch (RejectedExecutionException e) {
+            queuedRequests.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+            shed(exchange);
+        }
+    }
+
+    private void runTracked(Runnable exchange) {
+        queuedRequests.decrementAndGet();
+        activeRequests.incrementAndGet();
+        try {
+            exchange.run();
+        } finally {
+            activeRequests.decrementAndGet();
+            completedRequests.increment();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    private void shed(Runnable exchange) {
+        rejectedRequests.increment();
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    }
+
+    /**
+     * Stop accepting work and wait briefly for in-flight requests
+     */
+    public void shutdown() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public EnumExecutorMode getMode() {
+        return mode;
+    }
+
+    public int getActiveRequests() {
+        return activeRequests.get();
+    }
+
+    public int getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    public long getCompletedRequests() {
+        return completedRequests.sum();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+}
@@ -0,0 +1,75 @@
+package no.eira.relay.http;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-host retry throttling.
+ * Each host has a token balance: failed attempts withdraw a full token and
+ * successful ones deposit a fraction of one. Retries are only allowed while
+ * the balance is above half, so a host that keeps failing stops being retried
+ * until it starts answering again.
+ *
+ * Only hosts below a full balance are tracked: an entry is removed once
+ * successes refill it, and the number of tracked hosts is capped so URLs from
+ * configuration cannot grow the map without bound.
+ */
+public class RetryBudget {
+
+    // Tokens are stored in thousandths to keep the arithmetic integral
+    private static final int TOKEN = 1000;
+    // Most hosts tracked at once; a new failing host evicts an existing one beyond this
+    private static final int MAX_HOSTS = 1024;
+
+    private final Map<String, Integer> balances = new ConcurrentHashMap<>();
+    private final int maxTokens;
+    private final int successDeposit;
+
+    /**
+     * Create a retry budget
+     * @param maxTokens Tokens each host starts with (and can accumulate up to)
+     * @param successRatio Fraction of a token returned for every successful request
+     */
+    public RetryBudget(int maxTokens, double successRatio) {
+        this.maxTokens = maxTokens * TOKEN;
+        this.successDeposit = (int) (successRatio * TOKEN);
+    }
+
+    /**
+     * Record a successful request to the host
+     */
+    public void onSuccess(String host) {
+        // A full balance is the default, so the entry is dropped instead of stored
+        balances.computeIfPresent(host, (k, tokens) ->
+                tokens + successDeposit >= maxTokens ? null : tokens + successDeposit);
+    }
+
+    /**
+     * Record a failed attempt against the host
+     */
+    public void onFailure(String host) {
+        if (balances.size() >= MAX_HOSTS && !balances.containsKey(host)) {
+            evictOne();
+        }
+        balances.merge(host, maxTokens - TOKEN, (tokens, ignored) -> Math.max(0, tokens - TOKEN));
+    }
+
+    /**
+     * Check if another retry to the host is allowed
+     */
+    public boolean canRetry(String host) {
+        return balances.getOrDefault(host, maxTokens) > maxTokens / 2;
+    }
+
+    private void evictOne() {
+        // Prefer a host that can still retry, so exhausted hosts stay throttled
+        String victim = null;
+        for (Map.Entry<String, Integer> entry : balances.entrySet()) {
+            victim = entry.getKey();
+            if (entry.getValue() > maxTokens / 2) break;
+        }
+        if (victim != null) {
+            balances.remove(victim);
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package no.eira.relay.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import no.eira.relay.Constants;
+import no.eira.relay.http.handlers.BroadcastHandler;
+import no.eira.relay.http.handlers.HandlerResult;
+import no.eira.relay.http.handlers.RedstoneHandler;
+import no.eira.relay.http.handlers.TriggerHandler;
+import no.eira.relay.http.metrics.RelayMetrics;
+import no.eira.relay.http.middleware.ApiKeyAuthMiddleware;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket endpoint (ws://address:port/ws) for clients that send many actions
+ * over one persistent connection.
+ *
+ * Each text message is a JSON object with an "action" (trigger, trigger_batch,
+ * redstone, broadcast, subscribe, unsubscribe) and an optional "id" that is
+ * echoed in the acknowledgement. Actions run through the same code as the HTTP
+ * handlers; with "wait": true the acknowledgement is sent once the world action
+ * has run, like ?wait=true over HTTP. After "subscribe", Eira events from the
+ * EventStream are pushed on the same connection.
+ *
+ * The JDK HttpServer cannot hand an upgraded connection over, so this listens
+ * on its own port. Each connection has a virtual thread reading frames and one
+ * writing from a bounded queue; a client that stops reading is disconnected.
+ *
+ * Browsers let any page open a WebSocket, so a handshake that carries an
+ * Origin header must match the CORS allowed origins. Clients that send no
+ * Origin (scripts, devices) are not browsers and are let through.
+ */
+public class WebSocketServer {
+
+    private static final String PATH = "/ws";
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String SOURCE = "websocket-trigger";
+    private static final Gson GSON = new Gson();
+
+    private static final int MAX_HANDSHAKE_BYTES = 8192;
+    private static final int HANDSHAKE_TIMEOUT_MS = 10000;
+    private static final long PING_INTERVAL_SECONDS = 30;
+
+    // Frame opcodes (RFC 6455)
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    // Close codes
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int CLOSE_GOING_AWAY = 1001;
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+    private static final int CLOSE_UNSUPPORTED_DATA = 1003;
+    private static final int CLOSE_TOO_BIG = 1009;
+
+    private final String bindAddress;
+    private final int port;
+    private final int maxConnections;
+    private final int maxMessageBytes;
+    private final int bufferSize;
+    private final EventStream eventStream;
+    // Replaced on config reload
+    private volatile RateLimiter rateLimiter;
+    private final ApiKeyAuthMiddleware apiKeyAuth;
+    // Lower-cased origins browsers may connect from; empty when CORS is disabled. Replaced on config reload.
+    private volatile Set<String> allowedOrigins;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Create a WebSocket server
+     * @param bindAddress Address to listen on
+     * @param port Port to listen on
+     * @param maxConnections Maximum open connections
+     * @param maxMessageBytes Largest message accepted (fragments included)
+     * @param bufferSize Outgoing frames buffered per connection before it is disconnected
+     * @param eventStream Source of events for subscribers (may be null)
+     * @param rateLimiter Rate limiter applied per message (may be null)
+     * @param apiKeyAuth API key check for the handshake, applied while keys are required
+     * @param allowedOrigins Origins browsers may connect from ("*" for any), empty to refuse all browsers
+     */
+    public WebSocketServer(String bindAddress, int port, int maxConnections, int maxMessageBytes,
+                           int bufferSize, EventStream eventStream, RateLimiter rateLimiter,
+                           ApiKeyAuthMiddleware apiKeyAuth, List<String> allowedOrigins) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.maxMessageBytes = maxMessageBytes;
+        this.bufferSize = bufferSize;
+        this.eventStream = eventStream;
+        this.rateLimiter = rateLimiter;
+        this.apiKeyAuth = apiKeyAuth;
+        this.allowedOrigins = normalizeOrigins(allowedOrigins);
+    }
+
+    /**
+     * Apply reloaded settings. Open connections use the new rate limiter from their next message.
+     * @param rateLimiter Rate limiter applied per message (may be null)
+     * @param allowedOrigins Origins browsers may connect from ("*" for any), empty to refuse all browsers
+     */
+    public void reconfigure(RateLimiter rateLimiter, List<String> allowedOrigins) {
+        this.rateLimiter = rateLimiter;
+        this.allowedOrigins = normalizeOrigins(allowedOrigins);
+    }
+
+    /**
+     * Bind the port and start accepting connections
+     */
+    public void start() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(bindAddress, port));
+        serverSocket = socket;
+        Thread.ofPlatform().daemon().name("EiraRelay-WebSocket").start(() -> acceptLoop(socket));
+    }
+
+    /**
+     * Stop accepting connections and close the open ones
+     */
+    public void stop() {
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        for (Connection connection : connections) {
+            connection.close(CLOSE_GOING_AWAY);
+        }
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                Thread.ofVirtual().name("EiraRelay-WebSocket-conn").start(() -> serve(client));
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    Constants.LOG.error("WebSocket accept failed", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            String acceptKey = handshake(in, out);
+            if (acceptKey == null) {
+                return; // Error response already sent
+            }
+
+            if (connectionCount.incrementAndGet() > maxConnections) {
+                connectionCount.decrementAndGet();
+                rejectedConnections.increment();
+                writeHttpError(out, 503, "Too many WebSocket connections");
+                return;
+            }
+
+            Connection connection = new Connection(socket, in, out,
+                socket.getInetAddress().getHostAddress());
+            connections.add(connection);
+            try {
+                out.write(("HTTP/1.1 101 Switching Protocols\r\n" +
+                    "Upgrade: websocket\r\n" +
+                    "Connection: Upgrade\r\n" +
+                    "Sec-WebSocket-Accept: " + acceptKey + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                socket.setSoTimeout(0);
+                connection.run();
+            } finally {
+                connections.remove(connection);
+                connectionCount.decrementAndGet();
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    /**
+     * Read the upgrade request and validate it
+     * @return The Sec-WebSocket-Accept value, or null if an error response was sent
+     */
+    private String handshake(InputStream in, OutputStream out) throws IOException {
+        int[] remaining = {MAX_HANDSHAKE_BYTES};
+        String requestLine = readLine(in, remaining);
+        if (requestLine == null) {
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in, remaining)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            writeHttpError(out, 400, "Invalid request");
+            return null;
+        }
+
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 3 || !"GET".equals(parts[0])) {
+            writeHttpError(out, 405, "Method not allowed");
+            return null;
+        }
+        String path = parts[1];
+        int query = path.indexOf('?');
+        if (query >= 0) path = path.substring(0, query);
+        if (!PATH.equals(path)) {
+            writeHttpError(out, 404, "Not found");
+            return null;
+        }
+
+        String key = headers.get("sec-websocket-key");
+        String upgrade = headers.get("upgrade");
+        if (key == null || upgrade == null || !upgrade.equalsIgnoreCase("websocket")) {
+            writeHttpError(out, 400, "Expected a WebSocket upgrade request");
+            return null;
+        }
+        if (!"13".equals(headers.get("sec-websocket-version"))) {
+            writeHttpError(out, 426, "Unsupported WebSocket version");
+            return null;
+        }
+        if (!isOriginAllowed(headers.get("origin"))) {
+            writeHttpError(out, 403, "Origin not allowed");
+            return null;
+        }
+        if (apiKeyAuth.isRequired()
+                && apiKeyAuth.authenticate(headers.get("x-api-key"), headers.get("authorization")) == null) {
+            writeHttpError(out, 401, "Invalid or missing API key");
+            return null;
+        }
+
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private boolean isOriginAllowed(String origin) {
+        if (origin == null) return true;
+        Set<String> allowed = allowedOrigins;
+        return allowed.contains("*") || allowed.contains(origin.toLowerCase(Locale.ROOT));
+    }
+
+    private static Set<String> normalizeOrigins(List<String> origins) {
+        Set<String> normalized = new HashSet<>();
+        for (String origin : origins) {
+            normalized.add(origin.trim().toLowerCase(Locale.ROOT));
+        }
+        return Set.copyOf(normalized);
+    }
+
+    // Read one CRLF-terminated header line, or null if the stream ends or the limit is reached
+    private static String readLine(InputStream in, int[] remaining) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (--remaining[0] < 0) return null;
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+        return null;
+    }
+
+    private static void writeHttpError(OutputStream out, int statusCode, String error) throws IOException {
+        byte[] body = ("{\"error\": \"" + error + "\"}").getBytes(StandardCharsets.UTF_8);
+        out.write(("HTTP/1.1 " + statusCode + " " + error + "\r\n" +
+            "Content-Type: application/json\r\n" +
+            "Content-Length: " + body.length + "\r\n" +
+            "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Encode an unmasked server frame
+     */
+    private static byte[] encodeFrame(int opcode, byte[] payload) {
+        int length = payload.length;
+        int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        byte[] frame = new byte[headerLength + length];
+        frame[0] = (byte) (0x80 | opcode);
+        if (length < 126) {
+            frame[1] = (byte) length;
+        } else if (length <= 0xFFFF) {
+            frame[1] = 126;
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+        } else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) ((long) length >>> (56 - 8 * i));
+            }
+        }
+        System.arraycopy(payload, 0, frame, headerLength, length);
+        return frame;
+    }
+
+    private static byte[] textFrame(String text) {
+        return encodeFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    /**
+     * Connections refused because maxConnections was reached
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * An open WebSocket connection: frames are read on the serving thread and
+     * written by a separate writer thread from a bounded queue
+     */
+    private final class Connection implements EventStream.Subscriber {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final String clientIp;
+        private final BlockingQueue<byte[]> outbound;
+        private volatile Set<String> types; // Event types to push, null for all
+        private volatile boolean closed;
+        private volatile int closeCode;
+        private Thread writer;
+
+        private Connection(Socket socket, InputStream in, OutputStream out, String clientIp) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.clientIp = clientIp;
+            this.outbound = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void run() {
+            writer = Thread.ofVirtual().name("EiraRelay-WebSocket-writer").start(this::writeLoop);
+            int code = CLOSE_NORMAL;
+            try {
+                code = readLoop();
+            } catch (IOException e) {
+                // Connection dropped
+            } finally {
+                close(code);
+                try {
+                    writer.join(TimeUnit.SECONDS.toMillis(1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Read frames until the connection closes
+         * @return The close code to send back
+         */
+        private int readLoop() throws IOException {
+            ByteArrayOutputStream fragments = null;
+
+            while (!closed) {
+                int b0 = in.read();
+                if (b0 < 0) return CLOSE_NORMAL;
+                int b1 = readByte();
+
+                boolean fin = (b0 & 0x80) != 0;
+                int opcode = b0 & 0x0F;
+                // No extensions are negotiated, and clients must mask every frame
+                if ((b0 & 0x70) != 0 || (b1 & 0x80) == 0) {
+                    return CLOSE_PROTOCOL_ERROR;
+                }
+
+                long length = b1 & 0x7F;
+                if (length == 126) {
+                    length = (readByte() << 8) | readByte();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte();
+                    }
+                }
+
+                boolean control = opcode >= OP_CLOSE;
+                if (control && (!fin || length > 125)) {
+                    return CLOSE_PROTOCOL_ERROR;
+                }
+                int buffered = fragments != null ? fragments.size() : 0;
+                if (length < 0 || length > maxMessageBytes - buffered) {
+                    return CLOSE_TOO_BIG;
+                }
+
+                byte[] mask = in.readNBytes(4);
+                byte[] payload = in.readNBytes((int) length);
+                if (mask.length < 4 || payload.length < length) {
+                    throw new EOFException();
+                }
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+
+                switch (opcode) {
+                    case OP_PING -> send(encodeFrame(OP_PONG, payload));
+                    case OP_PONG -> { }
+                    case OP_CLOSE -> {
+                        return CLOSE_NORMAL;
+                    }
+                    case OP_TEXT -> {
+                        if (fragments != null) return CLOSE_PROTOCOL_ERROR;
+                        if (fin) {
+                            handleMessage(new String(payload, StandardCharsets.UTF_8));
+                        } else {
+                            fragments = new ByteArrayOutputStream();
+                            fragments.write(payload);
+                        }
+                    }
+                    case OP_CONTINUATION -> {
+                        if (fragments == null) return CLOSE_PROTOCOL_ERROR;
+                        fragments.write(payload);
+                        if (fin) {
+                            handleMessage(fragments.toString(StandardCharsets.UTF_8));
+                            fragments = null;
+                        }
+                    }
+                    case OP_BINARY -> {
+                        return CLOSE_UNSUPPORTED_DATA;
+                    }
+                    default -> {
+                        return CLOSE_PROTOCOL_ERROR;
+                    }
+                }
+            }
+            return CLOSE_GOING_AWAY;
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            return b;
+        }
+
+        private void writeLoop() {
+            try {
+                while (!closed) {
+                    byte[] frame = outbound.poll(PING_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                    if (closed) break;
+                    out.write(frame != null ? frame : encodeFrame(OP_PING, new byte[0]));
+                    // Write whatever else is queued before flushing
+                    while ((frame = outbound.poll()) != null) {
+                        out.write(frame);
+                    }
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Connection dropped or closing
+            }
+
+            // Clear a late interrupt so it does not abort the close frame
+            Thread.interrupted();
+            try {
+                byte[] reason = {(byte) (closeCode >>> 8), (byte) closeCode};
+                out.write(encodeFrame(OP_CLOSE, reason));
+                out.flush();
+            } catch (IOException e) {
+                // Connection already gone
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+
+        private void handleMessage(String text) {
+            messagesReceived.increment();
+
+            JsonObject message = null;
+            try {
+                JsonElement json = JsonParser.parseString(text);
+                if (json.isJsonObject()) message = json.getAsJsonObject();
+            } catch (JsonParseException e) {
+                // Reported below
+            }
+
+            JsonElement id = message != null ? message.get("id") : null;
+            String action = message != null && message.has("action") && message.get("action").isJsonPrimitive()
+                ? message.get("action").getAsString()
+                : null;
+
+            CompletableFuture<HandlerResult> result;
+            RateLimiter limiter = rateLimiter;
+            if (limiter != null && !limiter.isAllowed(clientIp)) {
+                RelayMetrics.RATE_LIMITED_REQUESTS.increment();
+                result = CompletableFuture.completedFuture(new HandlerResult(429, Map.of(
+                    "success", false,
+                    "error", "Rate limit exceeded",
+                    "retryAfterMs", limiter.getRetryAfterMs(clientIp)
+                )));
+            } else if (action == null) {
+                result = CompletableFuture.completedFuture(HandlerResult.error(400,
+                    "Invalid message. Expected: {\"action\": \"trigger|trigger_batch|redstone|broadcast|subscribe|unsubscribe\", \"id\": any, ...}"));
+            } else {
+                JsonElement wait = message.get("wait");
+                boolean waitRequested = wait != null && wait.isJsonPrimitive() && wait.getAsJsonPrimitive().isBoolean()
+                    && wait.getAsBoolean();
+                result = runAction(action, message, waitRequested);
+            }
+
+            // Later messages are read while a waiting action is in progress
+            CompletionResponder.whenComplete(result, r -> sendAck(id, action, r));
+        }
+
+        private void sendAck(JsonElement id, String action, HandlerResult result) {
+            JsonObject ack = new JsonObject();
+            ack.addProperty("type", "ack");
+            if (id != null) ack.add("id", id);
+            if (action != null) ack.addProperty("action", action);
+            ack.addProperty("status", result.statusCode());
+            ack.add("result", GSON.toJsonTree(result.body()));
+            send(textFrame(GSON.toJson(ack)));
+        }
+
+        private CompletableFuture<HandlerResult> runAction(String action, JsonObject message, boolean wait) {
+            switch (action) {
+                case "trigger": {
+                    JsonElement triggerId = message.get("triggerId");
+                    return TriggerHandler.trigger(
+                        triggerId != null && triggerId.isJsonPrimitive() ? triggerId.getAsString() : null,
+                        message, SOURCE, wait);
+                }
+                case "trigger_batch":
+                    return TriggerHandler.triggerBatch(message.get("items"), SOURCE, wait);
+                case "redstone":
+                    // Single emission inline, packed "coords", or an "emissions" array
+                    return RedstoneHandler.emit(message.has("emissions") ? message.get("emissions") : message, wait);
+                case "broadcast":
+                    return BroadcastHandler.broadcast(message, wait);
+                case "subscribe":
+                    return CompletableFuture.completedFuture(subscribe(message.get("types")));
+                case "unsubscribe":
+                    if (eventStream != null) eventStream.removeSubscriber(this);
+                    return CompletableFuture.completedFuture(HandlerResult.ok(Map.of("success", true)));
+                default:
+                    return CompletableFuture.completedFuture(HandlerResult.error(400, "Unknown action: " + action));
+            }
+        }
+
+        private HandlerResult subscribe(JsonElement typesJson) {
+            if (eventStream == null || !eventStream.isAvailable()) {
+                return HandlerResult.error(503, "Event stream not available (Eira Core not loaded)");
+            }
+
+            Set<String> filter = null;
+            if (typesJson != null && typesJson.isJsonArray()) {
+                filter = new HashSet<>();
+                for (JsonElement name : typesJson.getAsJsonArray()) {
+                    String type = name.isJsonPrimitive() ? EventStream.resolveType(name.getAsString()) : null;
+                    if (type == null) {
+                        return HandlerResult.error(400, "Unknown event type: " + name);
+                    }
+                    filter.add(type);
+                }
+            }
+
+            types = filter;
+            eventStream.addSubscriber(this);
+            return HandlerResult.ok(Map.of(
+                "success", true,
+                "types", filter != null ? filter : List.of("*")
+            ));
+        }
+
+        @Override
+        public boolean accepts(String type) {
+            Set<String> filter = types;
+            return filter == null || filter.contains(type);
+        }
+
+        @Override
+        public boolean offer(String type, String json) {
+            return !closed && outbound.offer(textFrame(
+                "{\"type\":\"event\",\"event\":\"" + type + "\",\"data\":" + json + "}"));
+        }
+
+        private void send(byte[] frame) {
+            if (!closed && !outbound.offer(frame)) {
+                // The client is not reading its acknowledgements
+                close(CLOSE_GOING_AWAY);
+            }
+        }
+
+        @Override
+        public void close() {
+            close(CLOSE_GOING_AWAY);
+        }
+
+        void close(int code) {
+            if (closed) return;
+            closeCode = code;
+            closed = true;
+            if (eventStream != null) {
+                eventStream.removeSubscriber(this);
+            }
+            Thread thread = writer;
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -8,6 +8,15 @@ public interface IHttpHandler extends HttpHandler {
 
     String getUrl();
     List<String> httpMethods();
+
+    /**
+     * Path templates served by this handler. A segment in braces matches any
+     * single path segment, e.g. /trigger/{triggerId}. Defaults to getUrl().
+     */
+    default List<String> routes() {
+        return List.of(getUrl());
+    }
+
     default void handle(){
         //DEFAULT IMPLEMENTATION
     }
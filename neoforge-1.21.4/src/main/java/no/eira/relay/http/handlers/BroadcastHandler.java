@@ -1,21 +1,26 @@
 package no.eira.relay.http.handlers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.sun.net.httpserver.HttpExchange;
 import net.minecraft.core.BlockPos;
 import net.minecraft.network.chat.Component;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.phys.AABB;
+import no.eira.relay.Constants;
+import no.eira.relay.http.CompletionResponder;
+import no.eira.relay.http.MainThreadDispatcher;
+import no.eira.relay.http.RequestContext;
 import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.metrics.RelayMetrics;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handler for POST /broadcast
@@ -48,16 +53,28 @@ public class BroadcastHandler implements IHttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        System.out.println("[EiraRelay] Received " + exchange.getRequestMethod() + " request to /broadcast");
+        RequestContext context = RequestContext.get(exchange);
+        CompletionResponder.respond(exchange, broadcast(context.json(), context.waitRequested()),
+            (ex, r) -> sendJsonResponse(ex, r.statusCode(), r.body()));
+    }
 
+    /**
+     * Send a message to players ({message, type, radius, position})
+     * @param wait Complete once the message is sent, reporting how many players it reached
+     */
+    public static CompletableFuture<HandlerResult> broadcast(JsonElement body, boolean wait) {
         // Parse request body
-        BroadcastRequest request = parseRequestBody(exchange);
+        BroadcastRequest request = null;
+        if (body != null && body.isJsonObject()) {
+            try {
+                request = GSON.fromJson(body, BroadcastRequest.class);
+            } catch (JsonParseException e) {
+                // Reported as invalid below
+            }
+        }
         if (request == null || request.message == null || request.message.isEmpty()) {
-            sendJsonResponse(exchange, 400, Map.of(
-                "success", false,
-                "error", "Invalid request body. Expected: {\"message\": \"string\", \"type\": \"chat|title|actionbar\", \"radius\": int, \"position\": [x,y,z]}"
-            ));
-            return;
+            return CompletableFuture.completedFuture(HandlerResult.error(400,
+                "Invalid request body. Expected: {\"message\": \"string\", \"type\": \"chat|title|actionbar\", \"radius\": int, \"position\": [x,y,z]}"));
         }
 
         // Default message type
@@ -67,53 +84,70 @@ public class BroadcastHandler implements IHttpHandler {
         }
 
         if (serverLevel == null || serverLevel.getServer() == null) {
-            sendJsonResponse(exchange, 503, Map.of(
-                "success", false,
-                "error", "Server not available"
-            ));
-            return;
+            return CompletableFuture.completedFuture(HandlerResult.error(503, "Server not available"));
         }
 
-        MinecraftServer server = serverLevel.getServer();
+        final BroadcastRequest broadcast = request;
         final String messageType = type;
-        final int[] playersReached = {0};
-
-        server.execute(() -> {
-            List<ServerPlayer> players = getTargetPlayers(request);
-            Component message = Component.literal(request.message);
-
-            for (ServerPlayer player : players) {
-                try {
-                    switch (messageType) {
-                        case "chat":
-                            player.sendSystemMessage(message);
-                            break;
-                        case "title":
-                            player.connection.send(new net.minecraft.network.protocol.game.ClientboundSetTitleTextPacket(message));
-                            break;
-                        case "actionbar":
-                            player.connection.send(new net.minecraft.network.protocol.game.ClientboundSetActionBarTextPacket(message));
-                            break;
-                    }
-                    playersReached[0]++;
-                } catch (Exception e) {
-                    System.err.println("[EiraRelay] Failed to send message to player: " + e.getMessage());
-                }
-            }
 
-            System.out.println("[EiraRelay] Broadcast sent to " + playersReached[0] + " player(s): " + request.message);
-        });
+        if (wait) {
+            return MainThreadDispatcher.call(() -> deliver(broadcast, messageType)).thenApply(playersReached -> HandlerResult.ok(Map.of(
+                "success", true,
+                "message", broadcast.message,
+                "type", messageType,
+                "broadcast", true,
+                "playersReached", playersReached
+            )));
+        }
+
+        MainThreadDispatcher.submit(() -> deliver(broadcast, messageType));
 
-        // Send response (note: player count may not be accurate due to async execution)
-        sendJsonResponse(exchange, 200, Map.of(
+        // Note: player count is not known here due to async execution (use ?wait=true to get it)
+        return CompletableFuture.completedFuture(HandlerResult.ok(Map.of(
             "success", true,
             "message", request.message,
             "type", messageType,
             "broadcast", true
-        ));
+        )));
     }
 
-    private List<ServerPlayer> getTargetPlayers(BroadcastRequest request) {
+    /**
+     * Send the message to the target players. Runs on the main server thread.
+     * @return Number of players reached
+     */
+    private static int deliver(BroadcastRequest broadcast, String messageType) {
+        List<ServerPlayer> players = getTargetPlayers(broadcast);
+        Component message = Component.literal(broadcast.message);
+        int playersReached = 0;
+
+        for (ServerPlayer player : players) {
+            try {
+                switch (messageType) {
+                    case "chat":
+                        player.sendSystemMessage(message);
+                        break;
+                    case "title":
+                        player.connection.send(new net.minecraft.network.protocol.game.ClientboundSetTitleTextPacket(message));
+                        break;
+                    case "actionbar":
+                        player.connection.send(new net.minecraft.network.protocol.game.ClientboundSetActionBarTextPacket(message));
+                        break;
+                }
+                playersReached++;
+            } catch (Exception e) {
+                Constants.LOG.warn("Failed to send broadcast to player: {}", e.getMessage());
+            }
+        }
+
+        RelayMetrics.BROADCASTS.increment();
+        RelayMetrics.BROADCAST_PLAYERS_REACHED.add(playersReached);
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Broadcast sent to {} player(s): {}", playersReached, broadcast.message);
+        }
+        return playersReached;
+    }
+
+    private static List<ServerPlayer> getTargetPlayers(BroadcastRequest request) {
         if (serverLevel == null) return Collections.emptyList();
 
         List<ServerPlayer> allPlayers = serverLevel.players();
@@ -144,26 +178,6 @@ public class BroadcastHandler implements IHttpHandler {
         return nearbyPlayers;
     }
 
-    private BroadcastRequest parseRequestBody(HttpExchange exchange) {
-        try {
-            InputStreamReader isr = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8);
-            BufferedReader br = new BufferedReader(isr);
-            StringBuilder buf = new StringBuilder();
-            int b;
-            while ((b = br.read()) != -1) {
-                buf.append((char) b);
-            }
-            br.close();
-
-            String body = buf.toString();
-            if (body.isEmpty()) return null;
-
-            return GSON.fromJson(body, BroadcastRequest.class);
-        } catch (Exception e) {
-            System.err.println("[EiraRelay] Failed to parse broadcast request: " + e.getMessage());
-            return null;
-        }
-    }
 
     private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) throws IOException {
         String json = GSON.toJson(data);
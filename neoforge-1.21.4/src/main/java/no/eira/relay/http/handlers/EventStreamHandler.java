@@ -0,0 +1,109 @@
+package no.eira.relay.http.handlers;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.Constants;
+import no.eira.relay.http.EventStream;
+import no.eira.relay.http.HttpServerImpl;
+import no.eira.relay.http.RequestContext;
+import no.eira.relay.http.api.IHttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Handler for GET /events
+ * Server-Sent Events stream of Eira events, optionally filtered with ?types=A,B
+ */
+public class EventStreamHandler implements IHttpHandler {
+
+    private static final String ALLOWED_METHOD = "GET";
+    private static final Gson GSON = new Gson();
+
+    private final HttpServerImpl httpServer;
+
+    public EventStreamHandler(HttpServerImpl httpServer) {
+        this.httpServer = httpServer;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/events";
+    }
+
+    @Override
+    public List<String> httpMethods() {
+        return List.of(ALLOWED_METHOD);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Parse event type filter
+        Set<String> types = null;
+        String typesParam = RequestContext.get(exchange).queryParameters().get("types");
+        if (typesParam != null && !typesParam.isBlank()) {
+            types = new HashSet<>();
+            for (String name : typesParam.split(",")) {
+                if (name.isBlank()) continue;
+                String type = EventStream.resolveType(name.trim());
+                if (type == null) {
+                    sendJsonResponse(exchange, 400, Map.of(
+                        "success", false,
+                        "error", "Unknown event type: " + name.trim()
+                    ));
+                    return;
+                }
+                types.add(type);
+            }
+        }
+
+        EventStream eventStream = httpServer.getEventStream();
+        if (eventStream == null || !eventStream.isAvailable()) {
+            sendJsonResponse(exchange, 503, Map.of(
+                "success", false,
+                "error", "Event stream not available (Eira Core not loaded)"
+            ));
+            return;
+        }
+
+        EventStream.Client client = eventStream.register(exchange, types);
+        if (client == null) {
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            sendJsonResponse(exchange, 503, Map.of(
+                "success", false,
+                "error", "Too many event stream clients"
+            ));
+            return;
+        }
+
+        // Keep the response open; the client's writer thread streams events from here
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        try {
+            exchange.sendResponseHeaders(200, 0);
+            client.start();
+        } catch (IOException | RuntimeException e) {
+            // Free the slot taken by register, or it would count against maxClients forever
+            client.close();
+            throw e;
+        }
+
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Event stream client connected from {}{}",
+                exchange.getRemoteAddress().getAddress().getHostAddress(),
+                types != null ? " (types: " + String.join(", ", types) + ")" : "");
+        }
+    }
+
+    private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) throws IOException {
+        String json = GSON.toJson(data);
+        byte[] responseBytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package no.eira.relay.http.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.http.AccessLog;
+import no.eira.relay.http.EventStream;
+import no.eira.relay.http.HttpServerImpl;
+import no.eira.relay.http.IdempotencyCache;
+import no.eira.relay.http.MainThreadDispatcher;
+import no.eira.relay.http.RateLimiter;
+import no.eira.relay.http.ReplayCache;
+import no.eira.relay.http.RequestExecutor;
+import no.eira.relay.http.WebSocketServer;
+import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.metrics.PrometheusWriter;
+import no.eira.relay.http.metrics.RelayMetrics;
+import no.eira.relay.http.middleware.ApiKeyAuthMiddleware;
+import no.eira.relay.http.middleware.MetricsMiddleware;
+import org.eira.core.api.EiraAPI;
+import org.eira.core.impl.SimpleEventBus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static no.eira.relay.http.metrics.PrometheusWriter.labels;
+
+/**
+ * Handler for GET /metrics
+ * Counters, gauges and latency histograms in the Prometheus text format.
+ * Everything here is read from counters the request path already updates;
+ * the text is only built when scraped.
+ */
+public class MetricsHandler implements IHttpHandler {
+
+    private static final String ALLOWED_METHOD = "GET";
+
+    private final HttpServerImpl httpServer;
+
+    public MetricsHandler(HttpServerImpl httpServer) {
+        this.httpServer = httpServer;
+    }
+
+    @Override
+    public String getUrl() {
+        return "/metrics";
+    }
+
+    @Override
+    public List<String> httpMethods() {
+        return List.of(ALLOWED_METHOD);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        PrometheusWriter out = new PrometheusWriter();
+        writeHttpMetrics(out);
+        writeWorldMetrics(out);
+        writeOutboundMetrics(out);
+        writeStreamMetrics(out);
+        writeEventBusMetrics(out);
+
+        byte[] responseBytes = out.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", PrometheusWriter.CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+
+    private void writeHttpMetrics(PrometheusWriter out) {
+        // Per-route requests and latency (when middleware metrics are enabled)
+        Collection<MetricsMiddleware> routes = httpServer.getRouteMetrics();
+        out.family("eira_http_requests_total", "counter", "HTTP requests handled, by route, method and status class");
+        for (MetricsMiddleware route : routes) {
+            for (int statusClass = 1; statusClass <= 5; statusClass++) {
+                long responses = route.getResponses(statusClass);
+                if (responses == 0) continue;
+                out.sample("eira_http_requests_total", labels("route", route.getRoute(),
+                    "method", route.getMethod(), "status", statusClass + "xx"), responses);
+            }
+        }
+        out.family("eira_http_request_duration_seconds", "histogram", "Time spent in middleware and handler, by route and method");
+        for (MetricsMiddleware route : routes) {
+            out.histogram("eira_http_request_duration_seconds",
+                labels("route", route.getRoute(), "method", route.getMethod()), route.getDuration());
+        }
+
+        // Requests answered before reaching a handler
+        out.family("eira_http_requests_rejected_total", "counter", "HTTP requests rejected before reaching a handler, by reason");
+        out.sample("eira_http_requests_rejected_total", labels("reason", "overloaded"), RelayMetrics.SHED_REQUESTS.sum());
+        out.sample("eira_http_requests_rejected_total", labels("reason", "not_found"), RelayMetrics.NOT_FOUND_REQUESTS.sum());
+        out.sample("eira_http_requests_rejected_total", labels("reason", "method_not_allowed"), RelayMetrics.METHOD_NOT_ALLOWED_REQUESTS.sum());
+        out.sample("eira_http_requests_rejected_total", labels("reason", "rate_limited"), RelayMetrics.RATE_LIMITED_REQUESTS.sum());
+        out.sample("eira_http_requests_rejected_total", labels("reason", "body_too_large"), RelayMetrics.BODY_TOO_LARGE_REQUESTS.sum());
+        ApiKeyAuthMiddleware apiKeyAuth = httpServer.getApiKeyAuth();
+        out.sample("eira_http_requests_rejected_total", labels("reason", "unauthorized"), apiKeyAuth.getRejectedRequests());
+
+        out.family("eira_http_api_key_requests_total", "counter", "Requests accepted per API key");
+        for (Map.Entry<String, Long> entry : apiKeyAuth.getRequestsByKey().entrySet()) {
+            out.sample("eira_http_api_key_requests_total", labels("key", entry.getKey()), entry.getValue());
+        }
+
+        RequestExecutor executor = httpServer.getRequestExecutor();
+        if (executor != null) {
+            out.gauge("eira_http_requests_active", "Requests currently being handled", executor.getActiveRequests());
+            out.gauge("eira_http_requests_queued", "Requests waiting for a worker (POOL mode)", executor.getQueuedRequests());
+        }
+
+        RateLimiter rateLimiter = httpServer.getRateLimiter();
+        if (rateLimiter != null) {
+            out.gauge("eira_rate_limit_tracked_clients", "Client IPs tracked by the rate limiter", rateLimiter.getTrackedClients());
+        }
+
+        IdempotencyCache idempotencyCache = httpServer.getIdempotencyCache();
+        if (idempotencyCache != null) {
+            out.gauge("eira_idempotency_keys", "Idempotency keys currently remembered", idempotencyCache.getKeyCount());
+            out.counter("eira_idempotency_replayed_total", "Responses replayed for a repeated Idempotency-Key", idempotencyCache.getReplayedRequests());
+        }
+
+        ReplayCache replayCache = httpServer.getReplayCache();
+        if (replayCache != null) {
+            out.counter("eira_webhook_replays_rejected_total", "Signed receiver requests rejected as replays", replayCache.getReplayedRequests());
+        }
+
+        AccessLog accessLog = httpServer.getAccessLog();
+        if (accessLog != null) {
+            out.counter("eira_access_log_lines_total", "Access log lines written", accessLog.getWrittenCount());
+            out.family("eira_access_log_skipped_total", "counter", "Access log records not written, by reason");
+            out.sample("eira_access_log_skipped_total", labels("reason", "sampled"), accessLog.getSampledOutCount());
+            out.sample("eira_access_log_skipped_total", labels("reason", "queue_full"), accessLog.getDroppedCount());
+        }
+    }
+
+    private static void writeWorldMetrics(PrometheusWriter out) {
+        out.counter("eira_triggers_total", "Triggers activated over HTTP or WebSocket", RelayMetrics.TRIGGERS.sum());
+        out.counter("eira_triggers_without_blocks_total", "Triggers activated with no receiver block registered", RelayMetrics.TRIGGERS_WITHOUT_BLOCKS.sum());
+        out.family("eira_trigger_blocks_total", "counter", "Receiver blocks targeted by triggers, by outcome");
+        out.sample("eira_trigger_blocks_total", labels("outcome", "signalled"), RelayMetrics.TRIGGER_BLOCKS_SIGNALLED.sum());
+        out.sample("eira_trigger_blocks_total", labels("outcome", "missing"), RelayMetrics.TRIGGER_BLOCKS_MISSING.sum());
+
+        out.counter("eira_receiver_signals_total", "Receiver blocks signalled by their custom endpoint", RelayMetrics.RECEIVER_SIGNALS.sum());
+        out.counter("eira_receiver_auth_failures_total", "Receiver endpoint requests refused for a bad token or signature", RelayMetrics.RECEIVER_AUTH_FAILURES.sum());
+
+        out.counter("eira_redstone_emissions_started_total", "Redstone emissions started", RelayMetrics.REDSTONE_EMISSIONS_STARTED.sum());
+        out.counter("eira_redstone_emissions_ended_total", "Redstone emissions that expired", RelayMetrics.REDSTONE_EMISSIONS_ENDED.sum());
+        out.gauge("eira_redstone_emissions_active", "Redstone emissions currently active", RedstoneHandler.getActiveEmissions().size());
+        out.family("eira_redstone_tick_duration_seconds", "histogram", "Time spent expiring redstone emissions per server tick");
+        out.histogram("eira_redstone_tick_duration_seconds", "", RelayMetrics.REDSTONE_TICK);
+
+        out.counter("eira_broadcasts_total", "Broadcast messages delivered", RelayMetrics.BROADCASTS.sum());
+        out.counter("eira_broadcast_players_reached_total", "Players that received a broadcast", RelayMetrics.BROADCAST_PLAYERS_REACHED.sum());
+
+        out.gauge("eira_dispatch_pending", "World actions queued for the main server thread", MainThreadDispatcher.getPendingTasks());
+        out.counter("eira_dispatch_executed_total", "World actions run on the main server thread", MainThreadDispatcher.getExecutedTasks());
+        out.counter("eira_dispatch_over_budget_ticks_total", "Server ticks that ran out of dispatch budget", MainThreadDispatcher.getOverBudgetTicks());
+        out.family("eira_dispatch_queue_age_seconds", "histogram", "Age of the oldest queued world action when a server tick starts draining the queue");
+        out.histogram("eira_dispatch_queue_age_seconds", "", RelayMetrics.DISPATCH_QUEUE_AGE);
+        out.family("eira_dispatch_tick_duration_seconds", "histogram", "Time spent running queued world actions per server tick");
+        out.histogram("eira_dispatch_tick_duration_seconds", "", RelayMetrics.DISPATCH_TICK);
+    }
+
+    private static void writeOutboundMetrics(PrometheusWriter out) {
+        out.family("eira_outbound_requests_total", "counter", "Outbound HTTP request attempts, by outcome");
+        out.sample("eira_outbound_requests_total", labels("outcome", "success"), RelayMetrics.OUTBOUND_SUCCEEDED.sum());
+        out.sample("eira_outbound_requests_total", labels("outcome", "failure"), RelayMetrics.OUTBOUND_FAILED.sum());
+        out.counter("eira_outbound_retries_total", "Outbound HTTP requests retried", RelayMetrics.OUTBOUND_RETRIES.sum());
+        out.family("eira_outbound_request_duration_seconds", "histogram", "Outbound HTTP request attempt duration");
+        out.histogram("eira_outbound_request_duration_seconds", "", RelayMetrics.OUTBOUND_DURATION);
+    }
+
+    private void writeStreamMetrics(PrometheusWriter out) {
+        EventStream eventStream = httpServer.getEventStream();
+        if (eventStream != null) {
+            out.gauge("eira_event_stream_clients", "Clients connected to GET /events", eventStream.getClientCount());
+            out.counter("eira_event_stream_events_sent_total", "Events written to GET /events clients", eventStream.getEventsSent());
+            out.counter("eira_event_stream_dropped_clients_total", "GET /events clients disconnected for falling behind", eventStream.getDroppedClients());
+        }
+
+        WebSocketServer webSocketServer = httpServer.getWebSocketServer();
+        if (webSocketServer != null) {
+            out.gauge("eira_websocket_connections", "Open WebSocket connections", webSocketServer.getConnectionCount());
+            out.counter("eira_websocket_messages_received_total", "WebSocket messages received", webSocketServer.getMessagesReceived());
+            out.counter("eira_websocket_rejected_connections_total", "WebSocket connections refused at the connection limit", webSocketServer.getRejectedConnections());
+        }
+    }
+
+    private static void writeEventBusMetrics(PrometheusWriter out) {
+        EiraAPI.ifPresent(api -> {
+            if (!(api.events() instanceof SimpleEventBus bus)) return;
+            out.counter("eira_event_bus_published_total", "Events published on the Eira event bus", bus.getPublishedCount());
+            out.counter("eira_event_bus_unhandled_total", "Published events with no subscribers", bus.getUnhandledCount());
+            out.family("eira_event_bus_deliveries_total", "counter", "Event handler invocations, by outcome");
+            out.sample("eira_event_bus_deliveries_total", labels("outcome", "success"), bus.getDeliveryCount());
+            out.sample("eira_event_bus_deliveries_total", labels("outcome", "error"), bus.getHandlerErrorCount());
+            out.counter("eira_event_bus_handler_seconds_total", "Time spent running event handlers",
+                bus.getHandlerNanos() / 1_000_000_000.0);
+            out.gauge("eira_event_bus_queued", "Events waiting for ASYNC and MAIN_THREAD subscribers", bus.getQueuedCount());
+            out.counter("eira_event_bus_dropped_total", "Events dropped because a subscriber's queue was full", bus.getDroppedCount());
+            out.gauge("eira_event_bus_pipeline_queued", "Events waiting in the batch publishing pipeline", bus.getPipelineQueuedCount());
+            out.counter("eira_event_bus_pipeline_rejected_total", "Events the batch publishing pipeline had no room for", bus.getPipelineRejectedCount());
+        });
+    }
+}
@@ -3,7 +3,16 @@ package no.eira.relay.http.handlers;
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import no.eira.relay.Constants;
+import no.eira.relay.http.EventStream;
+import no.eira.relay.http.HttpServerImpl;
+import no.eira.relay.http.IdempotencyCache;
+import no.eira.relay.http.MainThreadDispatcher;
+import no.eira.relay.http.RateLimiter;
+import no.eira.relay.http.RequestExecutor;
+import no.eira.relay.http.WebSocketServer;
 import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.middleware.ApiKeyAuthMiddleware;
+import no.eira.relay.http.middleware.MetricsMiddleware;
 import no.eira.relay.platform.Services;
 
 import java.io.IOException;
@@ -24,6 +33,12 @@ public class StatusHandler implements IHttpHandler {
     // Track server start time
     private static long serverStartTime = 0;
 
+    private final HttpServerImpl httpServer;
+
+    public StatusHandler(HttpServerImpl httpServer) {
+        this.httpServer = httpServer;
+    }
+
     /**
      * Record the server start time
      */
@@ -43,8 +58,6 @@ public class StatusHandler implements IHttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        System.out.println("[EiraRelay] Received " + exchange.getRequestMethod() + " request to /status");
-
         // Build status response
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("status", "online");
@@ -65,8 +78,95 @@ public class StatusHandler implements IHttpHandler {
         // Server configuration
         Map<String, Object> serverConfig = new LinkedHashMap<>();
         serverConfig.put("port", Services.HTTP_CONFIG.getPort());
+        serverConfig.put("transport", Services.HTTP_CONFIG.getTransport().name());
         response.put("server", serverConfig);
 
+        // Request executor load
+        RequestExecutor executor = httpServer.getRequestExecutor();
+        if (executor != null) {
+            Map<String, Object> requests = new LinkedHashMap<>();
+            requests.put("mode", executor.getMode().name());
+            requests.put("active", executor.getActiveRequests());
+            requests.put("queued", executor.getQueuedRequests());
+            requests.put("completed", executor.getCompletedRequests());
+            requests.put("rejected", executor.getRejectedRequests());
+            response.put("requests", requests);
+        }
+
+        // Main thread dispatch queue
+        Map<String, Object> dispatch = new LinkedHashMap<>();
+        dispatch.put("pending", MainThreadDispatcher.getPendingTasks());
+        dispatch.put("executed", MainThreadDispatcher.getExecutedTasks());
+        dispatch.put("overBudgetTicks", MainThreadDispatcher.getOverBudgetTicks());
+        response.put("dispatch", dispatch);
+
+        // Event stream clients
+        EventStream eventStream = httpServer.getEventStream();
+        if (eventStream != null) {
+            Map<String, Object> events = new LinkedHashMap<>();
+            events.put("clients", eventStream.getClientCount());
+            events.put("eventsSent", eventStream.getEventsSent());
+            events.put("droppedClients", eventStream.getDroppedClients());
+            response.put("eventStream", events);
+        }
+
+        // WebSocket connections
+        WebSocketServer webSocketServer = httpServer.getWebSocketServer();
+        if (webSocketServer != null) {
+            Map<String, Object> webSocket = new LinkedHashMap<>();
+            webSocket.put("port", webSocketServer.getPort());
+            webSocket.put("connections", webSocketServer.getConnectionCount());
+            webSocket.put("messagesReceived", webSocketServer.getMessagesReceived());
+            webSocket.put("rejectedConnections", webSocketServer.getRejectedConnections());
+            response.put("webSocket", webSocket);
+        }
+
+        // Rate limiter client tracking
+        RateLimiter rateLimiter = httpServer.getRateLimiter();
+        if (rateLimiter != null) {
+            Map<String, Object> rateLimit = new LinkedHashMap<>();
+            rateLimit.put("requestsPerMinute", rateLimiter.getMaxRequests());
+            rateLimit.put("trackedClients", rateLimiter.getTrackedClients());
+            rateLimit.put("maxTrackedClients", rateLimiter.getMaxClients());
+            rateLimit.put("evictedClients", rateLimiter.getEvictedClients());
+            response.put("rateLimit", rateLimit);
+        }
+
+        // API keys
+        ApiKeyAuthMiddleware apiKeyAuth = httpServer.getApiKeyAuth();
+        if (apiKeyAuth.isRequired()) {
+            Map<String, Object> auth = new LinkedHashMap<>();
+            auth.put("keys", apiKeyAuth.getKeyCount());
+            auth.put("rejected", apiKeyAuth.getRejectedRequests());
+            auth.put("requestsByKey", apiKeyAuth.getRequestsByKey());
+            response.put("auth", auth);
+        }
+
+        // Idempotency-Key cache
+        IdempotencyCache idempotencyCache = httpServer.getIdempotencyCache();
+        if (idempotencyCache != null) {
+            Map<String, Object> idempotency = new LinkedHashMap<>();
+            idempotency.put("windowSeconds", idempotencyCache.getWindowSeconds());
+            idempotency.put("keys", idempotencyCache.getKeyCount());
+            idempotency.put("replayed", idempotencyCache.getReplayedRequests());
+            response.put("idempotency", idempotency);
+        }
+
+        // Per-route request metrics
+        List<Map<String, Object>> routes = new ArrayList<>();
+        for (MetricsMiddleware metrics : httpServer.getRouteMetrics()) {
+            Map<String, Object> route = new LinkedHashMap<>();
+            route.put("route", metrics.getRoute());
+            route.put("method", metrics.getMethod());
+            route.put("requests", metrics.getRequests());
+            route.put("serverErrors", metrics.getServerErrors());
+            route.put("avgMs", Math.round(metrics.getAverageMillis() * 100) / 100.0);
+            routes.add(route);
+        }
+        if (!routes.isEmpty()) {
+            response.put("routes", routes);
+        }
+
         // Registered triggers
         Set<String> triggers = TriggerHandler.getRegisteredTriggers();
         response.put("registeredTriggers", triggers);
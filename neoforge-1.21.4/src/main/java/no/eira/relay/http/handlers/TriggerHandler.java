@@ -1,34 +1,44 @@
 package no.eira.relay.http.handlers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.sun.net.httpserver.HttpExchange;
 import net.minecraft.core.BlockPos;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
+import no.eira.relay.Constants;
 import no.eira.relay.block.HttpReceiverBlock;
 import no.eira.relay.blockentity.HttpReceiverBlockEntity;
+import no.eira.relay.http.CompletionResponder;
+import no.eira.relay.http.MainThreadDispatcher;
+import no.eira.relay.http.RequestContext;
 import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.metrics.RelayMetrics;
 import org.eira.core.api.EiraAPI;
 import org.eira.core.api.events.ExternalTriggerEvent;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Handler for POST /trigger/{triggerId}
+ * Handler for POST /trigger/{triggerId} and POST /trigger/batch
  * Named trigger endpoint for QR codes, sensors, and external systems.
  */
 public class TriggerHandler implements IHttpHandler {
 
     private static final String ALLOWED_METHOD = "POST";
     private static final Gson GSON = new Gson();
+    private static final String BATCH_ROUTE = "/trigger/batch";
+    private static final String TRIGGER_ROUTE = "/trigger/{triggerId}";
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final String HTTP_SOURCE = "http-trigger";
 
     // Global registry of trigger IDs to block positions
     private static final Map<String, Set<TriggerTarget>> triggerRegistry = new ConcurrentHashMap<>();
@@ -46,7 +56,9 @@ public class TriggerHandler implements IHttpHandler {
             .add(new TriggerTarget(pos, level));
         serverLevel = level;
 
-        System.out.println("[EiraRelay] Registered trigger '" + triggerId + "' for block at " + pos);
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Registered trigger '{}' for block at {}", triggerId, pos);
+        }
     }
 
     /**
@@ -62,7 +74,9 @@ public class TriggerHandler implements IHttpHandler {
                 triggerRegistry.remove(triggerId);
             }
         }
-        System.out.println("[EiraRelay] Unregistered trigger '" + triggerId + "' for block at " + pos);
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Unregistered trigger '{}' for block at {}", triggerId, pos);
+        }
     }
 
     /**
@@ -77,6 +91,12 @@ public class TriggerHandler implements IHttpHandler {
         return "/trigger";
     }
 
+    @Override
+    public List<String> routes() {
+        // Bare /trigger is routed here too so it gets a helpful 400
+        return List.of(getUrl(), BATCH_ROUTE, TRIGGER_ROUTE);
+    }
+
     @Override
     public List<String> httpMethods() {
         return List.of(ALLOWED_METHOD);
@@ -84,40 +104,39 @@ public class TriggerHandler implements IHttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        System.out.println("[EiraRelay] Received " + exchange.getRequestMethod() + " request to " + path);
-
-        // Extract trigger ID from path: /trigger/{triggerId}
-        String triggerId = extractTriggerId(path);
-        if (triggerId == null || triggerId.isEmpty()) {
-            sendJsonResponse(exchange, 400, Map.of(
-                "success", false,
-                "error", "Missing trigger ID. Use /trigger/{triggerId}"
-            ));
-            return;
+        RequestContext context = RequestContext.get(exchange);
+        CompletableFuture<HandlerResult> result;
+        if (BATCH_ROUTE.equals(context.route())) {
+            // Batch of triggers: /trigger/batch
+            result = triggerBatch(context.json(), HTTP_SOURCE, context.waitRequested());
+        } else {
+            // Trigger ID from path: /trigger/{triggerId}
+            result = trigger(context.pathParam("triggerId"), context.json(), HTTP_SOURCE, context.waitRequested());
         }
+        CompletionResponder.respond(exchange, result,
+            (ex, r) -> sendJsonResponse(ex, r.statusCode(), r.body()));
+    }
 
-        // Validate API key if required
-        if (!validateApiKey(exchange)) {
-            return; // Response already sent
+    /**
+     * Activate a trigger and publish an ExternalTriggerEvent
+     * @param triggerId The trigger to activate
+     * @param body Optional {teamId, playerId, data} object
+     * @param source Source reported in the event (e.g. "http-trigger")
+     * @param wait Complete once the blocks have been signalled, reporting how many actually were
+     */
+    public static CompletableFuture<HandlerResult> trigger(String triggerId, JsonElement body, String source, boolean wait) {
+        if (triggerId == null || triggerId.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                HandlerResult.error(400, "Missing trigger ID. Use /trigger/{triggerId}"));
         }
 
-        // Parse request body
-        TriggerRequest request = parseRequestBody(exchange);
+        TriggerRequest request = parseObject(body, TriggerRequest.class);
 
         // Find blocks registered for this trigger
-        Set<TriggerTarget> targets = triggerRegistry.get(triggerId);
-        int blocksTriggered = 0;
+        List<TriggerTarget> targets = new ArrayList<>();
+        addLiveTargets(triggerId, targets);
+        int blocksTriggered = targets.size();
 
-        if (targets != null && !targets.isEmpty()) {
-            for (TriggerTarget target : targets) {
-                if (triggerBlock(target)) {
-                    blocksTriggered++;
-                }
-            }
-        }
-
-        // Send success response
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("success", true);
         response.put("triggerId", triggerId);
@@ -131,81 +150,212 @@ public class TriggerHandler implements IHttpHandler {
 
         // Publish event to Eira Core if available
         final TriggerRequest finalRequest = request;
-        final String finalTriggerId = triggerId;
         EiraAPI.ifPresent(api -> {
             Map<String, Object> eventData = finalRequest != null && finalRequest.data != null
                 ? finalRequest.data
                 : new HashMap<>();
-            api.events().publish(new ExternalTriggerEvent("http-trigger", finalTriggerId, eventData));
+            api.events().publish(new ExternalTriggerEvent(source, triggerId, eventData));
         });
 
-        sendJsonResponse(exchange, 200, response);
-        System.out.println("[EiraRelay] Trigger '" + triggerId + "' activated " + blocksTriggered + " block(s)");
+        if (!wait) {
+            if (!targets.isEmpty()) {
+                MainThreadDispatcher.submit(() -> signalBlocks(targets));
+            }
+            if (Constants.LOG.isDebugEnabled()) {
+                Constants.LOG.debug("Trigger '{}' activated {} block(s)", triggerId, blocksTriggered);
+            }
+            return CompletableFuture.completedFuture(HandlerResult.ok(response));
+        }
+
+        // Report the blocks that were still there when the task ran
+        return MainThreadDispatcher.call(() -> signalBlocks(targets)).thenApply(signalled -> {
+            response.put("blocksTriggered", signalled);
+            response.put("blocksMissing", blocksTriggered - signalled);
+            if (Constants.LOG.isDebugEnabled()) {
+                Constants.LOG.debug("Trigger '{}' activated {} block(s)", triggerId, signalled);
+            }
+            return HandlerResult.ok(response);
+        });
     }
 
-    private String extractTriggerId(String path) {
-        // Path format: /trigger/{triggerId}
-        if (path.startsWith("/trigger/")) {
-            String id = path.substring("/trigger/".length());
-            // Remove trailing slash if present
-            if (id.endsWith("/")) {
-                id = id.substring(0, id.length() - 1);
+    /**
+     * Activate many triggers with a single main thread hop
+     * @param body Array of {triggerId, teamId, playerId, data} objects
+     * @param source Source reported in the events
+     * @param wait Complete once the blocks have been signalled, reporting how many actually were
+     */
+    public static CompletableFuture<HandlerResult> triggerBatch(JsonElement body, String source, boolean wait) {
+        if (body == null || !body.isJsonArray()) {
+            return CompletableFuture.completedFuture(HandlerResult.error(400,
+                "Invalid request body. Expected: [{\"triggerId\": string, \"teamId\": string, \"playerId\": string, \"data\": object}, ...]"));
+        }
+
+        JsonArray items = body.getAsJsonArray();
+        if (items.size() > MAX_BATCH_SIZE) {
+            return CompletableFuture.completedFuture(
+                HandlerResult.error(400, "Too many triggers in batch (max " + MAX_BATCH_SIZE + ")"));
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        List<TriggerTarget> targetsToSignal = new ArrayList<>();
+        // Per accepted item: its result and the number of its targets in targetsToSignal
+        List<Map<String, Object>> acceptedResults = new ArrayList<>(items.size());
+        List<Integer> targetCounts = new ArrayList<>(items.size());
+        List<BatchTriggerRequest> accepted = new ArrayList<>(items.size());
+        int failed = 0;
+
+        for (JsonElement item : items) {
+            BatchTriggerRequest request = parseObject(item, BatchTriggerRequest.class);
+            Map<String, Object> result = new LinkedHashMap<>();
+
+            if (request == null || request.triggerId == null || request.triggerId.isEmpty()) {
+                result.put("success", false);
+                result.put("error", "Missing triggerId");
+                results.add(result);
+                failed++;
+                continue;
             }
-            return id.isEmpty() ? null : id;
+
+            int blocksTriggered = addLiveTargets(request.triggerId, targetsToSignal);
+
+            result.put("success", true);
+            result.put("triggerId", request.triggerId);
+            result.put("blocksTriggered", blocksTriggered);
+            if (request.teamId != null) result.put("teamId", request.teamId);
+            if (request.playerId != null) result.put("playerId", request.playerId);
+            results.add(result);
+            accepted.add(request);
+            acceptedResults.add(result);
+            targetCounts.add(blocksTriggered);
         }
-        return null;
-    }
 
-    private boolean validateApiKey(HttpExchange exchange) throws IOException {
-        // TODO: Phase 2 - Add global API key validation from HttpServerConfig
-        // For now, allow all requests (per-block token validation handled separately)
-        return true;
-    }
+        // One main thread task for every block in the batch
+        CompletableFuture<boolean[]> signalled = null;
+        if (wait) {
+            signalled = MainThreadDispatcher.call(() -> {
+                boolean[] outcome = new boolean[targetsToSignal.size()];
+                for (int i = 0; i < outcome.length; i++) {
+                    outcome[i] = signalBlock(targetsToSignal.get(i));
+                }
+                return outcome;
+            });
+        } else if (!targetsToSignal.isEmpty()) {
+            MainThreadDispatcher.submit(() -> signalBlocks(targetsToSignal));
+        }
 
-    private TriggerRequest parseRequestBody(HttpExchange exchange) {
-        try {
-            InputStreamReader isr = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8);
-            BufferedReader br = new BufferedReader(isr);
-            StringBuilder buf = new StringBuilder();
-            int b;
-            while ((b = br.read()) != -1) {
-                buf.append((char) b);
+        // Publish on this thread like /trigger/{triggerId}, as one batch
+        EiraAPI.ifPresent(api -> {
+            List<ExternalTriggerEvent> events = new ArrayList<>(accepted.size());
+            for (BatchTriggerRequest request : accepted) {
+                Map<String, Object> eventData = request.data != null ? request.data : new HashMap<>();
+                events.add(new ExternalTriggerEvent(source, request.triggerId, eventData));
             }
-            br.close();
+            api.events().publishAll(events);
+        });
 
-            String body = buf.toString();
-            if (body.isEmpty()) return null;
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", failed == 0);
+        response.put("succeeded", accepted.size());
+        response.put("failed", failed);
+        response.put("blocksTriggered", targetsToSignal.size());
+        response.put("results", results);
+
+        if (signalled == null) {
+            if (Constants.LOG.isDebugEnabled()) {
+                Constants.LOG.debug("Trigger batch of {} activated {} block(s)", items.size(), targetsToSignal.size());
+            }
+            return CompletableFuture.completedFuture(HandlerResult.ok(response));
+        }
 
-            return GSON.fromJson(body, TriggerRequest.class);
-        } catch (Exception e) {
-            System.err.println("[EiraRelay] Failed to parse trigger request body: " + e.getMessage());
-            return null;
+        // Replace the queued counts with the blocks each item actually reached
+        return signalled.thenApply(outcome -> {
+            int next = 0;
+            int total = 0;
+            for (int i = 0; i < acceptedResults.size(); i++) {
+                int reached = 0;
+                int count = targetCounts.get(i);
+                for (int j = 0; j < count; j++) {
+                    if (outcome[next++]) reached++;
+                }
+                acceptedResults.get(i).put("blocksTriggered", reached);
+                acceptedResults.get(i).put("blocksMissing", count - reached);
+                total += reached;
+            }
+            response.put("blocksTriggered", total);
+            response.put("blocksMissing", targetsToSignal.size() - total);
+            if (Constants.LOG.isDebugEnabled()) {
+                Constants.LOG.debug("Trigger batch of {} activated {} block(s)", items.size(), total);
+            }
+            return HandlerResult.ok(response);
+        });
+    }
+
+    /**
+     * Add the registered targets for a trigger whose level is still loaded
+     * @return Number of targets added
+     */
+    private static int addLiveTargets(String triggerId, List<TriggerTarget> into) {
+        RelayMetrics.TRIGGERS.increment();
+        Set<TriggerTarget> targets = triggerRegistry.get(triggerId);
+        if (targets == null) {
+            RelayMetrics.TRIGGERS_WITHOUT_BLOCKS.increment();
+            return 0;
+        }
+
+        int added = 0;
+        for (TriggerTarget target : targets) {
+            if (target.level() != null && target.level().getServer() != null) {
+                into.add(target);
+                added++;
+            }
         }
+        return added;
     }
 
-    private boolean triggerBlock(TriggerTarget target) {
-        if (target.level() == null || target.level().getServer() == null) {
-            return false;
+    private static <T> T parseObject(JsonElement element, Class<T> type) {
+        if (element == null || !element.isJsonObject()) return null;
+        try {
+            return GSON.fromJson(element, type);
+        } catch (JsonParseException e) {
+            return null;
         }
+    }
 
-        MinecraftServer server = target.level().getServer();
+    /**
+     * Signal every target. Must run on the main server thread.
+     * @return Number of blocks actually signalled
+     */
+    private static int signalBlocks(List<TriggerTarget> targets) {
+        int signalled = 0;
+        for (TriggerTarget target : targets) {
+            if (signalBlock(target)) signalled++;
+        }
+        return signalled;
+    }
 
-        server.execute(() -> {
-            try {
-                BlockEntity blockEntity = target.level().getBlockEntity(target.pos());
-                if (blockEntity instanceof HttpReceiverBlockEntity) {
-                    BlockState state = target.level().getBlockState(target.pos());
-                    if (state.getBlock() instanceof HttpReceiverBlock block) {
-                        block.onSignal(state, target.level(), target.pos());
-                        System.out.println("[EiraRelay] Triggered block at " + target.pos());
+    /**
+     * Send a signal to the receiver block at the target. Must run on the main server thread.
+     * @return false if the receiver block is no longer there
+     */
+    private static boolean signalBlock(TriggerTarget target) {
+        try {
+            BlockEntity blockEntity = target.level().getBlockEntity(target.pos());
+            if (blockEntity instanceof HttpReceiverBlockEntity) {
+                BlockState state = target.level().getBlockState(target.pos());
+                if (state.getBlock() instanceof HttpReceiverBlock block) {
+                    block.onSignal(state, target.level(), target.pos());
+                    RelayMetrics.TRIGGER_BLOCKS_SIGNALLED.increment();
+                    if (Constants.LOG.isDebugEnabled()) {
+                        Constants.LOG.debug("Triggered block at {}", target.pos());
                     }
+                    return true;
                 }
-            } catch (Exception e) {
-                System.err.println("[EiraRelay] Error triggering block at " + target.pos() + ": " + e.getMessage());
             }
-        });
-
-        return true;
+        } catch (Exception e) {
+            Constants.LOG.error("Error triggering block at {}", target.pos(), e);
+        }
+        RelayMetrics.TRIGGER_BLOCKS_MISSING.increment();
+        return false;
     }
 
     private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) throws IOException {
@@ -225,6 +375,11 @@ public class TriggerHandler implements IHttpHandler {
         Map<String, Object> data;
     }
 
+    // Item in a /trigger/batch request body
+    private static class BatchTriggerRequest extends TriggerRequest {
+        String triggerId;
+    }
+
     // Target for trigger activation
     private record TriggerTarget(BlockPos pos, ServerLevel level) {
         @Override
@@ -0,0 +1,92 @@
+package no.eira.relay.http.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed bucket bounds, in the Prometheus style:
+ * a count per bucket plus a running sum and total.
+ *
+ * Recording walks the bounds array and bumps two LongAdders, so it never
+ * allocates and threads recording at once do not contend on one counter.
+ * Buckets are stored per range and made cumulative only when scraped.
+ */
+public final class Histogram {
+
+    /**
+     * Bucket bounds for request handling and server tick work, 0.5 ms to 10 s
+     */
+    public static final double[] LATENCY_SECONDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private final double[] boundsSeconds;
+    private final long[] boundsNanos;
+    // One more than the bounds, the last one for values above every bound (+Inf)
+    private final LongAdder[] counts;
+    private final LongAdder sumNanos = new LongAdder();
+
+    public Histogram() {
+        this(LATENCY_SECONDS);
+    }
+
+    /**
+     * @param boundsSeconds Upper bucket bounds in seconds, ascending
+     */
+    public Histogram(double[] boundsSeconds) {
+        this.boundsSeconds = boundsSeconds.clone();
+        this.boundsNanos = new long[boundsSeconds.length];
+        for (int i = 0; i < boundsSeconds.length; i++) {
+            boundsNanos[i] = (long) (boundsSeconds[i] * 1_000_000_000L);
+        }
+        this.counts = new LongAdder[boundsSeconds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record one observation
+     */
+    public void observeNanos(long nanos) {
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Record the time since a System.nanoTime() reading
+     */
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    public double[] getBoundsSeconds() {
+        return boundsSeconds.clone();
+    }
+
+    /**
+     * Observations per bucket, not cumulative; the last entry is above every bound
+     */
+    public long[] getBucketCounts() {
+        long[] result = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            result[i] = counts[i].sum();
+        }
+        return result;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder adder : counts) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1_000_000_000.0;
+    }
+}
@@ -0,0 +1,43 @@
+package no.eira.relay.http.middleware;
+
+import no.eira.relay.http.RequestContext;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * One stage of the request pipeline run in front of a handler.
+ *
+ * A stage either answers the request itself (e.g. 429, 401) or passes it on
+ * with next.proceed(context). The server compiles the enabled stages into a
+ * fixed chain per route and method when handlers are registered or the config
+ * is reloaded, so a request only runs the checks that are switched on.
+ * Stages are shared by every request and must be thread-safe.
+ */
+@FunctionalInterface
+public interface Middleware {
+
+    void handle(RequestContext context, Chain next) throws IOException;
+
+    /**
+     * The rest of the pipeline after a stage
+     */
+    @FunctionalInterface
+    interface Chain {
+        void proceed(RequestContext context) throws IOException;
+    }
+
+    /**
+     * Link stages in order in front of the terminal handler. The result
+     * allocates nothing per request.
+     */
+    static Chain compile(List<Middleware> stages, Chain terminal) {
+        Chain next = terminal;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Middleware stage = stages.get(i);
+            Chain rest = next;
+            next = context -> stage.handle(context, rest);
+        }
+        return next;
+    }
+}
@@ -0,0 +1,486 @@
+package no.eira.relay.http.nio;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HttpExchange for a request read by the NIO server.
+ *
+ * The request body is already buffered. The response head and body are
+ * written into a pooled direct buffer and sent when it fills up, on flush()
+ * or on close(), so a small response goes out in a single write. Response
+ * length follows the HttpExchange contract: a positive length is fixed, 0 is
+ * chunked and -1 means no body.
+ */
+final class NioHttpExchange extends HttpExchange {
+
+    private static volatile CachedDate cachedDate;
+
+    private final NioConnection connection;
+    private final NioHttpContext context;
+    private final String method;
+    private final URI uri;
+    private final String protocol;
+    private final Headers requestHeaders;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final ResponseStream responseStream = new ResponseStream();
+
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private boolean keepAlive;
+    private volatile int responseCode = -1;
+
+    NioHttpExchange(NioConnection connection, NioHttpContext context, String method, URI uri, String protocol,
+                    Headers requestHeaders, byte[] body, boolean keepAlive) {
+        this.connection = connection;
+        this.context = context;
+        this.method = method;
+        this.uri = uri;
+        this.protocol = protocol;
+        this.requestHeaders = requestHeaders;
+        this.requestBody = new ByteArrayInputStream(body);
+        this.responseBody = responseStream;
+        this.keepAlive = keepAlive;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return context;
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode != -1) {
+            throw new IOException("Headers already sent");
+        }
+        responseCode = rCode;
+
+        String connectionHeader = responseHeaders.getFirst("Connection");
+        if (connectionHeader != null && connectionHeader.toLowerCase(Locale.ROOT).contains("close")) {
+            keepAlive = false;
+        }
+
+        int mode;
+        boolean noBody = method.equals("HEAD") || rCode == 204 || rCode == 304 || (rCode >= 100 && rCode < 200);
+        if (noBody) {
+            if (method.equals("HEAD") && responseLength > 0) {
+                responseHeaders.set("Content-Length", Long.toString(responseLength));
+            }
+            mode = ResponseStream.NONE;
+        } else if (responseLength == -1) {
+            responseHeaders.set("Content-Length", "0");
+            mode = ResponseStream.NONE;
+        } else if (responseLength == 0) {
+            if (protocol.equals("HTTP/1.1")) {
+                responseHeaders.set("Transfer-Encoding", "chunked");
+                mode = ResponseStream.CHUNKED;
+            } else {
+                // HTTP/1.0 has no chunked encoding: the body ends when the connection closes
+                keepAlive = false;
+                mode = ResponseStream.UNTIL_CLOSE;
+            }
+        } else {
+            responseHeaders.set("Content-Length", Long.toString(responseLength));
+            mode = ResponseStream.FIXED;
+        }
+
+        if (!keepAlive) {
+            responseHeaders.set("Connection", "close");
+        } else if (protocol.equals("HTTP/1.0")) {
+            responseHeaders.set("Connection", "keep-alive");
+        }
+
+        responseStream.begin(rCode, mode, responseLength);
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value != null) {
+            attributes.put(name, value);
+        } else {
+            attributes.remove(name);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) requestBody = i;
+        if (o != null) responseBody = o;
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /**
+     * Finish the exchange. If no response was started the connection is closed.
+     */
+    @Override
+    public void close() {
+        if (responseCode == -1) {
+            abort();
+            return;
+        }
+        try {
+            responseBody.close();
+        } catch (IOException e) {
+            // Connection is already closed by the stream
+        }
+    }
+
+    /**
+     * Drop the exchange and its connection without finishing the response
+     */
+    void abort() {
+        responseStream.abort();
+    }
+
+    /**
+     * Response body writer backed by a pooled direct buffer
+     */
+    private final class ResponseStream extends OutputStream {
+        static final int NONE = 0;
+        static final int FIXED = 1;
+        static final int CHUNKED = 2;
+        static final int UNTIL_CLOSE = 3;
+
+        // Room for the hex length and CRLF in front of each chunk
+        private static final int CHUNK_HEADER_SPACE = 10;
+        // Room for the CRLF after chunk data and the final "0\r\n\r\n"
+        private static final int CHUNK_TRAILER_SPACE = 7;
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
+        private ByteBuffer buffer;
+        private int mode;
+        private long remaining;
+        // Chunked mode: the response head is in [0, chunkStart), data starts at chunkStart + CHUNK_HEADER_SPACE
+        private int chunkStart;
+        private boolean started;
+        private boolean finished;
+
+        void begin(int rCode, int mode, long length) throws IOException {
+            buffer = connection.getBufferPool().acquire();
+            started = true;
+
+            putAscii("HTTP/1.1 ");
+            putAscii(Integer.toString(rCode));
+            putAscii(" ");
+            putAscii(reasonPhrase(rCode));
+            putAscii("\r\nDate: ");
+            putAscii(currentDate());
+            putAscii("\r\n");
+            for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+                for (String value : header.getValue()) {
+                    putAscii(header.getKey());
+                    putAscii(": ");
+                    putAscii(value);
+                    putAscii("\r\n");
+                }
+            }
+            putAscii("\r\n");
+
+            this.mode = mode;
+            this.remaining = mode == FIXED ? length : 0;
+            if (mode == NONE) {
+                // No body follows: send the head and finish
+                close();
+            } else if (mode == CHUNKED) {
+                if (buffer.remaining() < CHUNK_HEADER_SPACE + CHUNK_TRAILER_SPACE + 1) {
+                    sendRaw();
+                }
+                chunkStart = buffer.position();
+                buffer.position(chunkStart + CHUNK_HEADER_SPACE);
+            }
+        }
+
+        private void putAscii(String text) throws IOException {
+            for (int i = 0, length = text.length(); i < length; i++) {
+                if (!buffer.hasRemaining()) {
+                    sendRaw();
+                }
+                buffer.put((byte) text.charAt(i));
+            }
+        }
+
+        /**
+         * @return false if the bytes should be dropped (a HEAD response body)
+         */
+        private boolean checkWritable() throws IOException {
+            if (!started) {
+                throw new IOException("Response headers not sent yet");
+            }
+            if (finished) {
+                if (mode == NONE && method.equals("HEAD")) {
+                    return false;
+                }
+                throw new IOException("Stream is closed");
+            }
+            return true;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!checkWritable()) return;
+            reserve(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!checkWritable()) return;
+            reserve(len);
+            while (len > 0) {
+                int space = buffer.remaining() - (mode == CHUNKED ? CHUNK_TRAILER_SPACE : 0);
+                if (space <= 0) {
+                    flushBuffer();
+                    continue;
+                }
+                int n = Math.min(space, len);
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        // Enforce the declared length; single bytes also make room in the buffer
+        private void reserve(int len) throws IOException {
+            if (mode == NONE && len > 0) {
+                throw new IOException("No response body expected");
+            }
+            if (mode == FIXED) {
+                if (len > remaining) {
+                    throw new IOException("Too many bytes to write to stream");
+                }
+                remaining -= len;
+            }
+            if (len == 1 && buffer.remaining() <= (mode == CHUNKED ? CHUNK_TRAILER_SPACE : 0)) {
+                flushBuffer();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (started && !finished) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (mode == CHUNKED) {
+                sendChunk(false);
+            } else {
+                sendRaw();
+            }
+        }
+
+        private void sendRaw() throws IOException {
+            buffer.flip();
+            try {
+                connection.write(buffer);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Send the buffered data as one chunk (and the final chunk if last)
+         */
+        private void sendChunk(boolean last) throws IOException {
+            int dataStart = chunkStart + CHUNK_HEADER_SPACE;
+            int dataLength = buffer.position() - dataStart;
+            if (dataLength == 0 && !last && chunkStart == 0) {
+                return; // Nothing to send
+            }
+
+            int bodyStart = dataStart;
+            if (dataLength > 0) {
+                // Write "<hex length>\r\n" right before the data
+                int headerStart = dataStart - 2;
+                buffer.put(headerStart, (byte) '\r').put(headerStart + 1, (byte) '\n');
+                int value = dataLength;
+                do {
+                    buffer.put(--headerStart, HEX[value & 0xF]);
+                    value >>>= 4;
+                } while (value != 0);
+                bodyStart = headerStart;
+                buffer.put((byte) '\r').put((byte) '\n');
+            }
+            if (last) {
+                buffer.put((byte) '0').put((byte) '\r').put((byte) '\n').put((byte) '\r').put((byte) '\n');
+            }
+
+            ByteBuffer body = buffer.duplicate().position(bodyStart).limit(buffer.position());
+            try {
+                if (chunkStart > 0) {
+                    ByteBuffer head = buffer.duplicate().position(0).limit(chunkStart);
+                    connection.write(new ByteBuffer[]{head, body});
+                } else if (body.hasRemaining()) {
+                    connection.write(body);
+                }
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+
+            buffer.clear();
+            chunkStart = 0;
+            buffer.position(CHUNK_HEADER_SPACE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!started || finished) return;
+            boolean complete = true;
+            try {
+                if (mode == CHUNKED) {
+                    sendChunk(true);
+                } else if (buffer.position() > 0) {
+                    sendRaw();
+                }
+                if (mode == FIXED && remaining > 0) {
+                    complete = false;
+                    throw new IOException("Insufficient bytes written to stream");
+                }
+            } finally {
+                if (!finished) {
+                    finished = true;
+                    connection.getBufferPool().release(buffer);
+                    buffer = null;
+                    connection.responseComplete(complete && keepAlive);
+                }
+            }
+        }
+
+        void abort() {
+            if (!finished) {
+                finished = true;
+                if (buffer != null) {
+                    connection.getBufferPool().release(buffer);
+                    buffer = null;
+                }
+            }
+            connection.close();
+        }
+    }
+
+    // The Date header only changes once per second
+    private static String currentDate() {
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate cached = cachedDate;
+        if (cached == null || cached.second != second) {
+            String value = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                Instant.ofEpochSecond(second).atZone(ZoneOffset.UTC));
+            cached = new CachedDate(second, value);
+            cachedDate = cached;
+        }
+        return cached.value;
+    }
+
+    private record CachedDate(long second, String value) {}
+
+    private static String reasonPhrase(int code) {
+        return switch (code) {
+            case 100 -> "Continue";
+            case 101 -> "Switching Protocols";
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 202 -> "Accepted";
+            case 204 -> "No Content";
+            case 301 -> "Moved Permanently";
+            case 302 -> "Found";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 409 -> "Conflict";
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "";
+        };
+    }
+}
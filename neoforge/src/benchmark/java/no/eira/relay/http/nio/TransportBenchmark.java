@@ -0,0 +1,174 @@
+package no.eira.relay.http.nio;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import no.eira.relay.http.RequestExecutor;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load benchmark comparing the JDK HttpServer with NioHttpServer.
+ *
+ * Starts one transport on a local port with a handler that reads a small JSON
+ * POST and answers with a small JSON body, like /trigger. Keep-alive client
+ * connections then send requests back to back for a fixed time, and the
+ * request rate and latency percentiles are printed. The first second is
+ * warm-up and not counted.
+ *
+ * Run with the benchmarkTransport Gradle task, or directly:
+ * <pre>
+ * TransportBenchmark &lt;jdk|nio&gt; [connections=16] [seconds=6] [port=18090]
+ * </pre>
+ * The JDK server only disables Nagle's algorithm on its sockets with
+ * -Dsun.net.httpserver.nodelay=true, which has to be set when the JVM starts.
+ */
+public final class TransportBenchmark {
+
+    private static final byte[] REQUEST = ("POST /trigger/bench HTTP/1.1\r\n" +
+        "Host: localhost\r\n" +
+        "Content-Type: application/json\r\n" +
+        "Content-Length: 22\r\n\r\n" +
+        "{\"data\":{\"player\":\"a\"}}").getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final HttpHandler HANDLER = exchange -> {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+        byte[] response = ("{\"success\":true,\"received\":" + body.length + "}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    };
+
+    private TransportBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: TransportBenchmark <jdk|nio> [connections] [seconds] [port]");
+            System.exit(2);
+        }
+        String transport = args[0].toLowerCase(Locale.ROOT);
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 18090;
+
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+        HttpServer server = switch (transport) {
+            case "jdk" -> HttpServer.create(address, 0);
+            // Same values as the NIO config defaults
+            case "nio" -> NioHttpServer.create(address, 2, 16384, 1000, 30, 65536);
+            default -> throw new IllegalArgumentException("Unknown transport: " + transport);
+        };
+        server.setExecutor(RequestExecutor.virtualThreads(connections * 4));
+        server.createContext("/", HANDLER);
+        server.start();
+        try {
+            String label = transport.equals("jdk") && Boolean.getBoolean("sun.net.httpserver.nodelay")
+                ? "jdk (nodelay)" : transport;
+            Result result = run(address, connections, seconds);
+            System.out.printf(Locale.ROOT, "%-14s %d connections, %ds: %.0f req/s, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms%n",
+                label, connections, seconds, result.requestsPerSecond,
+                result.p50Nanos / 1e6, result.p99Nanos / 1e6, result.p999Nanos / 1e6);
+        } finally {
+            server.stop(0);
+        }
+        System.exit(0);
+    }
+
+    private record Result(double requestsPerSecond, long p50Nanos, long p99Nanos, long p999Nanos) {}
+
+    private static Result run(InetSocketAddress address, int connections, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long warmUpEnd = start + TimeUnit.SECONDS.toNanos(1);
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        LongAdder completed = new LongAdder();
+        ConcurrentLinkedQueue<long[]> latencies = new ConcurrentLinkedQueue<>();
+
+        Thread[] clients = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = Thread.ofPlatform().name("bench-client-" + i).start(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+                try {
+                    // Reconnect whenever the server closes the connection (keepAliveMaxRequests)
+                    while (System.nanoTime() < end) {
+                        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+                            socket.setTcpNoDelay(true);
+                            OutputStream out = socket.getOutputStream();
+                            InputStream in = new BufferedInputStream(socket.getInputStream());
+                            boolean keepAlive = true;
+                            long now;
+                            while (keepAlive && (now = System.nanoTime()) < end) {
+                                out.write(REQUEST);
+                                keepAlive = readResponse(in);
+                                long done = System.nanoTime();
+                                if (now >= warmUpEnd) {
+                                    if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+                                    samples[count++] = done - now;
+                                    completed.increment();
+                                }
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Client failed: " + e);
+                }
+                latencies.add(Arrays.copyOf(samples, count));
+            });
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            return new Result(0, 0, 0, 0);
+        }
+        double measuredSeconds = seconds - 1.0;
+        return new Result(completed.sum() / measuredSeconds,
+            all[all.length / 2], all[(int) (all.length * 0.99)], all[(int) (all.length * 0.999)]);
+    }
+
+    // Read one response with a Content-Length body; false if the server is closing the connection
+    private static boolean readResponse(InputStream in) throws IOException {
+        int contentLength = 0;
+        boolean keepAlive = true;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Connection closed");
+            if (b != '\n') {
+                line.append((char) b);
+                continue;
+            }
+            String header = line.toString().trim();
+            line.setLength(0);
+            if (header.isEmpty()) break;
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            } else if (header.equalsIgnoreCase("Connection: close")) {
+                keepAlive = false;
+            }
+        }
+        if (in.readNBytes(contentLength).length < contentLength) {
+            throw new EOFException("Truncated response");
+        }
+        return keepAlive;
+    }
+}
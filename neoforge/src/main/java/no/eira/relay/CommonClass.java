@@ -3,6 +3,7 @@ package no.eira.relay;
 import net.minecraft.server.level.ServerLevel;
 import no.eira.relay.http.HttpClientImpl;
 import no.eira.relay.http.HttpServerImpl;
+import no.eira.relay.http.MainThreadDispatcher;
 import no.eira.relay.http.api.IHttpClient;
 import no.eira.relay.http.api.IHttpServer;
 import no.eira.relay.http.handlers.BroadcastHandler;
@@ -48,8 +49,14 @@ public class CommonClass {
         HTTP_SERVER.initHandlers();
     }
 
+    //On Config Reload Callback. Recompiles the HTTP request pipeline
+    public static void onConfigReload(){
+        HTTP_SERVER.reloadConfig();
+    }
+
     public static void onServerStopping(){
         HTTP_SERVER.stopServer();
+        MainThreadDispatcher.clear();
     }
 
     /**
@@ -62,9 +69,10 @@ public class CommonClass {
     }
 
     /**
-     * Called every server tick to process redstone emissions
+     * Called every server tick to run queued HTTP actions and process redstone emissions
      */
     public static void onServerTick() {
+        MainThreadDispatcher.tick();
         RedstoneHandler.tick();
     }
 }
\ No newline at end of file
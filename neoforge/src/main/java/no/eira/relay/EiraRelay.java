@@ -17,6 +17,7 @@ import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.config.ModConfig;
+import net.neoforged.fml.event.config.ModConfigEvent;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.event.BuildCreativeModeTabContentsEvent;
@@ -46,6 +47,7 @@ public class EiraRelay {
         modEventBus.addListener(this::onCommonSetup);
         modEventBus.addListener(this::addCreative);
         modEventBus.addListener(this::registerPayloads);
+        modEventBus.addListener(this::onConfigReload);
 
         // Register game event listeners
         NeoForge.EVENT_BUS.addListener(this::onServerStarting);
@@ -90,6 +92,12 @@ public class EiraRelay {
         Constants.LOG.info("Registered Eira Relay network packets");
     }
 
+    private void onConfigReload(ModConfigEvent.Reloading event) {
+        if (event.getConfig().getSpec() == HttpServerConfig.COMMON_SPEC) {
+            CommonClass.onConfigReload();
+        }
+    }
+
     private void onServerStarting(ServerStartingEvent event) {
         CommonClass.onServerStarting();
     }
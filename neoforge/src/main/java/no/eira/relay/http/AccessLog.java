@@ -0,0 +1,228 @@
+package no.eira.relay.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.Constants;
+import no.eira.relay.enums.EnumAccessLogLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One line per HTTP request, written off the request thread.
+ *
+ * Request threads only build a small record and offer it to a bounded queue;
+ * a single writer thread formats and logs records in batches. When the writer
+ * falls behind the queue fills and further records are dropped and counted,
+ * so logging never blocks or slows a request.
+ *
+ * Successful requests can be sampled; 4xx and 5xx responses are always
+ * written when the level allows them.
+ */
+public class AccessLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Constants.MOD_NAME + " Access");
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * What the writer needs to format one line. Built on the request thread without formatting.
+     * @param status Response status, or -1 if none was sent
+     * @param bytes Response Content-Length, or -1 if unknown
+     */
+    private record Entry(EnumAccessLogLevel severity, String method, String path, int status, long bytes,
+                         long nanos, InetSocketAddress client, String apiKeyId, boolean failed) {
+    }
+
+    private final ArrayBlockingQueue<Entry> queue;
+    private volatile EnumAccessLogLevel level;
+    private volatile double sampleRate;
+    private volatile Thread writer;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    /**
+     * @param capacity Records that can wait for the writer before new ones are dropped
+     */
+    public AccessLog(EnumAccessLogLevel level, double sampleRate, int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        configure(level, sampleRate);
+    }
+
+    /**
+     * Change the level and sample rate; safe while requests are being logged
+     * @param sampleRate Fraction of INFO requests written, 0 to 1
+     */
+    public void configure(EnumAccessLogLevel level, double sampleRate) {
+        this.level = level;
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+    }
+
+    public synchronized void start() {
+        if (writer != null) return;
+        Thread thread = new Thread(this::writeLoop, "EiraRelay-AccessLog");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the writer after it has written what is already queued
+     */
+    public synchronized void stop() {
+        Thread thread = writer;
+        if (thread == null) return;
+        writer = null;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Record a finished request. Called once per request, after the response was sent or the handler returned.
+     * @param apiKeyId Key that authenticated the request, or null
+     * @param startNanos System.nanoTime() when the request arrived
+     * @param failed Whether the handler threw
+     */
+    public void record(HttpExchange exchange, String apiKeyId, long startNanos, boolean failed) {
+        EnumAccessLogLevel current = level;
+        if (current == EnumAccessLogLevel.OFF) return;
+
+        int status = exchange.getResponseCode();
+        EnumAccessLogLevel severity = failed || status >= 500 ? EnumAccessLogLevel.ERROR
+            : status >= 400 ? EnumAccessLogLevel.WARN
+            : EnumAccessLogLevel.INFO;
+        if (severity.compareTo(current) > 0) return;
+        if (severity == EnumAccessLogLevel.INFO) {
+            double rate = sampleRate;
+            if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+                sampledOut.increment();
+                return;
+            }
+        }
+
+        Entry entry = new Entry(severity, exchange.getRequestMethod(), exchange.getRequestURI().getRawPath(),
+            status, responseLength(exchange), System.nanoTime() - startNanos, exchange.getRemoteAddress(),
+            apiKeyId, failed);
+        if (!queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private static long responseLength(HttpExchange exchange) {
+        String length = exchange.getResponseHeaders().getFirst("Content-Length");
+        if (length == null) return -1;
+        try {
+            return Long.parseLong(length);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        StringBuilder line = new StringBuilder(160);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                writeBatch(batch, line);
+            }
+        } catch (InterruptedException e) {
+            // Stopping: fall through and write what is left
+        }
+        queue.drainTo(batch);
+        writeBatch(batch, line);
+    }
+
+    private void writeBatch(List<Entry> batch, StringBuilder line) {
+        for (Entry entry : batch) {
+            line.setLength(0);
+            format(entry, line);
+            switch (entry.severity()) {
+                case ERROR -> LOG.error(line.toString());
+                case WARN -> LOG.warn(line.toString());
+                default -> LOG.info(line.toString());
+            }
+        }
+        written.add(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Format a record as space-separated key=value pairs. The query string is left
+     * out because receiver tokens can be passed in it.
+     */
+    private static void format(Entry entry, StringBuilder line) {
+        InetSocketAddress client = entry.client();
+        line.append("client=").append(client != null ? client.getAddress().getHostAddress() : "-");
+        line.append(" method=").append(entry.method());
+        line.append(" path=").append(entry.path());
+        line.append(" status=");
+        if (entry.status() > 0) {
+            line.append(entry.status());
+        } else {
+            // No response yet: the handler failed, or answers asynchronously (?wait=true)
+            line.append(entry.failed() ? "error" : "pending");
+        }
+        line.append(" bytes=");
+        if (entry.bytes() >= 0) {
+            line.append(entry.bytes());
+        } else {
+            line.append('-');
+        }
+        long micros = entry.nanos() / 1000;
+        line.append(" ms=").append(micros / 1000).append('.');
+        long fraction = micros % 1000;
+        if (fraction < 100) line.append('0');
+        if (fraction < 10) line.append('0');
+        line.append(fraction);
+        if (entry.apiKeyId() != null) {
+            line.append(" key=").append(entry.apiKeyId());
+        }
+    }
+
+    public EnumAccessLogLevel getLevel() {
+        return level;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Lines written by the writer thread
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * Records dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Successful requests skipped by sampling
+     */
+    public long getSampledOutCount() {
+        return sampledOut.sum();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+}
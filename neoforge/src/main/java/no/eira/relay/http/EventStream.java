@@ -0,0 +1,326 @@
+package no.eira.relay.http;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSerializer;
+import com.sun.net.httpserver.HttpExchange;
+import net.minecraft.core.BlockPos;
+import org.eira.core.api.EiraAPI;
+import org.eira.core.api.events.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Streams Eira events to Server-Sent Events clients.
+ *
+ * Subscribes to the Eira event bus once with ASYNC delivery, so publishers only
+ * queue the event; serialization happens on the bus's worker thread, in publish
+ * order. Each event is serialized a single time and the frame offered to every
+ * connected client whose filter accepts it.
+ * Each client has its own bounded buffer drained by a virtual thread, so a slow
+ * client never blocks publishers or other clients; a client whose buffer fills
+ * up is disconnected and can reconnect.
+ *
+ * Other transports (WebSocket connections) attach as a Subscriber and receive
+ * the same serialized event JSON.
+ */
+public class EventStream {
+
+    // Event types forwarded to clients
+    private static final List<Class<? extends EiraEvent>> EVENT_TYPES = List.of(
+        HttpReceivedEvent.class,
+        ExternalTriggerEvent.class,
+        RedstoneChangeEvent.class,
+        ServerCommandEvent.class,
+        CheckpointCompletedEvent.class,
+        CheckpointUnlockedEvent.class,
+        AdventureStartedEvent.class,
+        AdventureCompletedEvent.class,
+        AdventureFailedEvent.class,
+        ChapterUnlockedEvent.class,
+        SecretRevealedEvent.class,
+        TeamCreatedEvent.class,
+        TeamDisbandedEvent.class,
+        TeamMemberJoinedEvent.class,
+        TeamMemberLeftEvent.class
+    );
+
+    // Event class -> type name sent as the SSE "event:" field (e.g. EXTERNAL_TRIGGER)
+    private static final Map<Class<?>, String> TYPE_NAMES = new HashMap<>();
+    static {
+        for (Class<? extends EiraEvent> type : EVENT_TYPES) {
+            TYPE_NAMES.put(type, typeName(type));
+        }
+    }
+
+    private static final Gson GSON = new GsonBuilder()
+        .registerTypeAdapter(BlockPos.class, (JsonSerializer<BlockPos>) (pos, type, context) -> {
+            JsonObject json = new JsonObject();
+            json.addProperty("x", pos.getX());
+            json.addProperty("y", pos.getY());
+            json.addProperty("z", pos.getZ());
+            return json;
+        })
+        .create();
+
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final byte[] HEARTBEAT = ": keepalive\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RETRY = "retry: 3000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int maxClients;
+    private final int bufferSize;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger clientCount = new AtomicInteger();
+    private final Consumer<EiraEvent> listener = this::onEvent;
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder droppedClients = new LongAdder();
+    private volatile boolean subscribed;
+
+    /**
+     * Create an event stream
+     * @param maxClients Maximum connected clients
+     * @param bufferSize Events buffered per client before it is disconnected
+     */
+    public EventStream(int maxClients, int bufferSize) {
+        this.maxClients = maxClients;
+        this.bufferSize = bufferSize;
+    }
+
+    private static String typeName(Class<?> type) {
+        try {
+            Object name = type.getField("TYPE").get(null);
+            if (name instanceof String s) return s;
+        } catch (ReflectiveOperationException e) {
+            // Fall through to the class name
+        }
+        return type.getSimpleName();
+    }
+
+    /**
+     * Resolve a filter value to an event type name.
+     * Accepts type names (EXTERNAL_TRIGGER) or class names (ExternalTriggerEvent), case-insensitively.
+     * @return The type name, or null if unknown
+     */
+    public static String resolveType(String name) {
+        for (Map.Entry<Class<?>, String> entry : TYPE_NAMES.entrySet()) {
+            if (entry.getValue().equalsIgnoreCase(name) || entry.getKey().getSimpleName().equalsIgnoreCase(name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Subscribe to the Eira event bus if Eira Core is available
+     */
+    public synchronized boolean start() {
+        if (subscribed) return true;
+        EiraAPI api = EiraAPI.get();
+        if (api == null) return false;
+
+        // One subscription for every type keeps events in publish order across types.
+        // Off the publishing thread where the bus supports it, so slow clients never delay publishers.
+        if (api.events() instanceof AsyncEventBus bus) {
+            bus.subscribe(EiraEvent.class, listener, DeliveryMode.ASYNC);
+        } else {
+            api.events().subscribe(EiraEvent.class, listener);
+        }
+        subscribed = true;
+        return true;
+    }
+
+    /**
+     * Unsubscribe from the event bus and disconnect all clients
+     */
+    public synchronized void stop() {
+        if (subscribed) {
+            EiraAPI.ifPresent(api -> api.events().unsubscribe(EiraEvent.class, listener));
+            subscribed = false;
+        }
+        for (Client client : clients) {
+            client.close();
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * Whether events are being received from the event bus (subscribing lazily if needed)
+     */
+    public boolean isAvailable() {
+        return subscribed || start();
+    }
+
+    private void onEvent(EiraEvent event) {
+        if (clients.isEmpty() && subscribers.isEmpty()) return;
+
+        String type = TYPE_NAMES.get(event.getClass());
+        if (type == null) return; // Not a type we forward
+        String json = GSON.toJson(event);
+
+        if (!clients.isEmpty()) {
+            byte[] frame = ("event: " + type + "\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+            for (Client client : clients) {
+                if (client.accepts(type) && !client.offer(frame)) {
+                    // Buffer full: the client is not keeping up
+                    droppedClients.increment();
+                    client.close();
+                }
+            }
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.accepts(type) && !subscriber.offer(type, json)) {
+                droppedClients.increment();
+                removeSubscriber(subscriber);
+                subscriber.close();
+            }
+        }
+        eventsSent.increment();
+    }
+
+    /**
+     * Forward events to a subscriber until it is removed
+     */
+    public void addSubscriber(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void removeSubscriber(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Reserve a slot for a new client. The response headers must be sent before calling start() on it.
+     * @param types Event type names to forward, or null for all
+     * @return The client, or null if the stream is full
+     */
+    public Client register(HttpExchange exchange, Set<String> types) {
+        if (clientCount.incrementAndGet() > maxClients) {
+            clientCount.decrementAndGet();
+            return null;
+        }
+        Client client = new Client(exchange, types, bufferSize);
+        clients.add(client);
+        return client;
+    }
+
+    private void unregister(Client client) {
+        if (clients.remove(client)) {
+            clientCount.decrementAndGet();
+        }
+    }
+
+    public int getClientCount() {
+        return clientCount.get();
+    }
+
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    public long getDroppedClients() {
+        return droppedClients.sum();
+    }
+
+    /**
+     * Receives events from the stream on the publishing thread; must not block
+     */
+    public interface Subscriber {
+        boolean accepts(String type);
+
+        /**
+         * Queue an event for delivery
+         * @param type Event type name (e.g. EXTERNAL_TRIGGER)
+         * @param json Serialized event
+         * @return false if the subscriber cannot keep up and should be dropped
+         */
+        boolean offer(String type, String json);
+
+        void close();
+    }
+
+    /**
+     * A connected SSE client with its own buffer and writer thread
+     */
+    public class Client {
+        private final HttpExchange exchange;
+        private final Set<String> types;
+        private final BlockingQueue<byte[]> buffer;
+        private volatile boolean closed;
+        private volatile Thread writer;
+
+        private Client(HttpExchange exchange, Set<String> types, int bufferSize) {
+            this.exchange = exchange;
+            this.types = types;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        boolean accepts(String type) {
+            return types == null || types.contains(type);
+        }
+
+        boolean offer(byte[] frame) {
+            return !closed && buffer.offer(frame);
+        }
+
+        /**
+         * Start writing events to the client on a virtual thread
+         */
+        public void start() {
+            writer = Thread.ofVirtual().name("EiraRelay-SSE").start(this::run);
+        }
+
+        private void run() {
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(RETRY);
+                os.flush();
+                while (!closed) {
+                    byte[] frame = buffer.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                    if (closed) break;
+                    os.write(frame != null ? frame : HEARTBEAT);
+                    // Write whatever else is queued before flushing
+                    while ((frame = buffer.poll()) != null) {
+                        os.write(frame);
+                    }
+                    os.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Client went away or the stream is closing
+            } finally {
+                closed = true;
+                unregister(this);
+                exchange.close();
+            }
+        }
+
+        /**
+         * Disconnect the client
+         */
+        public void close() {
+            closed = true;
+            Thread thread = writer;
+            if (thread != null) {
+                // Interrupting a virtual thread also unblocks a stalled socket write
+                thread.interrupt();
+            } else {
+                unregister(this);
+                exchange.close();
+            }
+        }
+    }
+}
@@ -2,6 +2,8 @@ package no.eira.relay.http;
 
 import no.eira.relay.Constants;
 import no.eira.relay.http.api.IHttpClient;
+import no.eira.relay.http.metrics.RelayMetrics;
+import no.eira.relay.platform.Services;
 
 import java.io.IOException;
 import java.net.URI;
@@ -10,14 +12,118 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpClientImpl implements IHttpClient {
 
     private static final int DEFAULT_MAX_RETRIES = 3;
     private static final int DEFAULT_INITIAL_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60_000;
+
+    // Per-host throttle so a dead endpoint cannot turn every pulse into a retry storm
+    private final RetryBudget retryBudget = new RetryBudget(10, 0.1);
+
+    // Shared by every sender block so keep-alive connections and HTTP/2 sessions are reused.
+    // Built lazily because the config is not loaded yet when CommonClass is initialized.
+    private volatile HttpClient client;
+    private volatile Duration requestTimeout;
+    private volatile ExecutorService executor;
+
+    /**
+     * Get the shared client, creating it from config on first use
+     */
+    private HttpClient client() {
+        HttpClient current = client;
+        if (current == null) {
+            synchronized (this) {
+                current = client;
+                if (current == null) {
+                    current = createClient();
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private HttpClient createClient() {
+        int threads = Services.HTTP_CONFIG.getClientThreads();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "EiraRelay-HttpClient-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        requestTimeout = Duration.ofSeconds(Services.HTTP_CONFIG.getRequestTimeoutSeconds());
+        HttpClient.Version version = Services.HTTP_CONFIG.preferHttp2()
+                ? HttpClient.Version.HTTP_2
+                : HttpClient.Version.HTTP_1_1;
+
+        Constants.LOG.info("Created shared HTTP client ({}, {} threads)", version, threads);
+        return HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofSeconds(Services.HTTP_CONFIG.getConnectTimeoutSeconds()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    private HttpRequest buildPost(String url, String parameters, Map<String, String> headers) throws URISyntaxException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(new URI(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(parameters, StandardCharsets.UTF_8));
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.timeout(requestTimeout).build();
+    }
+
+    private HttpRequest buildGet(String fullUrl, Map<String, String> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(fullUrl))
+                .GET();
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        return builder.timeout(requestTimeout).build();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request) {
+        HttpClient shared = client();
+        long start = System.nanoTime();
+        return shared.sendAsync(request.timeout(requestTimeout).build(), HttpResponse.BodyHandlers.ofString())
+            .whenComplete((response, error) -> recordOutcome(start, response, error));
+    }
+
+    /**
+     * Record the duration and outcome of one outbound request
+     */
+    private static void recordOutcome(long startNanos, HttpResponse<?> response, Throwable error) {
+        RelayMetrics.OUTBOUND_DURATION.observeSince(startNanos);
+        if (error == null && response.statusCode() >= 200 && response.statusCode() < 300) {
+            RelayMetrics.OUTBOUND_SUCCEEDED.increment();
+        } else {
+            RelayMetrics.OUTBOUND_FAILED.increment();
+        }
+    }
 
     @Override
     public String sendPost(String url, String parameters) {
@@ -27,18 +133,17 @@ public class HttpClientImpl implements IHttpClient {
     @Override
     public String sendPost(String url, String parameters, Map<String, String> headers) {
         try {
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(new URI(url))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(parameters, StandardCharsets.UTF_8));
-
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                builder.header(header.getKey(), header.getValue());
+            HttpClient shared = client();
+            HttpRequest request = buildPost(url, parameters, headers);
+            long start = System.nanoTime();
+            HttpResponse<String> response;
+            try {
+                response = shared.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException | InterruptedException e) {
+                recordOutcome(start, null, e);
+                throw e;
             }
-
-            HttpRequest request = builder.build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            recordOutcome(start, response, null);
             Constants.LOG.debug("HTTP POST {} - Status: {}", url, response.statusCode());
             return response.body();
         } catch (URISyntaxException | IOException | InterruptedException e) {
@@ -56,19 +161,17 @@ public class HttpClientImpl implements IHttpClient {
     public String sendGet(String url, String parameters, Map<String, String> headers) {
         try {
             String fullUrl = parameters.isEmpty() ? url : url + "?" + parameters;
-            URI uri = URI.create(fullUrl);
-
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest.Builder builder = HttpRequest.newBuilder()
-                    .uri(uri)
-                    .GET();
-
-            for (Map.Entry<String, String> header : headers.entrySet()) {
-                builder.header(header.getKey(), header.getValue());
+            HttpClient shared = client();
+            HttpRequest request = buildGet(fullUrl, headers);
+            long start = System.nanoTime();
+            HttpResponse<String> response;
+            try {
+                response = shared.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException | InterruptedException e) {
+                recordOutcome(start, null, e);
+                throw e;
             }
-
-            HttpRequest request = builder.build();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            recordOutcome(start, response, null);
             Constants.LOG.debug("HTTP GET {} - Status: {}", fullUrl, response.statusCode());
             return response.body();
         } catch (IOException | InterruptedException e) {
@@ -79,7 +182,7 @@ public class HttpClientImpl implements IHttpClient {
 
     /**
      * Send POST request with automatic retry on failure.
-     * Uses exponential backoff: 1s, 2s, 4s delays between retries.
+     * Uses jittered exponential backoff starting around 1s between retries.
      *
      * @param url        Target URL
      * @param parameters JSON body
@@ -97,61 +200,22 @@ public class HttpClientImpl implements IHttpClient {
      * @param parameters     JSON body
      * @param headers        Custom headers
      * @param maxRetries     Maximum number of retry attempts
-     * @param initialDelayMs Initial delay in milliseconds (doubles each retry)
+     * @param initialDelayMs Initial delay in milliseconds (doubles each retry, with jitter)
      * @return CompletableFuture with response body (empty string on failure)
      */
     public CompletableFuture<String> sendPostWithRetry(String url, String parameters, Map<String, String> headers,
                                                         int maxRetries, int initialDelayMs) {
-        return CompletableFuture.supplyAsync(() -> {
-            int delay = initialDelayMs;
-
-            for (int attempt = 1; attempt <= maxRetries; attempt++) {
-                try {
-                    HttpClient client = HttpClient.newHttpClient();
-                    HttpRequest.Builder builder = HttpRequest.newBuilder()
-                            .uri(new URI(url))
-                            .header("Content-Type", "application/json")
-                            .POST(HttpRequest.BodyPublishers.ofString(parameters, StandardCharsets.UTF_8));
-
-                    for (Map.Entry<String, String> header : headers.entrySet()) {
-                        builder.header(header.getKey(), header.getValue());
-                    }
-
-                    HttpRequest request = builder.build();
-                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-                    // Check for success (2xx status codes)
-                    if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                        Constants.LOG.debug("HTTP POST {} - Success on attempt {} (Status: {})",
-                                url, attempt, response.statusCode());
-                        return response.body();
-                    }
-
-                    // Log non-success status
-                    Constants.LOG.warn("HTTP POST {} - Attempt {} failed with status {}",
-                            url, attempt, response.statusCode());
-
-                } catch (URISyntaxException | IOException | InterruptedException e) {
-                    Constants.LOG.warn("HTTP POST {} - Attempt {} failed: {}",
-                            url, attempt, e.getMessage());
-                }
-
-                // Wait before retry (unless this was the last attempt)
-                if (attempt < maxRetries) {
-                    try {
-                        Constants.LOG.debug("Retrying in {}ms...", delay);
-                        Thread.sleep(delay);
-                        delay *= 2; // Exponential backoff
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                }
-            }
-
-            Constants.LOG.error("HTTP POST {} - Failed after {} attempts", url, maxRetries);
-            return "";
-        });
+        HttpRequest request;
+        try {
+            client(); // Initializes the request timeout used by the builders
+            request = buildPost(url, parameters, headers);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            Constants.LOG.error("Failed to send POST request to {}: {}", url, e.getMessage());
+            return CompletableFuture.completedFuture("");
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        sendAttempt(request, "POST", 1, maxRetries, initialDelayMs, result);
+        return result;
     }
 
     /**
@@ -173,61 +237,116 @@ public class HttpClientImpl implements IHttpClient {
      * @param parameters     Query string parameters
      * @param headers        Custom headers
      * @param maxRetries     Maximum number of retry attempts
-     * @param initialDelayMs Initial delay in milliseconds (doubles each retry)
+     * @param initialDelayMs Initial delay in milliseconds (doubles each retry, with jitter)
      * @return CompletableFuture with response body (empty string on failure)
      */
     public CompletableFuture<String> sendGetWithRetry(String url, String parameters, Map<String, String> headers,
                                                        int maxRetries, int initialDelayMs) {
-        return CompletableFuture.supplyAsync(() -> {
-            int delay = initialDelayMs;
-            String fullUrl = parameters.isEmpty() ? url : url + "?" + parameters;
+        String fullUrl = parameters.isEmpty() ? url : url + "?" + parameters;
+        HttpRequest request;
+        try {
+            client(); // Initializes the request timeout used by the builders
+            request = buildGet(fullUrl, headers);
+        } catch (IllegalArgumentException e) {
+            Constants.LOG.error("Failed to send GET request to {}: {}", url, e.getMessage());
+            return CompletableFuture.completedFuture("");
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        sendAttempt(request, "GET", 1, maxRetries, initialDelayMs, result);
+        return result;
+    }
 
-            for (int attempt = 1; attempt <= maxRetries; attempt++) {
-                try {
-                    URI uri = URI.create(fullUrl);
-                    HttpClient client = HttpClient.newHttpClient();
-                    HttpRequest.Builder builder = HttpRequest.newBuilder()
-                            .uri(uri)
-                            .GET();
-
-                    for (Map.Entry<String, String> header : headers.entrySet()) {
-                        builder.header(header.getKey(), header.getValue());
-                    }
-
-                    HttpRequest request = builder.build();
-                    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-                    // Check for success (2xx status codes)
-                    if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                        Constants.LOG.debug("HTTP GET {} - Success on attempt {} (Status: {})",
-                                fullUrl, attempt, response.statusCode());
-                        return response.body();
-                    }
-
-                    // Log non-success status
-                    Constants.LOG.warn("HTTP GET {} - Attempt {} failed with status {}",
-                            fullUrl, attempt, response.statusCode());
-
-                } catch (IOException | InterruptedException e) {
-                    Constants.LOG.warn("HTTP GET {} - Attempt {} failed: {}",
-                            fullUrl, attempt, e.getMessage());
-                }
+    /**
+     * Run one attempt with sendAsync and, if it fails, schedule the next one
+     * on a delayed executor. No thread is blocked between attempts.
+     */
+    private void sendAttempt(HttpRequest request, String method, int attempt, int maxRetries,
+                             int initialDelayMs, CompletableFuture<String> result) {
+        String host = String.valueOf(request.uri().getAuthority());
+        long start = System.nanoTime();
+
+        client().sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            recordOutcome(start, response, error);
+            // Check for success (2xx status codes)
+            if (error == null && response.statusCode() >= 200 && response.statusCode() < 300) {
+                retryBudget.onSuccess(host);
+                Constants.LOG.debug("HTTP {} {} - Success on attempt {} (Status: {})",
+                        method, request.uri(), attempt, response.statusCode());
+                result.complete(response.body());
+                return;
+            }
 
-                // Wait before retry (unless this was the last attempt)
-                if (attempt < maxRetries) {
-                    try {
-                        Constants.LOG.debug("Retrying in {}ms...", delay);
-                        Thread.sleep(delay);
-                        delay *= 2; // Exponential backoff
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                Constants.LOG.warn("HTTP {} {} - Attempt {} failed: {}",
+                        method, request.uri(), attempt, cause.getMessage());
+            } else {
+                Constants.LOG.warn("HTTP {} {} - Attempt {} failed with status {}",
+                        method, request.uri(), attempt, response.statusCode());
+                if (!isRetryableStatus(response.statusCode())) {
+                    result.complete("");
+                    return;
                 }
             }
+            // Only transient failures count against the host; a 4xx says nothing about its health
+            retryBudget.onFailure(host);
+
+            if (attempt >= maxRetries) {
+                Constants.LOG.error("HTTP {} {} - Failed after {} attempts", method, request.uri(), attempt);
+                result.complete("");
+                return;
+            }
+            if (!retryBudget.canRetry(host)) {
+                Constants.LOG.warn("HTTP {} {} - Retry budget for {} exhausted, giving up", method, request.uri(), host);
+                result.complete("");
+                return;
+            }
 
-            Constants.LOG.error("HTTP GET {} - Failed after {} attempts", fullUrl, maxRetries);
-            return "";
+            long delay = backoffDelay(attempt, initialDelayMs);
+            if (response != null) {
+                delay = Math.max(delay, retryAfterMs(response));
+            }
+            Constants.LOG.debug("Retrying in {}ms...", delay);
+            RelayMetrics.OUTBOUND_RETRIES.increment();
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor);
+            delayed.execute(() -> sendAttempt(request, method, attempt + 1, maxRetries, initialDelayMs, result));
         });
     }
+
+    private static boolean isRetryableStatus(int status) {
+        // Server errors, throttling and timeouts are transient; other client errors are not
+        return status >= 500 || status == 429 || status == 408;
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the window is fixed,
+     * the other half random, so many senders failing together spread out.
+     */
+    private static long backoffDelay(int attempt, int initialDelayMs) {
+        long window = Math.min(MAX_RETRY_DELAY_MS, (long) initialDelayMs << Math.min(attempt - 1, 20));
+        long half = window / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Read the Retry-After header (seconds or HTTP date), capped to MAX_RETRY_DELAY_MS
+     */
+    private static long retryAfterMs(HttpResponse<?> response) {
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if (header.isEmpty()) return 0;
+
+        String value = header.get().trim();
+        long delayMs;
+        try {
+            delayMs = Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryAt = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                delayMs = retryAt.toInstant().toEpochMilli() - System.currentTimeMillis();
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+        return Math.max(0, Math.min(MAX_RETRY_DELAY_MS, delayMs));
+    }
 }
@@ -0,0 +1,250 @@
+package no.eira.relay.http;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.platform.Services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays the response to a POST request when it is retried with the same
+ * Idempotency-Key header, so gateway retries do not fire blocks or publish
+ * events twice.
+ *
+ * The first request with a key claims it and runs normally while its response
+ * is recorded. Repeats within the window get the recorded response (marked
+ * with Idempotent-Replayed: true); repeats that arrive while the first is still
+ * running wait for it without holding a worker thread. Keys are scoped to the
+ * path, and a key reused with a different request (method, query, credentials
+ * or body) is rejected with 422. Responses with a 5xx status are not kept, so
+ * the retry runs again.
+ *
+ * All entries share one lifetime, so insertion order is expiry order: expired
+ * and excess entries are dropped from the head of a queue when keys are added.
+ */
+public class IdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long REPLAY_GRACE_MS = 1000;
+    private static final Gson GSON = new Gson();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final long windowNanos;
+    private final int windowSeconds;
+    private final int maxKeys;
+    private final int maxResponseBytes;
+    private final LongAdder replayed = new LongAdder();
+
+    /**
+     * Create a cache
+     * @param windowSeconds Seconds a response is kept for replay
+     * @param maxKeys Maximum keys kept at once
+     * @param maxResponseBytes Largest response body kept; larger responses are not replayed
+     */
+    public IdempotencyCache(int windowSeconds, int maxKeys, int maxResponseBytes) {
+        this.windowSeconds = windowSeconds;
+        this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+        this.maxKeys = Math.max(1, maxKeys);
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    /**
+     * Claim the request's Idempotency-Key and start recording its response, or
+     * answer it from the cache. Requests without a key are left alone.
+     * @param context The request's context (body already read)
+     * @return true if the handler should run; false if a response has been (or will be) sent
+     */
+    public boolean begin(RequestContext context) throws IOException {
+        HttpExchange exchange = context.exchange();
+        String key = exchange.getRequestHeaders().getFirst(HEADER);
+        if (key == null || key.isEmpty()) {
+            return true;
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            sendError(exchange, 400, "Idempotency-Key must be at most " + MAX_KEY_LENGTH + " characters");
+            return false;
+        }
+
+        byte[] fingerprint = fingerprint(context);
+        String scopedKey = context.path() + "\n" + key;
+        long now = System.nanoTime();
+
+        Entry fresh = new Entry(scopedKey, fingerprint, now + windowNanos);
+        while (true) {
+            Entry existing = entries.putIfAbsent(scopedKey, fresh);
+            if (existing == null) break;
+            if (existing.expiresAt - now > 0) {
+                if (!MessageDigest.isEqual(existing.fingerprint, fingerprint)) {
+                    sendError(exchange, 422, "Idempotency-Key was already used for a different request");
+                } else {
+                    replayed.increment();
+                    replay(exchange, existing);
+                }
+                return false;
+            }
+            entries.remove(scopedKey, existing); // Expired: claim it again
+        }
+
+        order.add(fresh);
+        evict(now);
+        RecordingExchange recording = new RecordingExchange(exchange, maxResponseBytes);
+        recording.setListener(response -> complete(fresh, response));
+        context.replaceExchange(recording);
+        return true;
+    }
+
+    /**
+     * Release the key claimed by a request that failed without a response
+     */
+    public void abandon(RequestContext context) {
+        if (context.exchange() instanceof RecordingExchange recording) {
+            recording.abandon();
+        }
+    }
+
+    private void complete(Entry entry, CachedResponse response) {
+        if (response == null || response.status() >= 500) {
+            // Let the next retry run the request again
+            entries.remove(entry.key, entry);
+        }
+        entry.response.complete(response);
+    }
+
+    /**
+     * Drop expired entries, and the oldest ones beyond maxKeys
+     */
+    private void evict(long now) {
+        Entry head;
+        while ((head = order.peek()) != null && (head.expiresAt - now <= 0 || entries.size() > maxKeys)) {
+            Entry oldest = order.poll();
+            if (oldest != null) {
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    private void replay(HttpExchange exchange, Entry entry) throws IOException {
+        if (entry.response.isDone()) {
+            send(exchange, entry.response.join());
+            return;
+        }
+        // The first request is still running: answer when it finishes
+        long timeoutMs = Services.HTTP_CONFIG.getWaitTimeoutMillis() + REPLAY_GRACE_MS;
+        entry.response.copy()
+            .orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+            .whenCompleteAsync((response, error) -> {
+                try {
+                    send(exchange, error == null ? response : null);
+                } catch (IOException e) {
+                    exchange.close();
+                }
+            }, CompletionResponder.executor());
+    }
+
+    private void send(HttpExchange exchange, CachedResponse response) throws IOException {
+        if (response == null) {
+            sendError(exchange, 409, "The original request with this Idempotency-Key did not complete; retry with a new key or later");
+            return;
+        }
+        for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+            exchange.getResponseHeaders().put(header.getKey(), header.getValue());
+        }
+        exchange.getResponseHeaders().set("Idempotent-Replayed", "true");
+        byte[] body = response.body();
+        exchange.sendResponseHeaders(response.status(), body.length == 0 ? -1 : body.length);
+        if (body.length == 0) {
+            exchange.close();
+            return;
+        }
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    private static byte[] fingerprint(RequestContext context) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        HttpExchange exchange = context.exchange();
+        update(digest, context.method());
+        update(digest, exchange.getRequestURI().getRawQuery());
+        update(digest, context.header("Authorization"));
+        update(digest, context.header("X-Api-Key"));
+        digest.update(context.body());
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String error) throws IOException {
+        byte[] responseBytes = GSON.toJson(Map.of("success", false, "error", error)).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * Number of keys currently remembered
+     */
+    public int getKeyCount() {
+        return entries.size();
+    }
+
+    /**
+     * Total requests answered from the cache
+     */
+    public long getReplayedRequests() {
+        return replayed.sum();
+    }
+
+    /**
+     * A recorded response
+     */
+    record CachedResponse(int status, Map<String, List<String>> headers, byte[] body) {}
+
+    private static final class Entry {
+        final String key;
+        final byte[] fingerprint;
+        final long expiresAt;
+        // Completed with null if the request failed without a response worth replaying
+        final CompletableFuture<CachedResponse> response = new CompletableFuture<>();
+
+        Entry(String key, byte[] fingerprint, long expiresAt) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package no.eira.relay.http;
+
+import no.eira.relay.Constants;
+import no.eira.relay.http.metrics.RelayMetrics;
+import no.eira.relay.platform.Services;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Queue for world actions requested by HTTP handlers.
+ *
+ * Handler threads submit tasks here instead of calling server.execute directly.
+ * The queue is drained once per server tick on the main thread, within a
+ * configurable time budget. Tasks that do not fit are left in the queue for the
+ * next tick, so a burst of external triggers is spread over several ticks
+ * instead of stalling a single one.
+ */
+public class MainThreadDispatcher {
+
+    private static final Queue<Runnable> TASKS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pendingTasks = new AtomicInteger();
+    private static final LongAdder executedTasks = new LongAdder();
+    private static final LongAdder overBudgetTicks = new LongAdder();
+    // When the queue last went from empty to non-empty, for the queue age metric
+    private static volatile long oldestPendingSince;
+
+    /**
+     * Queue a task to run on the main server thread during the next tick.
+     * Safe to call from any thread.
+     */
+    public static void submit(Runnable task) {
+        if (pendingTasks.incrementAndGet() == 1) {
+            oldestPendingSince = System.nanoTime();
+        }
+        TASKS.add(task);
+    }
+
+    /**
+     * Queue a task and get its result as a future, for requests that wait for
+     * the real outcome. The future fails with a TimeoutException if the task
+     * has not finished within the configured wait timeout; a task still queued
+     * at that point is skipped.
+     */
+    public static <T> CompletableFuture<T> call(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submit(() -> {
+            if (future.isDone()) return; // Timed out while queued
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future.orTimeout(Services.HTTP_CONFIG.getWaitTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run queued tasks until the queue is empty or the tick budget is used up.
+     * Must be called from the main server thread.
+     */
+    public static void tick() {
+        if (TASKS.isEmpty()) return;
+
+        long budgetNanos = Services.HTTP_CONFIG.getDispatchBudgetMillis() * 1_000_000L;
+        long start = System.nanoTime();
+        // Age of the oldest queued task; an upper bound once tasks carry over between ticks
+        RelayMetrics.DISPATCH_QUEUE_AGE.observeNanos(start - oldestPendingSince);
+
+        // Always run at least one task so the queue makes progress on slow ticks
+        Runnable task;
+        while ((task = TASKS.poll()) != null) {
+            pendingTasks.decrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                Constants.LOG.error("Error running queued HTTP task", e);
+            }
+            executedTasks.increment();
+
+            if (System.nanoTime() - start >= budgetNanos) {
+                if (!TASKS.isEmpty()) {
+                    overBudgetTicks.increment();
+                }
+                break;
+            }
+        }
+        RelayMetrics.DISPATCH_TICK.observeSince(start);
+    }
+
+    /**
+     * Drop all queued tasks (used when the server stops)
+     */
+    public static void clear() {
+        while (TASKS.poll() != null) {
+            pendingTasks.decrementAndGet();
+        }
+    }
+
+    public static int getPendingTasks() {
+        return pendingTasks.get();
+    }
+
+    public static long getExecutedTasks() {
+        return executedTasks.sum();
+    }
+
+    /**
+     * Number of ticks that ran out of budget and carried tasks over
+     */
+    public static long getOverBudgetTicks() {
+        return overBudgetTicks.sum();
+    }
+}
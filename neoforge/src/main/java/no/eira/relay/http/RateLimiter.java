@@ -1,20 +1,44 @@
 package no.eira.relay.http;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Per-IP rate limiter using sliding window algorithm.
- * Tracks request timestamps and enforces configurable rate limits.
+ * Per-IP rate limiter using the generic cell rate algorithm (GCRA).
+ *
+ * Each client is a single "theoretical arrival time" (TAT) updated with CAS.
+ * Requests are spaced one emission interval (window / maxRequests) apart, and a
+ * client may run up to maxRequests ahead of schedule, which gives the same
+ * burst and sustained rate as a sliding window of maxRequests per windowMs.
+ *
+ * Client state evicts itself: idle clients are swept periodically from the
+ * request path, and when maxClients is reached the least recently active
+ * clients are dropped to make room.
  */
 public class RateLimiter {
 
-    private final Map<String, List<Long>> requestTimes = new ConcurrentHashMap<>();
+    private static final int DEFAULT_MAX_CLIENTS = 10000;
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Map<String, AtomicLong> arrivalTimes = new ConcurrentHashMap<>();
     private final int maxRequests;
     private final long windowMs;
+    private final int maxClients;
+
+    // All arithmetic is in System.nanoTime() units
+    private final long windowNanos;
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+
+    private final AtomicLong nextCleanup;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder evictedClients = new LongAdder();
 
     /**
      * Create a rate limiter
@@ -22,8 +46,34 @@ public class RateLimiter {
      * @param windowMs Time window in milliseconds
      */
     public RateLimiter(int maxRequests, long windowMs) {
+        this(maxRequests, windowMs, DEFAULT_MAX_CLIENTS);
+    }
+
+    /**
+     * Create a rate limiter
+     * @param maxRequests Maximum requests allowed in the time window
+     * @param windowMs Time window in milliseconds
+     * @param maxClients Maximum number of client IPs tracked at once
+     */
+    public RateLimiter(int maxRequests, long windowMs, int maxClients) {
         this.maxRequests = maxRequests;
         this.windowMs = windowMs;
+        this.maxClients = Math.max(1, maxClients);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.intervalNanos = Math.max(1, windowNanos / Math.max(1, maxRequests));
+        this.burstToleranceNanos = windowNanos - intervalNanos;
+        this.nextCleanup = new AtomicLong(System.nanoTime() + CLEANUP_INTERVAL_NANOS);
+    }
+
+    private AtomicLong arrivalTime(String clientIp, long now) {
+        AtomicLong tat = arrivalTimes.get(clientIp);
+        if (tat == null) {
+            if (arrivalTimes.size() >= maxClients) {
+                evictForCapacity(now);
+            }
+            tat = arrivalTimes.computeIfAbsent(clientIp, k -> new AtomicLong(now));
+        }
+        return tat;
     }
 
     /**
@@ -32,21 +82,20 @@ public class RateLimiter {
      * @return true if the request is allowed, false if rate limited
      */
     public boolean isAllowed(String clientIp) {
-        long now = System.currentTimeMillis();
-        long windowStart = now - windowMs;
-
-        List<Long> times = requestTimes.computeIfAbsent(clientIp, k -> new CopyOnWriteArrayList<>());
-
-        // Remove old entries outside the window
-        times.removeIf(time -> time < windowStart);
-
-        // Check if under limit
-        if (times.size() < maxRequests) {
-            times.add(now);
-            return true;
+        long now = System.nanoTime();
+        maybeCleanup(now);
+        AtomicLong tat = arrivalTime(clientIp, now);
+
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > windowNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
         }
-
-        return false;
     }
 
     /**
@@ -55,62 +104,93 @@ public class RateLimiter {
      * @return Milliseconds until next allowed request, or 0 if allowed now
      */
     public long getRetryAfterMs(String clientIp) {
-        List<Long> times = requestTimes.get(clientIp);
-        if (times == null || times.isEmpty()) {
+        AtomicLong tat = arrivalTimes.get(clientIp);
+        if (tat == null) {
             return 0;
         }
 
-        long now = System.currentTimeMillis();
-        long windowStart = now - windowMs;
-
-        // Remove old entries
-        times.removeIf(time -> time < windowStart);
-
-        if (times.size() < maxRequests) {
+        long waitNanos = tat.get() - burstToleranceNanos - System.nanoTime();
+        if (waitNanos <= 0) {
             return 0;
         }
-
-        // Find oldest request in the window
-        long oldest = times.stream().min(Long::compare).orElse(now);
-        long waitUntil = oldest + windowMs;
-        return Math.max(0, waitUntil - now);
+        // Round up so a client retrying after this long is always allowed
+        return (waitNanos + 999_999) / 1_000_000;
     }
 
     /**
      * Get remaining requests for the client
      * @param clientIp The client's IP address
-     * @return Number of remaining requests in the current window
+     * @return Number of requests the client can make right now
      */
     public int getRemainingRequests(String clientIp) {
-        List<Long> times = requestTimes.get(clientIp);
-        if (times == null) {
+        AtomicLong tat = arrivalTimes.get(clientIp);
+        if (tat == null) {
             return maxRequests;
         }
 
-        long now = System.currentTimeMillis();
-        long windowStart = now - windowMs;
+        long ahead = Math.max(0, tat.get() - System.nanoTime());
+        long remaining = (windowNanos - ahead) / intervalNanos;
+        return (int) Math.max(0, Math.min(maxRequests, remaining));
+    }
 
-        // Count requests in window
-        long count = times.stream().filter(time -> time >= windowStart).count();
-        return Math.max(0, maxRequests - (int) count);
+    /**
+     * Run cleanup if the interval has passed. Only one caller wins each cycle.
+     */
+    private void maybeCleanup(long now) {
+        long due = nextCleanup.get();
+        if (now - due >= 0 && nextCleanup.compareAndSet(due, now + CLEANUP_INTERVAL_NANOS)) {
+            cleanup();
+        }
     }
 
     /**
-     * Clean up old entries from all clients
-     * Should be called periodically to prevent memory leaks
+     * Remove clients whose allowance has fully refilled.
+     * Runs automatically every 30 seconds from the request path.
      */
     public void cleanup() {
-        long now = System.currentTimeMillis();
-        long windowStart = now - windowMs;
+        long now = System.nanoTime();
 
-        Iterator<Map.Entry<String, List<Long>>> it = requestTimes.entrySet().iterator();
+        Iterator<Map.Entry<String, AtomicLong>> it = arrivalTimes.entrySet().iterator();
         while (it.hasNext()) {
-            Map.Entry<String, List<Long>> entry = it.next();
-            List<Long> times = entry.getValue();
-            times.removeIf(time -> time < windowStart);
-            if (times.isEmpty()) {
+            if (it.next().getValue().get() - now <= 0) {
                 it.remove();
+                evictedClients.increment();
+            }
+        }
+    }
+
+    /**
+     * Make room for a new client: drop idle clients, and if the map is still
+     * full, the least recently active tenth (the lowest arrival times).
+     * Evicting in batches keeps the sort cost amortized over many new clients.
+     */
+    private void evictForCapacity(long now) {
+        if (!evictionLock.tryLock()) {
+            return; // Another thread is already evicting
+        }
+        try {
+            if (arrivalTimes.size() < maxClients) return;
+
+            cleanup();
+            nextCleanup.set(now + CLEANUP_INTERVAL_NANOS);
+            if (arrivalTimes.size() < maxClients) return;
+
+            long[] times = arrivalTimes.values().stream().mapToLong(AtomicLong::get).toArray();
+            Arrays.sort(times);
+            int toEvict = Math.max(1, Math.min(times.length, maxClients / 10));
+            long threshold = times[toEvict - 1];
+
+            Iterator<Map.Entry<String, AtomicLong>> it = arrivalTimes.entrySet().iterator();
+            int evicted = 0;
+            while (it.hasNext() && evicted < toEvict) {
+                if (it.next().getValue().get() - threshold <= 0) {
+                    it.remove();
+                    evicted++;
+                }
             }
+            evictedClients.add(evicted);
+        } finally {
+            evictionLock.unlock();
         }
     }
 
@@ -124,4 +204,22 @@ public class RateLimiter {
     public long getWindowMs() {
         return windowMs;
     }
+
+    public int getMaxClients() {
+        return maxClients;
+    }
+
+    /**
+     * Number of client IPs currently tracked
+     */
+    public int getTrackedClients() {
+        return arrivalTimes.size();
+    }
+
+    /**
+     * Total clients removed by idle cleanup or capacity eviction
+     */
+    public long getEvictedClients() {
+        return evictedClients.sum();
+    }
 }
@@ -0,0 +1,214 @@
+package no.eira.relay.http;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Exchange that passes everything through to the real one and keeps a copy of
+ * the response, so it can be replayed for a repeated Idempotency-Key.
+ *
+ * The listener gets the response once the body is closed (or straight away for
+ * a response without a body), or null if the request failed or the body was
+ * too large to keep.
+ */
+class RecordingExchange extends HttpExchange {
+
+    private final HttpExchange delegate;
+    private final int maxBytes;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile Consumer<IdempotencyCache.CachedResponse> listener;
+
+    private int status = -1;
+    private Map<String, List<String>> headers;
+    private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    private OutputStream responseBody;
+
+    RecordingExchange(HttpExchange delegate, int maxBytes) {
+        this.delegate = delegate;
+        this.maxBytes = maxBytes;
+    }
+
+    void setListener(Consumer<IdempotencyCache.CachedResponse> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Report the request as failed; nothing is kept for replay
+     */
+    void abandon() {
+        captured = null;
+        finish();
+    }
+
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) return;
+        Consumer<IdempotencyCache.CachedResponse> current = listener;
+        if (current == null) return;
+        current.accept(status >= 0 && captured != null
+            ? new IdempotencyCache.CachedResponse(status, headers, captured.toByteArray())
+            : null);
+    }
+
+    @Override
+    public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        delegate.sendResponseHeaders(rCode, responseLength);
+        status = rCode;
+        headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : delegate.getResponseHeaders().entrySet()) {
+            String name = header.getKey();
+            // Set again by the server for the replayed response
+            if (name.equalsIgnoreCase("Date") || name.equalsIgnoreCase("Content-length")
+                || name.equalsIgnoreCase("Transfer-encoding")) continue;
+            headers.put(name, new ArrayList<>(header.getValue()));
+        }
+        if (responseLength == -1) {
+            finish(); // No body to wait for
+        }
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        if (responseBody == null) {
+            responseBody = new RecordingStream(delegate.getResponseBody());
+        }
+        return responseBody;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+        finish();
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return delegate.getRequestHeaders();
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return delegate.getResponseHeaders();
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return delegate.getRequestURI();
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return delegate.getRequestMethod();
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+        return delegate.getHttpContext();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return delegate.getRequestBody();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return delegate.getRemoteAddress();
+    }
+
+    @Override
+    public int getResponseCode() {
+        return delegate.getResponseCode();
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return delegate.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return delegate.getProtocol();
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return delegate.getAttribute(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        delegate.setAttribute(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        delegate.setStreams(i, o);
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return delegate.getPrincipal();
+    }
+
+    /**
+     * Response stream that copies what is written, up to maxBytes
+     */
+    private class RecordingStream extends OutputStream {
+        private final OutputStream out;
+
+        RecordingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            record(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            record(b, off, len);
+        }
+
+        private void record(byte[] b, int off, int len) {
+            ByteArrayOutputStream copy = captured;
+            if (copy == null) return;
+            if (copy.size() + len > maxBytes) {
+                captured = null; // Too large to replay
+                return;
+            }
+            copy.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } finally {
+                finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package no.eira.relay.http;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers signatures of accepted webhook requests so a captured request
+ * cannot be replayed while its timestamp is still inside the allowed skew.
+ *
+ * Entries are grouped into a fixed ring of buckets by the request timestamp.
+ * A bucket is cleared as a whole when the ring comes round to it again, by
+ * which time every timestamp it held is outside the skew window, so there is
+ * no per-entry expiry and no sweeper thread. Each bucket holds at most
+ * maxEntries / BUCKETS signatures; when one is full new requests for that
+ * time slice are refused rather than accepted unprotected.
+ */
+public class ReplayCache {
+
+    private static final int BUCKETS = 16;
+
+    public enum Outcome {
+        ACCEPTED,
+        REPLAYED,
+        FULL
+    }
+
+    private final long maxSkewSeconds;
+    private final int maxEntries;
+    private final long bucketSeconds;
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+    private final LongAdder replayedRequests = new LongAdder();
+
+    /**
+     * @param maxSkewSeconds Largest accepted difference between a request timestamp and the server clock
+     * @param maxEntries Signatures remembered at once, across all buckets
+     */
+    public ReplayCache(long maxSkewSeconds, int maxEntries) {
+        this.maxSkewSeconds = maxSkewSeconds;
+        this.maxEntries = maxEntries;
+        // Accepted timestamps span 2 * maxSkewSeconds, which must fit in BUCKETS - 1 slices
+        this.bucketSeconds = Math.max(1, (2 * maxSkewSeconds + BUCKETS - 3) / (BUCKETS - 2));
+        int perBucket = Math.max(1, maxEntries / BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket(perBucket);
+        }
+    }
+
+    /**
+     * Whether a timestamp is close enough to the server clock
+     */
+    public boolean isFresh(long timestampSeconds, long nowSeconds) {
+        return Math.abs(nowSeconds - timestampSeconds) <= maxSkewSeconds;
+    }
+
+    /**
+     * Record a verified signature. The timestamp must already have passed isFresh.
+     */
+    public Outcome add(long timestampSeconds, byte[] signature) {
+        long slice = Math.floorDiv(timestampSeconds, bucketSeconds);
+        Bucket bucket = buckets[(int) Math.floorMod(slice, BUCKETS)];
+        ByteBuffer key = ByteBuffer.wrap(signature.clone());
+
+        synchronized (bucket) {
+            if (bucket.slice != slice) {
+                if (bucket.slice > slice) {
+                    // Slot already reused for a newer slice, so this timestamp is long expired
+                    replayedRequests.increment();
+                    return Outcome.REPLAYED;
+                }
+                bucket.signatures.clear();
+                bucket.slice = slice;
+            }
+            if (bucket.signatures.contains(key)) {
+                replayedRequests.increment();
+                return Outcome.REPLAYED;
+            }
+            if (bucket.signatures.size() >= bucket.capacity) {
+                return Outcome.FULL;
+            }
+            bucket.signatures.add(key);
+            return Outcome.ACCEPTED;
+        }
+    }
+
+    public long getMaxSkewSeconds() {
+        return maxSkewSeconds;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Seconds until the bucket a refused request fell into is recycled
+     */
+    public long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public long getReplayedRequests() {
+        return replayedRequests.sum();
+    }
+
+    /**
+     * Signatures currently remembered
+     */
+    public int getEntryCount() {
+        int count = 0;
+        for (Bucket bucket : buckets) {
+            synchronized (bucket) {
+                count += bucket.signatures.size();
+            }
+        }
+        return count;
+    }
+
+    private static final class Bucket {
+        private final int capacity;
+        private final Set<ByteBuffer> signatures = new HashSet<>();
+        private long slice = Long.MIN_VALUE;
+
+        private Bucket(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+}
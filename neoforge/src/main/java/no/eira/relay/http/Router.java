@@ -0,0 +1,219 @@
+package no.eira.relay.http;
+
+import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.middleware.Middleware;
+
+import java.util.*;
+
+/**
+ * Immutable routing table mapping request paths to handlers.
+ *
+ * Routes are path templates made of static segments and {name} parameters,
+ * e.g. /trigger/{triggerId}, stored in a segment trie so lookup walks the path
+ * once. Static segments win over parameters. Each route keeps one handler per
+ * HTTP method from IHttpHandler.httpMethods() (a handler with no methods
+ * accepts any), together with the middleware chain compiled for it.
+ *
+ * The server builds a new Router whenever handlers change and swaps it in
+ * atomically, so lookups never see a half-updated table.
+ */
+public final class Router {
+
+    private static final Router EMPTY = new Router(new Node());
+
+    private final Node root;
+
+    private Router(Node root) {
+        this.root = root;
+    }
+
+    public static Router empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Compiles the request pipeline for one route and method
+     */
+    @FunctionalInterface
+    public interface ChainFactory {
+        /**
+         * @param method Upper-case method, or null for a handler that accepts any method
+         */
+        Middleware.Chain compile(String template, String method, IHttpHandler handler);
+    }
+
+    /**
+     * Build a router from the routes of the given handlers. Later handlers
+     * replace earlier ones for the same route and method.
+     */
+    public static Router build(Collection<IHttpHandler> handlers, ChainFactory chains) {
+        Node root = new Node();
+        Set<Route> routes = new LinkedHashSet<>();
+        for (IHttpHandler handler : handlers) {
+            for (String template : handler.routes()) {
+                routes.add(addRoute(root, template, handler));
+            }
+        }
+
+        // Compile once the final handler for each route and method is known
+        for (Route route : routes) {
+            for (Map.Entry<String, IHttpHandler> entry : route.byMethod.entrySet()) {
+                route.chains.put(entry.getKey(), chains.compile(route.template, entry.getKey(), entry.getValue()));
+            }
+            if (route.anyMethod != null) {
+                route.anyMethodChain = chains.compile(route.template, null, route.anyMethod);
+            }
+        }
+        return new Router(root);
+    }
+
+    private static Route addRoute(Node root, String template, IHttpHandler handler) {
+        Node node = root;
+        List<String> paramNames = new ArrayList<>();
+
+        for (String segment : splitPath(template)) {
+            if (segment.length() > 2 && segment.startsWith("{") && segment.endsWith("}")) {
+                paramNames.add(segment.substring(1, segment.length() - 1));
+                if (node.paramChild == null) {
+                    node.paramChild = new Node();
+                }
+                node = node.paramChild;
+            } else {
+                node = node.children.computeIfAbsent(segment, k -> new Node());
+            }
+        }
+
+        if (node.route == null) {
+            node.route = new Route(template, paramNames);
+        }
+        List<String> methods = handler.httpMethods();
+        if (methods == null || methods.isEmpty()) {
+            node.route.anyMethod = handler;
+        } else {
+            for (String method : methods) {
+                node.route.byMethod.put(method.toUpperCase(Locale.ROOT), handler);
+            }
+        }
+        return node.route;
+    }
+
+    /**
+     * Find the route for a request path
+     * @return The match, or null if no route has this path
+     */
+    public RouteMatch lookup(String path) {
+        List<String> segments = splitPath(path);
+        List<String> paramValues = new ArrayList<>(2);
+        Route route = match(root, segments, 0, paramValues);
+        if (route == null) return null;
+
+        Map<String, String> params = route.paramNames.isEmpty()
+            ? Collections.emptyMap()
+            : new HashMap<>(route.paramNames.size() * 2);
+        for (int i = 0; i < route.paramNames.size(); i++) {
+            params.put(route.paramNames.get(i), paramValues.get(i));
+        }
+        return new RouteMatch(route, params);
+    }
+
+    private static Route match(Node node, List<String> segments, int index, List<String> paramValues) {
+        if (index == segments.size()) {
+            return node.route;
+        }
+
+        String segment = segments.get(index);
+        Node child = node.children.get(segment);
+        if (child != null) {
+            Route route = match(child, segments, index + 1, paramValues);
+            if (route != null) return route;
+        }
+
+        if (node.paramChild != null) {
+            paramValues.add(segment);
+            Route route = match(node.paramChild, segments, index + 1, paramValues);
+            if (route != null) return route;
+            paramValues.remove(paramValues.size() - 1);
+        }
+        return null;
+    }
+
+    // Empty segments are dropped, so trailing and doubled slashes are ignored
+    private static List<String> splitPath(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = length;
+            if (end > start) {
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    /**
+     * A matched route with the path parameters taken from the request
+     */
+    public static final class RouteMatch {
+        private final Route route;
+        private final Map<String, String> pathParams;
+
+        private RouteMatch(Route route, Map<String, String> pathParams) {
+            this.route = route;
+            this.pathParams = pathParams;
+        }
+
+        /**
+         * Get the handler for a method, or null if the route does not accept it
+         */
+        public IHttpHandler handlerFor(String method) {
+            IHttpHandler handler = route.byMethod.get(method.toUpperCase(Locale.ROOT));
+            return handler != null ? handler : route.anyMethod;
+        }
+
+        /**
+         * Get the compiled pipeline for a method, or null if the route does not accept it
+         */
+        public Middleware.Chain chainFor(String method) {
+            Middleware.Chain chain = route.chains.get(method.toUpperCase(Locale.ROOT));
+            return chain != null ? chain : route.anyMethodChain;
+        }
+
+        /**
+         * Methods accepted by the route (empty if it accepts any method)
+         */
+        public Set<String> allowedMethods() {
+            return route.anyMethod != null ? Collections.emptySet() : route.byMethod.keySet();
+        }
+
+        public String template() {
+            return route.template;
+        }
+
+        public Map<String, String> pathParams() {
+            return pathParams;
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Node paramChild;
+        Route route;
+    }
+
+    private static final class Route {
+        final String template;
+        final List<String> paramNames;
+        final Map<String, IHttpHandler> byMethod = new LinkedHashMap<>();
+        final Map<String, Middleware.Chain> chains = new HashMap<>();
+        IHttpHandler anyMethod;
+        Middleware.Chain anyMethodChain;
+
+        Route(String template, List<String> paramNames) {
+            this.template = template;
+            this.paramNames = paramNames;
+        }
+    }
+}
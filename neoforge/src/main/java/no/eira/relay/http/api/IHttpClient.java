@@ -1,10 +1,20 @@
 package no.eira.relay.http.api;
 
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public interface IHttpClient {
 
+    /**
+     * Send a prepared request through the shared client.
+     * The configured request timeout is applied to the builder.
+     * @param request Request builder with URI, method and headers set
+     * @return CompletableFuture with the full response
+     */
+    CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest.Builder request);
+
     String sendPost(String url, String parameters);
 
     String sendPost(String url, String parameters, Map<String, String> headers);
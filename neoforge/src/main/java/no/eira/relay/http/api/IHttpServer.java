@@ -10,4 +10,5 @@ public interface IHttpServer {
     void registerHandler(IHttpHandler handler);
     void unregisterHandler(String url);
     IHttpHandler getHandlerByUrl(String url);
+    void reloadConfig();
 }
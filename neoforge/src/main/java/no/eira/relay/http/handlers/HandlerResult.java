@@ -0,0 +1,22 @@
+package no.eira.relay.http.handlers;
+
+import java.util.Map;
+
+/**
+ * Outcome of a built-in action (trigger, redstone, broadcast), independent of
+ * the transport. HTTP handlers send it as a JSON response; WebSocket
+ * connections send it as an acknowledgement frame.
+ */
+public record HandlerResult(int statusCode, Map<String, Object> body) {
+
+    public static HandlerResult ok(Map<String, Object> body) {
+        return new HandlerResult(200, body);
+    }
+
+    public static HandlerResult error(int statusCode, String error) {
+        return new HandlerResult(statusCode, Map.of(
+            "success", false,
+            "error", error
+        ));
+    }
+}
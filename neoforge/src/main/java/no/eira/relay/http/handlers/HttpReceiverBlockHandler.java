@@ -1,17 +1,22 @@
 package no.eira.relay.http.handlers;
 
+import no.eira.relay.Constants;
 import no.eira.relay.CommonClass;
 import no.eira.relay.block.HttpReceiverBlock;
 import no.eira.relay.blockentity.HttpReceiverBlockEntity;
+import no.eira.relay.http.CompletionResponder;
+import no.eira.relay.http.MainThreadDispatcher;
+import no.eira.relay.http.ReplayCache;
+import no.eira.relay.http.RequestContext;
+import no.eira.relay.http.WebhookSignature;
 import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.metrics.RelayMetrics;
 import no.eira.relay.platform.Services;
 import no.eira.relay.platform.config.GlobalParam;
-import no.eira.relay.utils.ParameterReader;
 import org.eira.core.api.EiraAPI;
 import org.eira.core.api.events.HttpReceivedEvent;
 import com.sun.net.httpserver.HttpExchange;
 import net.minecraft.core.BlockPos;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
@@ -19,7 +24,9 @@ import net.minecraft.world.level.block.state.BlockState;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class HttpReceiverBlockHandler implements IHttpHandler {
 
@@ -28,7 +35,13 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
     private ServerLevel serverLevel;
     private String url;
     private String secretToken;
-    private static final String ALLOWED_METHOD = "POST";
+    private byte[] secretTokenBytes;
+    private WebhookSignature signature;
+    // Browsers and QR code scans send GET; webhooks and senders send POST
+    private static final List<String> ALLOWED_METHODS = List.of("GET", "POST");
+
+    // Signed requests already accepted, shared by every receiver endpoint
+    private static volatile ReplayCache replayCache;
 
     public HttpReceiverBlockHandler(HttpReceiverBlockEntity entity, String url, String secretToken){
         this.blockPositions = new ArrayList<>();
@@ -36,6 +49,17 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
         this.serverLevel = (ServerLevel) entity.getLevel();
         this.url = url;
         this.secretToken = secretToken;
+        if (secretToken != null && !secretToken.isEmpty()) {
+            this.secretTokenBytes = secretToken.getBytes(StandardCharsets.UTF_8);
+            this.signature = new WebhookSignature(secretToken);
+        }
+    }
+
+    /**
+     * Set the replay cache used to reject repeated signed requests
+     */
+    public static void setReplayCache(ReplayCache cache) {
+        replayCache = cache;
     }
 
     public static void create(HttpReceiverBlockEntity entity, String url, String secretToken){
@@ -47,16 +71,20 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
             if (handler instanceof HttpReceiverBlockHandler receiverHandler) {
                 // Add to existing handler (uses token from first block)
                 receiverHandler.addBlockPosition(entity.getBlockPos(), (ServerLevel) entity.getLevel());
-                System.out.println("[HttpAutomator] Added block at " + entity.getBlockPos() + " to existing handler for: " + normalizedUrl);
+                if (Constants.LOG.isDebugEnabled()) {
+                    Constants.LOG.debug("Added block at {} to existing handler for {}", entity.getBlockPos(), normalizedUrl);
+                }
                 return;
             }
             // Error because URL already exists with different handler type
-            System.out.println("[HttpAutomator] ERROR: URL " + normalizedUrl + " already registered with different handler type");
+            Constants.LOG.error("URL {} is already registered with a different handler type", normalizedUrl);
             return;
         }
         HttpReceiverBlockHandler newHandler = new HttpReceiverBlockHandler(entity, normalizedUrl, secretToken);
         CommonClass.HTTP_SERVER.registerHandler(newHandler);
-        System.out.println("[HttpAutomator] Registered NEW handler for endpoint: " + normalizedUrl + " at block " + entity.getBlockPos());
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Registered new handler for {} at block {}", normalizedUrl, entity.getBlockPos());
+        }
     }
 
     private void addBlockPosition(BlockPos pos, ServerLevel level){
@@ -76,69 +104,60 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
 
     @Override
     public List<String> httpMethods() {
-        return List.of(ALLOWED_METHOD);
+        return ALLOWED_METHODS;
     }
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        System.out.println("[EiraRelay] Received " + exchange.getRequestMethod() + " request to " + exchange.getRequestURI());
-
         try {
+            // Body and params are read once and shared by every check below
+            RequestContext context = RequestContext.get(exchange);
+
             // Check secret token first
-            if (!validateToken(exchange)) {
+            if (!validateToken(context)) {
                 return; // Response already sent
             }
 
             // Check global parameters
             List<GlobalParam> globalParams = Services.HTTP_CONFIG.getGlobalParams();
             if (!globalParams.isEmpty()) {
-                if (!checkGlobalParams(exchange, globalParams)) {
+                if (!checkGlobalParams(context, globalParams)) {
                     return; // Response already sent by checkGlobalParams
                 }
             }
 
             int signalsSent = 0;
+            CompletableFuture<Integer> signalled = null;
 
             if (serverLevel != null && serverLevel.getServer() != null) {
-                MinecraftServer server = serverLevel.getServer();
-
                 // Copy the list to avoid concurrent modification
                 List<BlockPos> positionsCopy = new ArrayList<>(blockPositions);
 
-                for (BlockPos pos : positionsCopy) {
-                    // Schedule on main server thread
-                    server.execute(() -> {
-                        try {
-                            // Look up the block entity fresh each time
-                            BlockEntity blockEntity = serverLevel.getBlockEntity(pos);
-                            if (blockEntity instanceof HttpReceiverBlockEntity receiver) {
-                                // Get current block state
-                                BlockState state = serverLevel.getBlockState(pos);
-                                if (state.getBlock() instanceof HttpReceiverBlock block) {
-                                    // Directly call onSignal on the block
-                                    block.onSignal(state, serverLevel, pos);
-                                    System.out.println("[EiraRelay] Triggered signal at block position: " + pos);
-                                }
-                            } else {
-                                System.out.println("[EiraRelay] Block entity at " + pos + " is not HttpReceiverBlockEntity or is null");
-                            }
-                        } catch (Exception e) {
-                            System.err.println("[EiraRelay] Error triggering block at " + pos + ": " + e.getMessage());
-                            e.printStackTrace();
+                if (context.waitRequested()) {
+                    // One task for every block, counting the ones that were actually signalled
+                    signalled = MainThreadDispatcher.call(() -> {
+                        int count = 0;
+                        for (BlockPos pos : positionsCopy) {
+                            if (signalBlock(pos)) count++;
                         }
+                        return count;
                     });
-                    signalsSent++;
+                } else {
+                    for (BlockPos pos : positionsCopy) {
+                        // Queue for the main server thread
+                        MainThreadDispatcher.submit(() -> signalBlock(pos));
+                        signalsSent++;
+                    }
                 }
             } else {
-                System.out.println("[EiraRelay] Server level is null, cannot process request");
+                Constants.LOG.warn("Server level is null, cannot process request to {}", url);
             }
 
             // Publish event to Eira Core if available
             final String endpoint = getUrl();
-            final String method = exchange.getRequestMethod();
+            final String method = context.method();
             try {
-                Map<String, String> allParams = ParameterReader.getAllParameters(exchange);
-                Map<String, Object> eventParams = new HashMap<>(allParams);
+                Map<String, Object> eventParams = new HashMap<>(context.parameters());
                 EiraAPI.ifPresent(api -> {
                     api.events().publish(new HttpReceivedEvent(endpoint, method, eventParams));
                 });
@@ -146,17 +165,17 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
                 // Ignore event publishing errors
             }
 
-            // Send success response
-            String response = "OK - Signal sent to " + signalsSent + " block(s)";
-            byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
-            exchange.getResponseHeaders().set("Content-Type", "text/plain");
-            exchange.sendResponseHeaders(200, responseBytes.length);
-            try (OutputStream os = exchange.getResponseBody()) {
-                os.write(responseBytes);
+            // Send success response (once the blocks have been signalled when waiting)
+            if (signalled != null) {
+                CompletionResponder.respond(exchange,
+                    signalled.thenApply(count -> HandlerResult.ok(Map.of("blocks", count))),
+                    (ex, result) -> sendTextResponse(ex, result.statusCode(), result.statusCode() == 200
+                        ? "OK - Signal sent to " + result.body().get("blocks") + " block(s)"
+                        : "Error: " + result.body().get("error")));
+            } else {
+                sendTextResponse(exchange, 200, "OK - Signal sent to " + signalsSent + " block(s)");
             }
 
-            System.out.println("[EiraRelay] Response sent: " + response);
-
         } catch (Exception e) {
             // Send error response
             String errorResponse = "Error: " + e.getMessage();
@@ -165,13 +184,53 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
             try (OutputStream os = exchange.getResponseBody()) {
                 os.write(errorBytes);
             }
-            System.err.println("[EiraRelay] Error handling request: " + e.getMessage());
-            e.printStackTrace();
+            Constants.LOG.error("Error handling request to {}", url, e);
+        }
+    }
+
+    /**
+     * Signal the receiver block at a position. Must run on the main server thread.
+     * @return false if there is no receiver block there any more
+     */
+    private boolean signalBlock(BlockPos pos) {
+        try {
+            // Look up the block entity fresh each time
+            BlockEntity blockEntity = serverLevel.getBlockEntity(pos);
+            if (blockEntity instanceof HttpReceiverBlockEntity receiver) {
+                // Get current block state
+                BlockState state = serverLevel.getBlockState(pos);
+                if (state.getBlock() instanceof HttpReceiverBlock block) {
+                    // Directly call onSignal on the block
+                    block.onSignal(state, serverLevel, pos);
+                    RelayMetrics.RECEIVER_SIGNALS.increment();
+                    if (Constants.LOG.isDebugEnabled()) {
+                        Constants.LOG.debug("Triggered signal at block position {}", pos);
+                    }
+                    return true;
+                }
+            } else {
+                if (Constants.LOG.isDebugEnabled()) {
+                    Constants.LOG.debug("Block entity at {} is not a receiver block", pos);
+                }
+            }
+        } catch (Exception e) {
+            Constants.LOG.error("Error triggering block at {}", pos, e);
+        }
+        return false;
+    }
+
+    private void sendTextResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
         }
     }
 
-    private boolean checkGlobalParams(HttpExchange exchange, List<GlobalParam> globalParams) throws IOException {
-        Map<String, String> params = ParameterReader.getAllParameters(exchange);
+    private boolean checkGlobalParams(RequestContext context, List<GlobalParam> globalParams) throws IOException {
+        HttpExchange exchange = context.exchange();
+        Map<String, String> params = context.parameters();
         String redirect = Services.HTTP_CONFIG.getGlobalRedirect();
 
         // If no params in request, redirect to global redirect URL if configured
@@ -211,34 +270,64 @@ public class HttpReceiverBlockHandler implements IHttpHandler {
         return true;
     }
 
-    private boolean validateToken(HttpExchange exchange) throws IOException {
+    private boolean validateToken(RequestContext context) throws IOException {
         // No token required if not configured
-        if (secretToken == null || secretToken.isEmpty()) {
+        if (signature == null) {
             return true;
         }
 
+        // HMAC signature, required when configured and checked whenever one is sent
+        ReplayCache replays = replayCache;
+        boolean signed = context.header(WebhookSignature.SIGNATURE_HEADER) != null;
+        if (replays != null && (signed || Services.HTTP_CONFIG.isSignatureRequired())) {
+            WebhookSignature.Result result = signature.verify(context, replays);
+            if (result == WebhookSignature.Result.VALID) {
+                return true;
+            }
+            if (result == WebhookSignature.Result.CACHE_FULL) {
+                context.exchange().getResponseHeaders().set("Retry-After", String.valueOf(replays.getBucketSeconds()));
+                sendAuthErrorResponse(context.exchange(), 503, result.message());
+            } else {
+                sendAuthErrorResponse(context.exchange(), 401, result.message());
+            }
+            return false;
+        }
+
         // Check Authorization header first (Bearer token)
-        String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
-        if (authHeader != null && authHeader.equals("Bearer " + secretToken)) {
+        String authHeader = context.header("Authorization");
+        if (authHeader != null && authHeader.startsWith("Bearer ") && tokenMatches(authHeader.substring(7))) {
             return true;
         }
 
-        // Check query parameter as fallback
-        Map<String, String> params = ParameterReader.getAllParameters(exchange);
-        String paramToken = params.get("token");
-        if (paramToken != null && paramToken.equals(secretToken)) {
+        // Check query parameter as fallback, then the request parameters
+        String paramToken = context.queryParameters().get("token");
+        if (paramToken == null) {
+            paramToken = context.parameters().get("token");
+        }
+        if (paramToken != null && tokenMatches(paramToken)) {
             return true;
         }
 
-        // Unauthorized - send 401 response
-        String error = "{\"error\": \"Unauthorized\"}";
+        sendAuthErrorResponse(context.exchange(), 401, "Unauthorized");
+        return false;
+    }
+
+    // Constant-time comparison so response timing does not reveal how much of the token matched
+    private boolean tokenMatches(String presented) {
+        return MessageDigest.isEqual(secretTokenBytes, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendAuthErrorResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
+        RelayMetrics.RECEIVER_AUTH_FAILURES.increment();
+        String error = "{\"error\": \"" + message + "\"}";
         byte[] errorBytes = error.getBytes(StandardCharsets.UTF_8);
         exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(401, errorBytes.length);
+        exchange.sendResponseHeaders(statusCode, errorBytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(errorBytes);
         }
-        System.out.println("[EiraRelay] Unauthorized request - invalid or missing token");
-        return false;
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Refused request to {}: {}", exchange.getRequestURI().getPath(), message);
+        }
     }
 }
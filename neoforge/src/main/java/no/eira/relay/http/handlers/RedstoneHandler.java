@@ -1,23 +1,30 @@
 package no.eira.relay.http.handlers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.sun.net.httpserver.HttpExchange;
 import net.minecraft.core.BlockPos;
-import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
+import no.eira.relay.Constants;
+import no.eira.relay.http.CompletionResponder;
+import no.eira.relay.http.MainThreadDispatcher;
+import no.eira.relay.http.RequestContext;
 import no.eira.relay.http.api.IHttpHandler;
+import no.eira.relay.http.metrics.RelayMetrics;
+import no.eira.relay.utils.TimingWheel;
 import org.eira.core.api.EiraAPI;
 import org.eira.core.api.events.RedstoneChangeEvent;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -28,10 +35,16 @@ public class RedstoneHandler implements IHttpHandler {
 
     private static final String ALLOWED_METHOD = "POST";
     private static final Gson GSON = new Gson();
+    // Longest emission accepted: one hour of game time
+    private static final int MAX_DURATION_TICKS = 72000;
+    private static final int MAX_BULK_EMISSIONS = 4096;
 
-    // Active redstone emitters (position -> expiry time in ticks)
+    // Active redstone emitters (position -> emission)
     private static final Map<BlockPos, RedstoneEmission> activeEmissions = new ConcurrentHashMap<>();
 
+    // Emission expiries by tick; only touched on the main server thread
+    private static final TimingWheel<RedstoneEmission> expiryWheel = new TimingWheel<>(1024);
+
     // Server level reference
     private static ServerLevel serverLevel;
 
@@ -49,35 +62,57 @@ public class RedstoneHandler implements IHttpHandler {
         return activeEmissions;
     }
 
+    /**
+     * Start (or replace) an emission at a position. Must be called on the main server thread.
+     * @return The new emission
+     */
+    public static RedstoneEmission startEmission(BlockPos pos, int strength, int durationTicks) {
+        RedstoneEmission emission = new RedstoneEmission(pos, strength);
+        emission.expiry = expiryWheel.schedule(emission, durationTicks);
+        // Report game time rather than the wheel's own tick counter, which clients cannot compare against
+        long now = serverLevel != null ? serverLevel.getGameTime() : 0;
+        emission.expiresAtTick = now + durationTicks;
+        RedstoneEmission replaced = activeEmissions.put(pos, emission);
+        if (replaced != null) {
+            // Drop the old expiry now instead of keeping it in the wheel until its deadline
+            expiryWheel.cancel(replaced.expiry);
+        }
+        RelayMetrics.REDSTONE_EMISSIONS_STARTED.increment();
+        return emission;
+    }
+
     /**
      * Process tick for active emissions (called from server tick)
      */
     public static void tick() {
-        if (activeEmissions.isEmpty()) return;
-
-        Iterator<Map.Entry<BlockPos, RedstoneEmission>> it = activeEmissions.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<BlockPos, RedstoneEmission> entry = it.next();
-            RedstoneEmission emission = entry.getValue();
-            emission.ticksRemaining--;
-
-            if (emission.ticksRemaining <= 0) {
-                // Publish event before removal
-                final BlockPos eventPos = entry.getKey();
-                final int oldStrength = emission.strength;
-                EiraAPI.ifPresent(api -> {
-                    api.events().publish(new RedstoneChangeEvent(eventPos, oldStrength, 0));
-                });
-
-                it.remove();
-                // Notify neighbors that redstone changed
-                if (serverLevel != null) {
-                    BlockPos pos = entry.getKey();
-                    serverLevel.updateNeighborsAt(pos, Blocks.AIR);
-                    System.out.println("[EiraRelay] Redstone emission ended at " + pos);
-                }
+        if (expiryWheel.isEmpty()) return;
+
+        long start = System.nanoTime();
+        Set<BlockPos> endedPositions = new LinkedHashSet<>();
+        List<RedstoneChangeEvent> events = new ArrayList<>();
+        expiryWheel.advance(emission -> {
+            // Replaced emissions are cancelled, so this only skips ones removed from the map directly
+            if (!activeEmissions.remove(emission.pos, emission)) return;
+
+            events.add(new RedstoneChangeEvent(emission.pos, emission.strength, 0));
+            endedPositions.add(emission.pos);
+            RelayMetrics.REDSTONE_EMISSIONS_ENDED.increment();
+        });
+        // Publish this tick's events to Eira Core as one batch
+        if (!events.isEmpty()) {
+            EiraAPI.ifPresent(api -> api.events().publishAll(events));
+        }
+
+        // Notify neighbors once per position that changed
+        if (serverLevel != null && !endedPositions.isEmpty()) {
+            for (BlockPos pos : endedPositions) {
+                serverLevel.updateNeighborsAt(pos, Blocks.AIR);
+            }
+            if (Constants.LOG.isDebugEnabled()) {
+                Constants.LOG.debug("Redstone emissions ended at {}", endedPositions);
             }
         }
+        RelayMetrics.REDSTONE_TICK.observeSince(start);
     }
 
     /**
@@ -100,84 +135,200 @@ public class RedstoneHandler implements IHttpHandler {
 
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        System.out.println("[EiraRelay] Received " + exchange.getRequestMethod() + " request to /redstone");
+        RequestContext context = RequestContext.get(exchange);
+        CompletionResponder.respond(exchange, emit(context.json(), context.waitRequested()),
+            (ex, r) -> sendJsonResponse(ex, r.statusCode(), r.body()));
+    }
+
+    /**
+     * Start one emission ({x, y, z, strength, duration}) or a bulk request
+     * (an array of those, or the packed coords form)
+     * @param wait Complete once the emissions have started, reporting when they expire
+     */
+    public static CompletableFuture<HandlerResult> emit(JsonElement body, boolean wait) {
+        // Bulk forms: an array of emissions, or packed coordinates
+        if (body != null && (body.isJsonArray() || (body.isJsonObject() && body.getAsJsonObject().has("coords")))) {
+            return emitBulk(body, wait);
+        }
 
         // Parse request body
-        RedstoneRequest request = parseRequestBody(exchange);
+        RedstoneRequest request = null;
+        if (body != null && body.isJsonObject()) {
+            try {
+                request = GSON.fromJson(body, RedstoneRequest.class);
+            } catch (JsonParseException e) {
+                // Reported as invalid below
+            }
+        }
         if (request == null) {
-            sendJsonResponse(exchange, 400, Map.of(
-                "success", false,
-                "error", "Invalid request body. Expected: {\"x\": int, \"y\": int, \"z\": int, \"strength\": int, \"duration\": int}"
-            ));
-            return;
+            return CompletableFuture.completedFuture(HandlerResult.error(400,
+                "Invalid request body. Expected: {\"x\": int, \"y\": int, \"z\": int, \"strength\": int, \"duration\": int}"));
         }
 
         // Validate coordinates
         if (request.x == null || request.y == null || request.z == null) {
-            sendJsonResponse(exchange, 400, Map.of(
-                "success", false,
-                "error", "Missing coordinates (x, y, z required)"
-            ));
-            return;
+            return CompletableFuture.completedFuture(HandlerResult.error(400, "Missing coordinates (x, y, z required)"));
         }
 
         // Default values
-        int strength = request.strength != null ? Math.min(15, Math.max(0, request.strength)) : 15;
-        int duration = request.duration != null ? Math.max(1, request.duration) : 20; // Default 1 second (20 ticks)
+        int strength = clampStrength(request.strength);
+        int duration = clampDuration(request.duration);
 
         BlockPos pos = new BlockPos(request.x, request.y, request.z);
 
         // Create emission
-        if (serverLevel != null && serverLevel.getServer() != null) {
-            MinecraftServer server = serverLevel.getServer();
+        if (serverLevel == null || serverLevel.getServer() == null) {
+            return CompletableFuture.completedFuture(HandlerResult.error(503, "Server not available"));
+        }
 
-            final int finalStrength = strength;
-            server.execute(() -> {
-                activeEmissions.put(pos, new RedstoneEmission(finalStrength, duration));
-                // Notify neighbors
-                serverLevel.updateNeighborsAt(pos, Blocks.REDSTONE_BLOCK);
-                System.out.println("[EiraRelay] Redstone emission started at " + pos +
-                    " (strength=" + finalStrength + ", duration=" + duration + " ticks)");
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("success", true);
+        response.put("position", Map.of("x", request.x, "y", request.y, "z", request.z));
+        response.put("strength", strength);
+        response.put("durationTicks", duration);
 
-                // Publish event to Eira Core if available
-                EiraAPI.ifPresent(api -> {
-                    api.events().publish(new RedstoneChangeEvent(pos, 0, finalStrength));
-                });
-            });
+        if (!wait) {
+            MainThreadDispatcher.submit(() -> applyEmission(pos, strength, duration));
+            return CompletableFuture.completedFuture(HandlerResult.ok(response));
+        }
 
-            sendJsonResponse(exchange, 200, Map.of(
-                "success", true,
-                "position", Map.of("x", request.x, "y", request.y, "z", request.z),
-                "strength", strength,
-                "durationTicks", duration
-            ));
-        } else {
-            sendJsonResponse(exchange, 503, Map.of(
-                "success", false,
-                "error", "Server not available"
-            ));
+        return MainThreadDispatcher.call(() -> applyEmission(pos, strength, duration)).thenApply(emission -> {
+            response.put("expiresAtTick", emission.expiresAtTick);
+            return HandlerResult.ok(response);
+        });
+    }
+
+    /**
+     * Start an emission, notify its neighbors and publish the change. Runs on the main server thread.
+     */
+    private static RedstoneEmission applyEmission(BlockPos pos, int strength, int duration) {
+        RedstoneEmission emission = startEmission(pos, strength, duration);
+        // Notify neighbors
+        serverLevel.updateNeighborsAt(pos, Blocks.REDSTONE_BLOCK);
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Redstone emission started at {} (strength={}, duration={} ticks)", pos, strength, duration);
         }
+
+        // Publish event to Eira Core if available
+        EiraAPI.ifPresent(api -> {
+            api.events().publish(new RedstoneChangeEvent(pos, 0, strength));
+        });
+        return emission;
     }
 
-    private RedstoneRequest parseRequestBody(HttpExchange exchange) {
+    /**
+     * Handle a bulk request: all emissions are started in one main thread task
+     */
+    private static CompletableFuture<HandlerResult> emitBulk(JsonElement body, boolean wait) {
+        List<PendingEmission> emissions;
         try {
-            InputStreamReader isr = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8);
-            BufferedReader br = new BufferedReader(isr);
-            StringBuilder buf = new StringBuilder();
-            int b;
-            while ((b = br.read()) != -1) {
-                buf.append((char) b);
+            emissions = body.isJsonArray()
+                ? parseEmissionArray(body.getAsJsonArray())
+                : parsePackedEmissions(GSON.fromJson(body, PackedRedstoneRequest.class));
+        } catch (IllegalArgumentException | JsonParseException e) {
+            return CompletableFuture.completedFuture(HandlerResult.error(400, e.getMessage()));
+        }
+
+        if (emissions.size() > MAX_BULK_EMISSIONS) {
+            return CompletableFuture.completedFuture(
+                HandlerResult.error(400, "Too many emissions in request (max " + MAX_BULK_EMISSIONS + ")"));
+        }
+
+        if (serverLevel == null || serverLevel.getServer() == null) {
+            return CompletableFuture.completedFuture(HandlerResult.error(503, "Server not available"));
+        }
+
+        if (wait) {
+            return MainThreadDispatcher.call(() -> applyEmissions(emissions)).thenApply(positions -> HandlerResult.ok(Map.of(
+                "success", true,
+                "emissions", emissions.size(),
+                "positions", positions
+            )));
+        }
+
+        MainThreadDispatcher.submit(() -> applyEmissions(emissions));
+
+        Set<BlockPos> positions = new HashSet<>();
+        for (PendingEmission emission : emissions) {
+            positions.add(emission.pos());
+        }
+        return CompletableFuture.completedFuture(HandlerResult.ok(Map.of(
+            "success", true,
+            "emissions", emissions.size(),
+            "positions", positions.size()
+        )));
+    }
+
+    private static List<PendingEmission> parseEmissionArray(JsonArray items) {
+        List<PendingEmission> emissions = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            JsonElement item = items.get(i);
+            RedstoneRequest request = item.isJsonObject() ? GSON.fromJson(item, RedstoneRequest.class) : null;
+            if (request == null || request.x == null || request.y == null || request.z == null) {
+                throw new IllegalArgumentException("Missing coordinates (x, y, z required) at index " + i);
             }
-            br.close();
+            emissions.add(new PendingEmission(new BlockPos(request.x, request.y, request.z),
+                clampStrength(request.strength), clampDuration(request.duration)));
+        }
+        return emissions;
+    }
 
-            String body = buf.toString();
-            if (body.isEmpty()) return null;
+    private static List<PendingEmission> parsePackedEmissions(PackedRedstoneRequest request) {
+        if (request == null || request.coords == null || request.coords.length % 3 != 0) {
+            throw new IllegalArgumentException("Invalid coords. Expected a flat array of x, y, z triples");
+        }
+        int count = request.coords.length / 3;
+        if (request.strengths != null && request.strengths.length != count) {
+            throw new IllegalArgumentException("strengths must have one entry per coordinate triple");
+        }
 
-            return GSON.fromJson(body, RedstoneRequest.class);
-        } catch (Exception e) {
-            System.err.println("[EiraRelay] Failed to parse redstone request: " + e.getMessage());
-            return null;
+        int strength = clampStrength(request.strength);
+        int duration = clampDuration(request.duration);
+        List<PendingEmission> emissions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int[] c = request.coords;
+            BlockPos pos = new BlockPos(c[i * 3], c[i * 3 + 1], c[i * 3 + 2]);
+            int posStrength = request.strengths != null ? clampStrength(request.strengths[i]) : strength;
+            emissions.add(new PendingEmission(pos, posStrength, duration));
         }
+        return emissions;
+    }
+
+    /**
+     * Start a batch of emissions and notify each changed position once. Runs on the main server thread.
+     * @return Number of distinct positions changed
+     */
+    private static int applyEmissions(List<PendingEmission> emissions) {
+        Set<BlockPos> changedPositions = new LinkedHashSet<>();
+        List<RedstoneChangeEvent> events = new ArrayList<>(emissions.size());
+
+        for (PendingEmission emission : emissions) {
+            startEmission(emission.pos(), emission.strength(), emission.duration());
+            changedPositions.add(emission.pos());
+            events.add(new RedstoneChangeEvent(emission.pos(), 0, emission.strength()));
+        }
+
+        if (serverLevel != null) {
+            for (BlockPos pos : changedPositions) {
+                serverLevel.updateNeighborsAt(pos, Blocks.REDSTONE_BLOCK);
+            }
+        }
+        if (Constants.LOG.isDebugEnabled()) {
+            Constants.LOG.debug("Redstone emissions started at {}", changedPositions);
+        }
+
+        // Publish events to Eira Core if available
+        EiraAPI.ifPresent(api -> api.events().publishAll(events));
+        return changedPositions.size();
+    }
+
+    private static int clampStrength(Integer strength) {
+        return strength != null ? Math.min(15, Math.max(0, strength)) : 15;
+    }
+
+    private static int clampDuration(Integer duration) {
+        if (duration == null) return 20; // Default 1 second (20 ticks)
+        return Math.max(1, Math.min(MAX_DURATION_TICKS, duration));
     }
 
     private void sendJsonResponse(HttpExchange exchange, int statusCode, Map<String, Object> data) throws IOException {
@@ -199,14 +350,28 @@ public class RedstoneHandler implements IHttpHandler {
         Integer duration; // in ticks
     }
 
+    // Packed bulk request: coords is a flat [x, y, z, x, y, z, ...] array
+    private static class PackedRedstoneRequest {
+        int[] coords;
+        int[] strengths; // Optional, one per position
+        Integer strength;
+        Integer duration; // in ticks
+    }
+
+    private record PendingEmission(BlockPos pos, int strength, int duration) {}
+
     // Active emission tracking
     public static class RedstoneEmission {
-        public int strength;
-        public int ticksRemaining;
+        public final BlockPos pos;
+        public final int strength;
+        // Level game time at which the emission ends
+        public long expiresAtTick;
+        // Entry in the expiry wheel, cancelled when the emission is replaced
+        TimingWheel.Timeout<RedstoneEmission> expiry;
 
-        public RedstoneEmission(int strength, int ticksRemaining) {
+        public RedstoneEmission(BlockPos pos, int strength) {
+            this.pos = pos;
             this.strength = strength;
-            this.ticksRemaining = ticksRemaining;
         }
     }
 }
@@ -0,0 +1,98 @@
+package no.eira.relay.http.metrics;
+
+import java.math.BigDecimal;
+
+/**
+ * Builds a response in the Prometheus text exposition format (version 0.0.4).
+ * Only used when /metrics is scraped, so it favours simplicity over speed.
+ */
+public final class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder out = new StringBuilder(8192);
+
+    /**
+     * Write the HELP and TYPE lines of a metric family
+     * @param type counter, gauge or histogram
+     */
+    public PrometheusWriter family(String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Write one sample
+     * @param labels Label set from labels(), or "" for none
+     */
+    public PrometheusWriter sample(String name, String labels, double value) {
+        out.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+        return this;
+    }
+
+    public PrometheusWriter counter(String name, String help, double value) {
+        return family(name, "counter", help).sample(name, "", value);
+    }
+
+    public PrometheusWriter gauge(String name, String help, double value) {
+        return family(name, "gauge", help).sample(name, "", value);
+    }
+
+    /**
+     * Write the bucket, sum and count samples of a histogram. Write its family first.
+     * @param labels Label set from labels(), or "" for none
+     */
+    public PrometheusWriter histogram(String name, String labels, Histogram histogram) {
+        double[] bounds = histogram.getBoundsSeconds();
+        long[] counts = histogram.getBucketCounts();
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            String bound = BigDecimal.valueOf(bounds[i]).stripTrailingZeros().toPlainString();
+            sample(name + "_bucket", prefix + "le=\"" + bound + "\"}", cumulative);
+        }
+        cumulative += counts[bounds.length];
+        sample(name + "_bucket", prefix + "le=\"+Inf\"}", cumulative);
+        sample(name + "_sum", labels, histogram.getSumSeconds());
+        sample(name + "_count", labels, cumulative);
+        return this;
+    }
+
+    /**
+     * Format a label set
+     * @param pairs Alternating label names and values
+     */
+    public static String labels(String... pairs) {
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (i > 0) labels.append(',');
+            labels.append(pairs[i]).append("=\"");
+            String value = pairs[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                switch (ch) {
+                    case '\\' -> labels.append("\\\\");
+                    case '"' -> labels.append("\\\"");
+                    case '\n' -> labels.append("\\n");
+                    default -> labels.append(ch);
+                }
+            }
+            labels.append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
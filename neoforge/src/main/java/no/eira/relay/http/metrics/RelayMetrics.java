@@ -0,0 +1,54 @@
+package no.eira.relay.http.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters and histograms exported at GET /metrics.
+ *
+ * Each metric is a static field so recording is a field read and a LongAdder
+ * update, with no lookup by name and no allocation on the request path.
+ * Per-route request counts and latencies live in MetricsMiddleware; gauges
+ * such as queue depth or open connections are read from their owners at
+ * scrape time.
+ */
+public final class RelayMetrics {
+
+    // HTTP requests answered before reaching a handler
+    public static final LongAdder SHED_REQUESTS = new LongAdder();
+    public static final LongAdder NOT_FOUND_REQUESTS = new LongAdder();
+    public static final LongAdder METHOD_NOT_ALLOWED_REQUESTS = new LongAdder();
+    public static final LongAdder RATE_LIMITED_REQUESTS = new LongAdder();
+    public static final LongAdder BODY_TOO_LARGE_REQUESTS = new LongAdder();
+
+    // Triggers
+    public static final LongAdder TRIGGERS = new LongAdder();
+    public static final LongAdder TRIGGERS_WITHOUT_BLOCKS = new LongAdder();
+    public static final LongAdder TRIGGER_BLOCKS_SIGNALLED = new LongAdder();
+    public static final LongAdder TRIGGER_BLOCKS_MISSING = new LongAdder();
+
+    // Receiver blocks
+    public static final LongAdder RECEIVER_SIGNALS = new LongAdder();
+    public static final LongAdder RECEIVER_AUTH_FAILURES = new LongAdder();
+
+    // Redstone
+    public static final LongAdder REDSTONE_EMISSIONS_STARTED = new LongAdder();
+    public static final LongAdder REDSTONE_EMISSIONS_ENDED = new LongAdder();
+    public static final Histogram REDSTONE_TICK = new Histogram();
+
+    // Broadcasts
+    public static final LongAdder BROADCASTS = new LongAdder();
+    public static final LongAdder BROADCAST_PLAYERS_REACHED = new LongAdder();
+
+    // Main thread dispatch
+    public static final Histogram DISPATCH_QUEUE_AGE = new Histogram();
+    public static final Histogram DISPATCH_TICK = new Histogram();
+
+    // Outbound requests (HTTP Sender blocks and webhooks)
+    public static final LongAdder OUTBOUND_SUCCEEDED = new LongAdder();
+    public static final LongAdder OUTBOUND_FAILED = new LongAdder();
+    public static final LongAdder OUTBOUND_RETRIES = new LongAdder();
+    public static final Histogram OUTBOUND_DURATION = new Histogram();
+
+    private RelayMetrics() {
+    }
+}
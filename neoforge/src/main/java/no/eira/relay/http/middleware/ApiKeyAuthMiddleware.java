@@ -0,0 +1,157 @@
+package no.eira.relay.http.middleware;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.http.RequestContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Requires one of the configured API keys in the X-Api-Key header or as
+ * Authorization: Bearer <key>, answering 401 otherwise.
+ *
+ * Keys are kept only as SHA-256 digests. A presented key is hashed once, found
+ * with a map lookup on its digest and confirmed with a constant-time
+ * comparison, so the check costs the same however many keys are configured
+ * and however much of a key an attacker has guessed. The matching key's
+ * identity is attached to the request (RequestContext.apiKeyId()) and its
+ * requests are counted.
+ *
+ * One instance lives for the whole server run: configure() swaps the key table
+ * atomically on config reload, keeping per-key counters for keys that remain.
+ */
+public class ApiKeyAuthMiddleware implements Middleware {
+
+    private static final byte[] UNAUTHORIZED_RESPONSE =
+        "{\"error\": \"Invalid or missing API key\"}".getBytes(StandardCharsets.UTF_8);
+    private static final MessageDigest SHA256_PROTOTYPE = createDigest();
+
+    private volatile Map<ByteBuffer, ApiKey> keys = Map.of();
+    private volatile boolean required;
+    private final Map<String, LongAdder> requestsByKey = new ConcurrentHashMap<>();
+    private final LongAdder rejectedRequests = new LongAdder();
+
+    /**
+     * Identity of a configured key: a short fingerprint of its digest, safe to log
+     */
+    public record ApiKey(String id, byte[] digest) {
+    }
+
+    /**
+     * Replace the key table
+     * @param required Whether requests must present a key
+     * @param apiKeys Raw keys from the config; blank entries are ignored
+     */
+    public void configure(boolean required, Collection<String> apiKeys) {
+        Map<ByteBuffer, ApiKey> table = new HashMap<>();
+        for (String key : apiKeys) {
+            if (key == null || key.isBlank()) continue;
+            byte[] digest = sha256(key);
+            String id = "key-" + HexFormat.of().formatHex(digest, 0, 4);
+            table.put(ByteBuffer.wrap(digest), new ApiKey(id, digest));
+        }
+        this.keys = Map.copyOf(table);
+        this.required = required;
+
+        Set<String> ids = new HashSet<>();
+        for (ApiKey key : table.values()) ids.add(key.id());
+        requestsByKey.keySet().retainAll(ids);
+    }
+
+    public boolean isRequired() {
+        return required;
+    }
+
+    @Override
+    public void handle(RequestContext context, Chain next) throws IOException {
+        ApiKey key = authenticate(context.header("X-Api-Key"), context.header("Authorization"));
+        if (key == null) {
+            sendUnauthorizedResponse(context.exchange());
+            return;
+        }
+        context.setApiKeyId(key.id());
+        next.proceed(context);
+    }
+
+    /**
+     * Check the credentials of a request and count it against its key
+     * @param apiKeyHeader X-Api-Key value (may be null)
+     * @param authorizationHeader Authorization value (may be null)
+     * @return The matching key, or null if neither header holds a configured key
+     */
+    public ApiKey authenticate(String apiKeyHeader, String authorizationHeader) {
+        Map<ByteBuffer, ApiKey> table = keys;
+        ApiKey key = find(table, apiKeyHeader);
+        if (key == null && authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
+            key = find(table, authorizationHeader.substring(7));
+        }
+        if (key == null) {
+            rejectedRequests.increment();
+            return null;
+        }
+        requestsByKey.computeIfAbsent(key.id(), id -> new LongAdder()).increment();
+        return key;
+    }
+
+    private static ApiKey find(Map<ByteBuffer, ApiKey> table, String presented) {
+        if (presented == null || presented.isEmpty() || table.isEmpty()) return null;
+        byte[] digest = sha256(presented);
+        ApiKey key = table.get(ByteBuffer.wrap(digest));
+        return key != null && MessageDigest.isEqual(key.digest(), digest) ? key : null;
+    }
+
+    /**
+     * Number of distinct keys configured
+     */
+    public int getKeyCount() {
+        return keys.size();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * Requests accepted per key id
+     */
+    public Map<String, Long> getRequestsByKey() {
+        Map<String, Long> result = new TreeMap<>();
+        requestsByKey.forEach((id, count) -> result.put(id, count.sum()));
+        return result;
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            // Cloning skips the provider lookup of MessageDigest.getInstance
+            MessageDigest digest = (MessageDigest) SHA256_PROTOTYPE.clone();
+            return digest.digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (CloneNotSupportedException e) {
+            return createDigest().digest(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void sendUnauthorizedResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        exchange.sendResponseHeaders(401, UNAUTHORIZED_RESPONSE.length);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(UNAUTHORIZED_RESPONSE);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package no.eira.relay.http.middleware;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.http.RequestContext;
+import no.eira.relay.http.metrics.RelayMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the request body once, up to maxBodyBytes, and answers 413 for larger bodies
+ */
+public class BodyLimitMiddleware implements Middleware {
+
+    private final int maxBodyBytes;
+    private final byte[] tooLargeResponse;
+
+    public BodyLimitMiddleware(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+        this.tooLargeResponse = ("{\"error\": \"Request body too large\", \"maxBodyBytes\": " + maxBodyBytes + "}")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void handle(RequestContext context, Chain next) throws IOException {
+        try {
+            context.readBody(maxBodyBytes);
+        } catch (RequestContext.BodyTooLargeException e) {
+            RelayMetrics.BODY_TOO_LARGE_REQUESTS.increment();
+            sendBodyTooLargeResponse(context.exchange());
+            return;
+        }
+        next.proceed(context);
+    }
+
+    private void sendBodyTooLargeResponse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(413, tooLargeResponse.length);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(tooLargeResponse);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package no.eira.relay.http.middleware;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.http.RequestContext;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Adds CORS headers to every response. The header values are built once from
+ * the configured origins; requests only copy the references.
+ */
+public class CorsMiddleware implements Middleware {
+
+    // Immutable: later stages must set these headers, not add to them
+    private final List<String> allowOrigin;
+    private static final List<String> ALLOW_METHODS = List.of("GET, POST, OPTIONS");
+    private static final List<String> ALLOW_HEADERS =
+        List.of("Content-Type, Authorization, X-Api-Key, X-Eira-Wait, Idempotency-Key");
+    private static final List<String> MAX_AGE = List.of("86400"); // 24 hours
+
+    public CorsMiddleware(List<String> origins) {
+        this.allowOrigin = List.of(origins.isEmpty() ? "*" : String.join(", ", origins));
+    }
+
+    /**
+     * Add the headers to a response, including ones sent outside a route (404, 405, preflight)
+     */
+    public void apply(HttpExchange exchange) {
+        Headers headers = exchange.getResponseHeaders();
+        headers.put("Access-Control-Allow-Origin", allowOrigin);
+        headers.put("Access-Control-Allow-Methods", ALLOW_METHODS);
+        headers.put("Access-Control-Allow-Headers", ALLOW_HEADERS);
+        headers.put("Access-Control-Max-Age", MAX_AGE);
+    }
+
+    @Override
+    public void handle(RequestContext context, Chain next) throws IOException {
+        apply(context.exchange());
+        next.proceed(context);
+    }
+}
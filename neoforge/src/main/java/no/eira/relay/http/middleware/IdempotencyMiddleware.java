@@ -0,0 +1,32 @@
+package no.eira.relay.http.middleware;
+
+import no.eira.relay.http.IdempotencyCache;
+import no.eira.relay.http.RequestContext;
+
+import java.io.IOException;
+
+/**
+ * Answers repeated Idempotency-Key requests from the cache. Only compiled into
+ * POST routes; must run after the body has been read.
+ */
+public class IdempotencyMiddleware implements Middleware {
+
+    private final IdempotencyCache cache;
+
+    public IdempotencyMiddleware(IdempotencyCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void handle(RequestContext context, Chain next) throws IOException {
+        if (!cache.begin(context)) {
+            return; // Replayed or rejected
+        }
+        try {
+            next.proceed(context);
+        } catch (IOException | RuntimeException e) {
+            cache.abandon(context);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package no.eira.relay.http.middleware;
+
+import no.eira.relay.http.RequestContext;
+import no.eira.relay.http.metrics.Histogram;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts requests by status class and records handler time for one route.
+ * Each route and method gets its own instance, so requests only touch their
+ * own counters, and recording never allocates.
+ *
+ * Handlers that answer asynchronously (?wait=true) are timed until they
+ * return, not until their response is sent.
+ */
+public class MetricsMiddleware implements Middleware {
+
+    private final String route;
+    private final String method;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    // Responses by status class: 1xx to 5xx
+    private final LongAdder[] statusClasses = new LongAdder[5];
+    private final Histogram duration = new Histogram();
+
+    /**
+     * @param route Route template, e.g. /trigger/{triggerId}
+     * @param method HTTP method, or "*" for a handler that accepts any
+     */
+    public MetricsMiddleware(String route, String method) {
+        this.route = route;
+        this.method = method;
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void handle(RequestContext context, Chain next) throws IOException {
+        long start = System.nanoTime();
+        int status = 500;
+        try {
+            next.proceed(context);
+            // -1 while an asynchronous response is still pending
+            status = context.exchange().getResponseCode();
+        } finally {
+            duration.observeSince(start);
+            requests.increment();
+            if (status >= 100 && status < 600) {
+                statusClasses[status / 100 - 1].increment();
+            }
+            if (status >= 500) serverErrors.increment();
+        }
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Requests answered with a 5xx status or ending in an exception
+     */
+    public long getServerErrors() {
+        return serverErrors.sum();
+    }
+
+    /**
+     * Responses with a status in the given class, e.g. 2 for 2xx
+     */
+    public long getResponses(int statusClass) {
+        return statusClasses[statusClass - 1].sum();
+    }
+
+    public Histogram getDuration() {
+        return duration;
+    }
+
+    /**
+     * Mean handler time in milliseconds
+     */
+    public double getAverageMillis() {
+        long count = duration.getCount();
+        return count == 0 ? 0 : duration.getSumSeconds() * 1000 / count;
+    }
+}
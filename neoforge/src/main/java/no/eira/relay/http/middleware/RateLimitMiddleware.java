@@ -0,0 +1,46 @@
+package no.eira.relay.http.middleware;
+
+import com.sun.net.httpserver.HttpExchange;
+import no.eira.relay.http.RateLimiter;
+import no.eira.relay.http.RequestContext;
+import no.eira.relay.http.metrics.RelayMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Answers 429 when the client IP is over its rate limit
+ */
+public class RateLimitMiddleware implements Middleware {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitMiddleware(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void handle(RequestContext context, Chain next) throws IOException {
+        String clientIp = context.clientIp();
+        if (rateLimiter.isAllowed(clientIp)) {
+            next.proceed(context);
+            return;
+        }
+        RelayMetrics.RATE_LIMITED_REQUESTS.increment();
+        sendRateLimitResponse(context.exchange(), rateLimiter.getRetryAfterMs(clientIp));
+    }
+
+    private static void sendRateLimitResponse(HttpExchange exchange, long retryAfterMs) throws IOException {
+        String json = "{\"error\": \"Rate limit exceeded\", \"retryAfterMs\": " + retryAfterMs + "}";
+        byte[] responseBytes = json.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf((retryAfterMs + 999) / 1000)); // Seconds
+        exchange.sendResponseHeaders(429, responseBytes.length);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+}
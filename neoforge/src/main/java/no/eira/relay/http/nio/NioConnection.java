@@ -0,0 +1,449 @@
+package no.eira.relay.http.nio;
+
+import com.sun.net.httpserver.Headers;
+import no.eira.relay.Constants;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One client connection of the NIO server.
+ *
+ * Reading and parsing happen on the selector thread: bytes are appended to a
+ * per-connection array and the request head is parsed in place once the blank
+ * line arrives. While an exchange is running the connection stops reading, so
+ * pipelined requests wait in the array until the response is complete.
+ *
+ * Writing happens on the thread that handles the exchange. When the socket
+ * buffer is full, the writer waits for the selector to report it writable.
+ */
+final class NioConnection {
+
+    private static final int MAX_HEAD_BYTES = 8192;
+    private static final int INITIAL_INPUT_BYTES = 2048;
+    private static final byte[] EMPTY_BODY = new byte[0];
+    private static final byte[] CONTINUE =
+        "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final NioHttpServer server;
+    private final NioHttpServer.SelectorLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+
+    // Unconsumed input is in[start, end); the head search resumes at scanFrom
+    private byte[] in = new byte[INITIAL_INPUT_BYTES];
+    private int start;
+    private int end;
+    private int scanFrom;
+    private RequestHead pendingHead;
+
+    // Selector thread only
+    private boolean inFlight;
+    private int requestCount;
+    private long lastActive = System.nanoTime();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Condition writableCondition = writeLock.newCondition();
+    private boolean writable;
+
+    NioConnection(NioHttpServer server, NioHttpServer.SelectorLoop loop, SocketChannel channel, SelectionKey key) throws IOException {
+        this.server = server;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    BufferPool getBufferPool() {
+        return server.getBufferPool();
+    }
+
+    boolean isIdleFor(long now, long timeoutNanos) {
+        return !inFlight && now - lastActive >= timeoutNanos;
+    }
+
+    // Reading (selector thread)
+
+    void onReadable(ByteBuffer readBuffer) throws IOException {
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read < 0) {
+            close();
+            return;
+        }
+        if (read == 0) return;
+
+        readBuffer.flip();
+        ensureCapacity(read);
+        readBuffer.get(in, end, read);
+        end += read;
+        lastActive = System.nanoTime();
+        processInput();
+    }
+
+    private void ensureCapacity(int extra) {
+        if (end + extra <= in.length) return;
+        if (start > 0) {
+            // Move unconsumed bytes to the front first
+            System.arraycopy(in, start, in, 0, end - start);
+            end -= start;
+            scanFrom -= start;
+            start = 0;
+        }
+        if (end + extra > in.length) {
+            in = Arrays.copyOf(in, Math.max(in.length * 2, end + extra));
+        }
+    }
+
+    /**
+     * Start an exchange if a complete request is buffered
+     */
+    private void processInput() throws IOException {
+        if (inFlight || closed.get()) return;
+
+        if (pendingHead == null) {
+            // Tolerate empty lines between requests
+            while (end - start >= 2 && in[start] == '\r' && in[start + 1] == '\n') {
+                start += 2;
+            }
+            int headEnd = findHeadEnd();
+            if (headEnd < 0) {
+                if (end - start > MAX_HEAD_BYTES) {
+                    sendErrorAndClose(431, "Request Header Fields Too Large");
+                }
+                return;
+            }
+            RequestHead head = parseHead(headEnd);
+            if (head == null) return; // Error already sent
+            start = headEnd;
+            scanFrom = start;
+            pendingHead = head;
+
+            if (head.expectContinue && head.contentLength > 0 && head.contentLength <= server.getMaxBodyBytes()
+                    && end - start < head.contentLength) {
+                writeFromLoop(ByteBuffer.wrap(CONTINUE));
+            }
+        }
+
+        RequestHead head = pendingHead;
+        boolean bodyTooLarge = head.contentLength > server.getMaxBodyBytes();
+        int bodyLength = bodyTooLarge ? 0 : (int) head.contentLength;
+        if (end - start < bodyLength) {
+            return; // Wait for the rest of the body
+        }
+
+        byte[] body = bodyLength == 0 ? EMPTY_BODY : Arrays.copyOfRange(in, start, start + bodyLength);
+        start += bodyLength;
+        if (bodyTooLarge) {
+            // The handler answers 413 from Content-Length; the unread body is dropped with the connection
+            start = end;
+            head.keepAlive = false;
+        }
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+        scanFrom = start;
+        pendingHead = null;
+
+        startExchange(head, body);
+    }
+
+    private int findHeadEnd() {
+        for (int i = Math.max(start, scanFrom - 3); i + 3 < end; i++) {
+            if (in[i] == '\r' && in[i + 1] == '\n' && in[i + 2] == '\r' && in[i + 3] == '\n') {
+                return i + 4;
+            }
+        }
+        scanFrom = end;
+        return -1;
+    }
+
+    /**
+     * Parse the request line and headers in in[start, headEnd)
+     * @return The head, or null if an error response was sent
+     */
+    private RequestHead parseHead(int headEnd) throws IOException {
+        int lineEnd = indexOfCrlf(start, headEnd);
+        int firstSpace = indexOf((byte) ' ', start, lineEnd);
+        int secondSpace = firstSpace < 0 ? -1 : indexOf((byte) ' ', firstSpace + 1, lineEnd);
+        if (secondSpace < 0) {
+            sendErrorAndClose(400, "Bad Request");
+            return null;
+        }
+
+        String method = ascii(start, firstSpace);
+        String target = ascii(firstSpace + 1, secondSpace);
+        String protocol = ascii(secondSpace + 1, lineEnd);
+        if (!protocol.equals("HTTP/1.1") && !protocol.equals("HTTP/1.0")) {
+            sendErrorAndClose(505, "HTTP Version Not Supported");
+            return null;
+        }
+
+        URI uri;
+        try {
+            uri = new URI(target);
+        } catch (URISyntaxException e) {
+            sendErrorAndClose(400, "Bad Request");
+            return null;
+        }
+
+        Headers headers = new Headers();
+        int lineStart = lineEnd + 2;
+        while (lineStart < headEnd - 2) {
+            lineEnd = indexOfCrlf(lineStart, headEnd);
+            int colon = indexOf((byte) ':', lineStart, lineEnd);
+            if (colon <= lineStart) {
+                sendErrorAndClose(400, "Bad Request");
+                return null;
+            }
+            int valueStart = colon + 1;
+            int valueEnd = lineEnd;
+            while (valueStart < valueEnd && (in[valueStart] == ' ' || in[valueStart] == '\t')) valueStart++;
+            while (valueEnd > valueStart && (in[valueEnd - 1] == ' ' || in[valueEnd - 1] == '\t')) valueEnd--;
+            headers.add(ascii(lineStart, colon), ascii(valueStart, valueEnd));
+            lineStart = lineEnd + 2;
+        }
+
+        if (headers.containsKey("Transfer-Encoding")) {
+            sendErrorAndClose(411, "Length Required");
+            return null;
+        }
+
+        long contentLength = 0;
+        String contentLengthHeader = headers.getFirst("Content-Length");
+        if (contentLengthHeader != null) {
+            try {
+                contentLength = Long.parseLong(contentLengthHeader);
+            } catch (NumberFormatException e) {
+                contentLength = -1;
+            }
+            if (contentLength < 0) {
+                sendErrorAndClose(400, "Bad Request");
+                return null;
+            }
+        }
+
+        String connection = headers.getFirst("Connection");
+        String connectionLower = connection != null ? connection.toLowerCase(Locale.ROOT) : "";
+        boolean keepAlive = protocol.equals("HTTP/1.1")
+            ? !connectionLower.contains("close")
+            : connectionLower.contains("keep-alive");
+
+        String expect = headers.getFirst("Expect");
+        boolean expectContinue = expect != null && expect.equalsIgnoreCase("100-continue");
+
+        return new RequestHead(method, uri, protocol, headers, contentLength, keepAlive, expectContinue);
+    }
+
+    private int indexOfCrlf(int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            if (in[i] == '\r' && in[i + 1] == '\n') return i;
+        }
+        return to;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (in[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private String ascii(int from, int to) {
+        return new String(in, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private void startExchange(RequestHead head, byte[] body) throws IOException {
+        inFlight = true;
+        requestCount++;
+        key.interestOps(0);
+
+        String path = head.uri.getPath();
+        NioHttpContext context = path != null ? server.findContext(path) : null;
+        if (context == null) {
+            sendErrorAndClose(404, "Not Found");
+            return;
+        }
+
+        boolean keepAlive = head.keepAlive && requestCount < server.getKeepAliveMaxRequests() && server.isRunning();
+        NioHttpExchange exchange = new NioHttpExchange(this, context, head.method, head.uri, head.protocol,
+            head.headers, body, keepAlive);
+        server.dispatch(() -> runExchange(exchange, context));
+    }
+
+    private void runExchange(NioHttpExchange exchange, NioHttpContext context) {
+        try {
+            context.handle(exchange);
+        } catch (Throwable e) {
+            Constants.LOG.error("Error handling {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            exchange.abort();
+        }
+    }
+
+    /**
+     * Called when an exchange has finished its response
+     */
+    void responseComplete(boolean keepAlive) {
+        if (!keepAlive) {
+            close();
+            return;
+        }
+        loop.execute(this::resume);
+    }
+
+    private void resume() {
+        if (closed.get()) return;
+        inFlight = false;
+        lastActive = System.nanoTime();
+        try {
+            processInput();
+            if (!inFlight && !closed.get()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+    }
+
+    private void sendErrorAndClose(int statusCode, String reason) {
+        byte[] body = ("{\"error\": \"" + reason + "\"}").getBytes(StandardCharsets.ISO_8859_1);
+        String head = "HTTP/1.1 " + statusCode + " " + reason + "\r\n" +
+            "Content-Type: application/json\r\n" +
+            "Content-Length: " + body.length + "\r\n" +
+            "Connection: close\r\n\r\n";
+        try {
+            writeFromLoop(ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)));
+            writeFromLoop(ByteBuffer.wrap(body));
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        close();
+    }
+
+    // Short writes from the selector thread cannot wait for writability
+    private void writeFromLoop(ByteBuffer buffer) throws IOException {
+        channel.write(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IOException("Socket buffer full");
+        }
+    }
+
+    // Writing (exchange thread)
+
+    void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    void write(ByteBuffer[] buffers) throws IOException {
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            if (channel.write(buffers) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        if (loop.inLoop()) {
+            // A shed exchange runs on the selector thread, which cannot wait for itself
+            throw new IOException("Socket buffer full");
+        }
+
+        writeLock.lock();
+        try {
+            writable = false;
+            loop.execute(() -> {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            });
+            long remaining = server.getIdleTimeoutNanos();
+            while (!writable) {
+                if (closed.get()) {
+                    throw new IOException("Connection closed");
+                }
+                if (remaining <= 0) {
+                    throw new IOException("Write timed out");
+                }
+                remaining = writableCondition.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing");
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void onWritable() {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        signalWriters(true);
+    }
+
+    private void signalWriters(boolean nowWritable) {
+        writeLock.lock();
+        try {
+            writable = nowWritable || writable;
+            writableCondition.signalAll();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        key.cancel();
+        NioHttpServer.closeQuietly(channel);
+        signalWriters(false);
+    }
+
+    private static final class RequestHead {
+        final String method;
+        final URI uri;
+        final String protocol;
+        final Headers headers;
+        final long contentLength;
+        final boolean expectContinue;
+        boolean keepAlive;
+
+        RequestHead(String method, URI uri, String protocol, Headers headers, long contentLength,
+                    boolean keepAlive, boolean expectContinue) {
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.headers = headers;
+            this.contentLength = contentLength;
+            this.keepAlive = keepAlive;
+            this.expectContinue = expectContinue;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package no.eira.relay.http.nio;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import no.eira.relay.Constants;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP/1.1 server on NIO selectors, usable anywhere a JDK HttpServer is.
+ *
+ * An accept thread hands new connections round-robin to a fixed set of
+ * selector threads. Each selector thread reads into one reusable direct buffer
+ * and parses request heads in place; complete requests are run on the
+ * configured executor as ordinary HttpExchanges, so existing handlers work
+ * unchanged. Responses are written from the handler thread through pooled
+ * direct buffers, falling back to the selector only when the socket is full.
+ *
+ * Connections are kept alive for up to keepAliveMaxRequests requests and
+ * closed after idleTimeoutSeconds without a request. Requests with a chunked
+ * body are answered with 411 (clients here always send Content-Length).
+ */
+public class NioHttpServer extends HttpServer {
+
+    private static final int MAX_POOLED_BUFFERS = 256;
+
+    private final int selectorThreads;
+    private final int keepAliveMaxRequests;
+    private final long idleTimeoutNanos;
+    private final int maxBodyBytes;
+    private final BufferPool bufferPool;
+
+    private final List<NioHttpContext> contexts = new CopyOnWriteArrayList<>();
+    private volatile Executor executor;
+    private ServerSocketChannel serverChannel;
+    private InetSocketAddress address;
+    private SelectorLoop[] loops;
+    private volatile boolean running;
+
+    /**
+     * Create an unbound server
+     * @param selectorThreads Threads reading from sockets
+     * @param bufferSize Size of the pooled read and write buffers
+     * @param keepAliveMaxRequests Requests served on one connection before it is closed
+     * @param idleTimeoutSeconds Seconds an idle connection is kept open
+     * @param maxBodyBytes Largest request body buffered; larger requests reach the handler with an empty body
+     */
+    public NioHttpServer(int selectorThreads, int bufferSize, int keepAliveMaxRequests,
+                         int idleTimeoutSeconds, int maxBodyBytes) {
+        this.selectorThreads = Math.max(1, selectorThreads);
+        this.keepAliveMaxRequests = Math.max(1, keepAliveMaxRequests);
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(1, idleTimeoutSeconds));
+        this.maxBodyBytes = maxBodyBytes;
+        this.bufferPool = new BufferPool(bufferSize, MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * Create a server bound to the given address
+     */
+    public static NioHttpServer create(InetSocketAddress address, int selectorThreads, int bufferSize,
+                                       int keepAliveMaxRequests, int idleTimeoutSeconds, int maxBodyBytes) throws IOException {
+        NioHttpServer server = new NioHttpServer(selectorThreads, bufferSize, keepAliveMaxRequests,
+            idleTimeoutSeconds, maxBodyBytes);
+        server.bind(address, 0);
+        return server;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Server already bound");
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        channel.bind(address, backlog);
+        serverChannel = channel;
+        this.address = (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null) {
+            throw new IllegalStateException("Server not bound");
+        }
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+        running = true;
+
+        loops = new SelectorLoop[selectorThreads];
+        for (int i = 0; i < loops.length; i++) {
+            try {
+                loops[i] = new SelectorLoop();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open selector", e);
+            }
+            Thread.ofPlatform().daemon().name("EiraRelay-NIO-" + i).start(loops[i]);
+        }
+        Thread.ofPlatform().daemon().name("EiraRelay-NIO-accept").start(this::acceptLoop);
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                return; // Server stopped
+            } catch (IOException e) {
+                if (running) {
+                    Constants.LOG.error("NIO accept failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting connections and close all open ones. In-flight exchanges
+     * are given up to delay seconds to finish.
+     */
+    @Override
+    public void stop(int delay) {
+        if (!running) return;
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(0, delay));
+        for (SelectorLoop loop : loops) {
+            loop.shutdown(deadline);
+        }
+    }
+
+    @Override
+    public void setExecutor(Executor executor) {
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+        this.executor = executor;
+    }
+
+    @Override
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public HttpContext createContext(String path, HttpHandler handler) {
+        NioHttpContext context = createContext(path);
+        context.setHandler(handler);
+        return context;
+    }
+
+    @Override
+    public NioHttpContext createContext(String path) {
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Invalid context path: " + path);
+        }
+        for (NioHttpContext context : contexts) {
+            if (context.getPath().equals(path)) {
+                throw new IllegalArgumentException("Context already exists: " + path);
+            }
+        }
+        NioHttpContext context = new NioHttpContext(this, path, null);
+        contexts.add(context);
+        return context;
+    }
+
+    @Override
+    public void removeContext(String path) {
+        if (!contexts.removeIf(context -> context.getPath().equals(path))) {
+            throw new IllegalArgumentException("No context: " + path);
+        }
+    }
+
+    @Override
+    public void removeContext(HttpContext context) {
+        if (!contexts.remove(context)) {
+            throw new IllegalArgumentException("No context: " + context.getPath());
+        }
+    }
+
+    @Override
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Find the context with the longest path prefix matching the request path
+     */
+    NioHttpContext findContext(String path) {
+        NioHttpContext best = null;
+        for (NioHttpContext context : contexts) {
+            String prefix = context.getPath();
+            if (path.startsWith(prefix) && (best == null || prefix.length() > best.getPath().length())) {
+                best = context;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Run an exchange on the executor (inline if none is set)
+     */
+    void dispatch(Runnable exchange) {
+        Executor current = executor;
+        if (current != null) {
+            current.execute(exchange);
+        } else {
+            exchange.run();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    int getKeepAliveMaxRequests() {
+        return keepAliveMaxRequests;
+    }
+
+    long getIdleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * One selector thread and the connections registered with it
+     */
+    final class SelectorLoop implements Runnable {
+        private static final long SWEEP_INTERVAL_MS = 1000;
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Shared by every connection on this loop; data is copied out before the next read
+        private final ByteBuffer readBuffer;
+        private volatile Thread thread;
+        private volatile long closeDeadline;
+        private volatile boolean closing;
+
+        SelectorLoop() throws IOException {
+            this.selector = Selector.open();
+            this.readBuffer = ByteBuffer.allocateDirect(bufferPool.getBufferSize());
+        }
+
+        /**
+         * Run a task on this loop's thread
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new NioConnection(NioHttpServer.this, this, channel, key));
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        void shutdown(long deadline) {
+            closeDeadline = deadline;
+            closing = true;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MS);
+            try {
+                while (true) {
+                    selector.select(SWEEP_INTERVAL_MS);
+
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (connection == null || !key.isValid()) continue;
+                        try {
+                            if (key.isWritable()) {
+                                connection.onWritable();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable(readBuffer);
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            connection.close();
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    if (closing) {
+                        if (closeIdle(now, true)) break;
+                    } else if (now - nextSweep >= 0) {
+                        closeIdle(now, false);
+                        nextSweep = now + TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MS);
+                    }
+                }
+            } catch (IOException e) {
+                Constants.LOG.error("NIO selector failed", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof NioConnection connection) {
+                        connection.close();
+                    }
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        /**
+         * Close connections that have been idle too long, or all idle ones when shutting down
+         * @return true when shutting down and no connections are left
+         */
+        private boolean closeIdle(long now, boolean shuttingDown) {
+            boolean pastDeadline = shuttingDown && now - closeDeadline >= 0;
+            int open = 0;
+            for (SelectionKey key : selector.keys()) {
+                if (!key.isValid() || !(key.attachment() instanceof NioConnection connection)) continue;
+                if (pastDeadline || connection.isIdleFor(now, shuttingDown ? 0 : idleTimeoutNanos)) {
+                    connection.close();
+                } else {
+                    open++;
+                }
+            }
+            return shuttingDown && open == 0;
+        }
+    }
+
+    static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing left to clean up
+        }
+    }
+}
@@ -2,6 +2,9 @@ package no.eira.relay.platform.config;
 
 import net.neoforged.fml.loading.FMLPaths;
 import net.neoforged.neoforge.common.ModConfigSpec;
+import no.eira.relay.enums.EnumAccessLogLevel;
+import no.eira.relay.enums.EnumExecutorMode;
+import no.eira.relay.enums.EnumTransport;
 import org.apache.commons.lang3.tuple.Pair;
 
 import java.io.*;
@@ -23,12 +26,43 @@ public class HttpServerConfig implements IHttpServerConfig {
 
     // ModConfig values
     private static ModConfigSpec.ConfigValue<Integer> port;
+    private static ModConfigSpec.ConfigValue<Integer> maxBodyBytes;
+    private static ModConfigSpec.ConfigValue<EnumTransport> transport;
+    private static ModConfigSpec.ConfigValue<Integer> nioSelectorThreads;
+    private static ModConfigSpec.ConfigValue<Integer> nioBufferSize;
+    private static ModConfigSpec.ConfigValue<Integer> keepAliveMaxRequests;
+    private static ModConfigSpec.ConfigValue<Integer> idleTimeoutSeconds;
+    private static ModConfigSpec.ConfigValue<EnumExecutorMode> executorMode;
+    private static ModConfigSpec.ConfigValue<Integer> maxConcurrentRequests;
+    private static ModConfigSpec.ConfigValue<Integer> workerThreads;
+    private static ModConfigSpec.ConfigValue<Integer> workerQueueCapacity;
+    private static ModConfigSpec.ConfigValue<Integer> dispatchBudgetMillis;
+    private static ModConfigSpec.ConfigValue<Integer> waitTimeoutMillis;
+    private static ModConfigSpec.ConfigValue<Integer> connectTimeoutSeconds;
+    private static ModConfigSpec.ConfigValue<Integer> requestTimeoutSeconds;
+    private static ModConfigSpec.ConfigValue<Boolean> preferHttp2;
+    private static ModConfigSpec.ConfigValue<Integer> clientThreads;
     private static ModConfigSpec.ConfigValue<Boolean> rateLimitEnabled;
     private static ModConfigSpec.ConfigValue<Integer> rateLimitPerMinute;
+    private static ModConfigSpec.ConfigValue<Integer> rateLimitMaxClients;
+    private static ModConfigSpec.ConfigValue<Boolean> idempotencyEnabled;
+    private static ModConfigSpec.ConfigValue<Integer> idempotencyWindowSeconds;
+    private static ModConfigSpec.ConfigValue<Integer> idempotencyMaxKeys;
     private static ModConfigSpec.ConfigValue<Boolean> requireAuth;
     private static ModConfigSpec.ConfigValue<List<? extends String>> apiKeys;
+    private static ModConfigSpec.ConfigValue<Boolean> signatureRequired;
+    private static ModConfigSpec.ConfigValue<Integer> signatureMaxSkewSeconds;
+    private static ModConfigSpec.ConfigValue<Integer> replayCacheSize;
     private static ModConfigSpec.ConfigValue<Boolean> corsEnabled;
     private static ModConfigSpec.ConfigValue<List<? extends String>> corsOrigins;
+    private static ModConfigSpec.ConfigValue<Boolean> metricsEnabled;
+    private static ModConfigSpec.ConfigValue<EnumAccessLogLevel> accessLogLevel;
+    private static ModConfigSpec.ConfigValue<Double> accessLogSampleRate;
+    private static ModConfigSpec.ConfigValue<Integer> eventStreamMaxClients;
+    private static ModConfigSpec.ConfigValue<Integer> eventStreamBufferSize;
+    private static ModConfigSpec.ConfigValue<Boolean> webSocketEnabled;
+    private static ModConfigSpec.ConfigValue<Integer> webSocketPort;
+    private static ModConfigSpec.ConfigValue<Integer> webSocketMaxConnections;
 
     static {
         Pair<HttpServerConfig, ModConfigSpec> pair = new ModConfigSpec.Builder().configure(HttpServerConfig::new);
@@ -48,6 +82,82 @@ public class HttpServerConfig implements IHttpServerConfig {
                 .comment("Http Server Port")
                 .defineInRange("port", 8080, 0, 65535);
 
+        maxBodyBytes = builder
+                .comment("Largest request body accepted, in bytes. Larger requests get 413")
+                .defineInRange("maxBodyBytes", 65536, 1024, 16777216);
+
+        transport = builder
+                .comment("Network transport: JDK (built-in HttpServer) or NIO (selector threads, pooled buffers, keep-alive limits)")
+                .defineEnum("transport", EnumTransport.JDK);
+
+        builder.pop();
+
+        builder.push("NIO Transport");
+
+        nioSelectorThreads = builder
+                .comment("Threads reading from client connections when transport is NIO")
+                .defineInRange("selectorThreads", 2, 1, 64);
+
+        nioBufferSize = builder
+                .comment("Size in bytes of the pooled read and write buffers")
+                .defineInRange("bufferSize", 16384, 4096, 1048576);
+
+        keepAliveMaxRequests = builder
+                .comment("Requests served on one connection before it is closed")
+                .defineInRange("keepAliveMaxRequests", 1000, 1, 1000000);
+
+        idleTimeoutSeconds = builder
+                .comment("Seconds an idle connection is kept open")
+                .defineInRange("idleTimeoutSeconds", 30, 1, 3600);
+
+        builder.pop();
+
+        builder.push("Request Execution");
+
+        executorMode = builder
+                .comment("How requests are executed: VIRTUAL (one virtual thread per request) or POOL (fixed thread pool)")
+                .defineEnum("mode", EnumExecutorMode.VIRTUAL);
+
+        maxConcurrentRequests = builder
+                .comment("Maximum requests in flight in VIRTUAL mode before new requests get 503")
+                .defineInRange("maxConcurrentRequests", 512, 1, 100000);
+
+        workerThreads = builder
+                .comment("Number of worker threads in POOL mode")
+                .defineInRange("workerThreads", 8, 1, 256);
+
+        workerQueueCapacity = builder
+                .comment("Requests that may wait for a worker in POOL mode before new requests get 503")
+                .defineInRange("queueCapacity", 256, 1, 100000);
+
+        dispatchBudgetMillis = builder
+                .comment("Milliseconds per server tick spent running queued HTTP world actions; the rest waits for the next tick")
+                .defineInRange("dispatchBudgetMillis", 5, 1, 50);
+
+        waitTimeoutMillis = builder
+                .comment("Milliseconds a request with ?wait=true waits for its world action before getting 504")
+                .defineInRange("waitTimeoutMillis", 5000, 100, 60000);
+
+        builder.pop();
+
+        builder.push("Outbound Requests");
+
+        connectTimeoutSeconds = builder
+                .comment("Seconds to wait for a connection when an HTTP Sender block fires")
+                .defineInRange("connectTimeoutSeconds", 10, 1, 300);
+
+        requestTimeoutSeconds = builder
+                .comment("Seconds to wait for a response when an HTTP Sender block fires")
+                .defineInRange("requestTimeoutSeconds", 30, 1, 600);
+
+        preferHttp2 = builder
+                .comment("Prefer HTTP/2 for outbound requests (falls back to HTTP/1.1 if the server does not support it)")
+                .define("preferHttp2", true);
+
+        clientThreads = builder
+                .comment("Threads used by the shared outbound HTTP client")
+                .defineInRange("clientThreads", 4, 1, 64);
+
         builder.pop();
 
         builder.push("Rate Limiting");
@@ -60,6 +170,26 @@ public class HttpServerConfig implements IHttpServerConfig {
                 .comment("Maximum requests per minute per IP address")
                 .defineInRange("requestsPerMinute", 100, 1, 10000);
 
+        rateLimitMaxClients = builder
+                .comment("Maximum client IPs tracked by the rate limiter; the least recently active are evicted beyond this")
+                .defineInRange("maxTrackedClients", 10000, 100, 1000000);
+
+        builder.pop();
+
+        builder.push("Idempotency");
+
+        idempotencyEnabled = builder
+                .comment("Answer repeated POST requests with the same Idempotency-Key header from a cache instead of running them again")
+                .define("enabled", true);
+
+        idempotencyWindowSeconds = builder
+                .comment("Seconds a response is kept for replay")
+                .defineInRange("windowSeconds", 300, 1, 86400);
+
+        idempotencyMaxKeys = builder
+                .comment("Maximum keys remembered at once; the oldest are dropped first")
+                .defineInRange("maxKeys", 10000, 100, 1000000);
+
         builder.pop();
 
         builder.push("Authentication");
@@ -74,6 +204,22 @@ public class HttpServerConfig implements IHttpServerConfig {
 
         builder.pop();
 
+        builder.push("Webhook Signatures");
+
+        signatureRequired = builder
+                .comment("Receiver blocks with a secret only accept HMAC-signed requests (X-Eira-Timestamp and X-Eira-Signature headers); Bearer and ?token= are refused")
+                .define("requireSignature", false);
+
+        signatureMaxSkewSeconds = builder
+                .comment("Largest difference in seconds between a signed request's timestamp and the server clock")
+                .defineInRange("maxSkewSeconds", 300, 10, 3600);
+
+        replayCacheSize = builder
+                .comment("Signed requests remembered to reject replays within the skew window")
+                .defineInRange("replayCacheSize", 100000, 1000, 10000000);
+
+        builder.pop();
+
         builder.push("CORS");
 
         corsEnabled = builder
@@ -85,6 +231,54 @@ public class HttpServerConfig implements IHttpServerConfig {
                 .defineList("origins", List.of("*"), obj -> obj instanceof String);
 
         builder.pop();
+
+        builder.push("Middleware");
+
+        metricsEnabled = builder
+                .comment("Count requests and record handler time per route (shown in /status and /metrics)")
+                .define("metrics", true);
+
+        builder.pop();
+
+        builder.push("Access Log");
+
+        accessLogLevel = builder
+                .comment("Requests to log: OFF, ERROR (5xx), WARN (4xx and 5xx) or INFO (all). Written off the request thread.")
+                .defineEnum("level", EnumAccessLogLevel.INFO);
+
+        accessLogSampleRate = builder
+                .comment("Fraction of successful requests logged at INFO (1.0 = all). Errors are always logged.")
+                .defineInRange("sampleRate", 1.0, 0.0, 1.0);
+
+        builder.pop();
+
+        builder.push("Event Stream");
+
+        eventStreamMaxClients = builder
+                .comment("Maximum clients connected to GET /events at once")
+                .defineInRange("maxClients", 64, 1, 1024);
+
+        eventStreamBufferSize = builder
+                .comment("Events buffered per client; a client that falls this far behind is disconnected")
+                .defineInRange("bufferSize", 256, 16, 65536);
+
+        builder.pop();
+
+        builder.push("WebSocket");
+
+        webSocketEnabled = builder
+                .comment("Accept persistent WebSocket connections at ws://<address>:<port>/ws")
+                .define("enabled", false);
+
+        webSocketPort = builder
+                .comment("WebSocket port (separate from the HTTP port)")
+                .defineInRange("port", 8081, 0, 65535);
+
+        webSocketMaxConnections = builder
+                .comment("Maximum WebSocket connections open at once")
+                .defineInRange("maxConnections", 64, 1, 1024);
+
+        builder.pop();
     }
 
     public static void loadGlobalParamsConfig() {
@@ -177,6 +371,86 @@ public class HttpServerConfig implements IHttpServerConfig {
         return port != null ? port.get() : 8080;
     }
 
+    @Override
+    public int getMaxBodyBytes() {
+        return maxBodyBytes != null ? maxBodyBytes.get() : 65536;
+    }
+
+    @Override
+    public EnumTransport getTransport() {
+        return transport != null ? transport.get() : EnumTransport.JDK;
+    }
+
+    @Override
+    public int getNioSelectorThreads() {
+        return nioSelectorThreads != null ? nioSelectorThreads.get() : 2;
+    }
+
+    @Override
+    public int getNioBufferSize() {
+        return nioBufferSize != null ? nioBufferSize.get() : 16384;
+    }
+
+    @Override
+    public int getKeepAliveMaxRequests() {
+        return keepAliveMaxRequests != null ? keepAliveMaxRequests.get() : 1000;
+    }
+
+    @Override
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds != null ? idleTimeoutSeconds.get() : 30;
+    }
+
+    @Override
+    public EnumExecutorMode getExecutorMode() {
+        return executorMode != null ? executorMode.get() : EnumExecutorMode.VIRTUAL;
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests != null ? maxConcurrentRequests.get() : 512;
+    }
+
+    @Override
+    public int getWorkerThreads() {
+        return workerThreads != null ? workerThreads.get() : 8;
+    }
+
+    @Override
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity != null ? workerQueueCapacity.get() : 256;
+    }
+
+    @Override
+    public int getDispatchBudgetMillis() {
+        return dispatchBudgetMillis != null ? dispatchBudgetMillis.get() : 5;
+    }
+
+    @Override
+    public int getWaitTimeoutMillis() {
+        return waitTimeoutMillis != null ? waitTimeoutMillis.get() : 5000;
+    }
+
+    @Override
+    public int getConnectTimeoutSeconds() {
+        return connectTimeoutSeconds != null ? connectTimeoutSeconds.get() : 10;
+    }
+
+    @Override
+    public int getRequestTimeoutSeconds() {
+        return requestTimeoutSeconds != null ? requestTimeoutSeconds.get() : 30;
+    }
+
+    @Override
+    public boolean preferHttp2() {
+        return preferHttp2 == null || preferHttp2.get();
+    }
+
+    @Override
+    public int getClientThreads() {
+        return clientThreads != null ? clientThreads.get() : 4;
+    }
+
     @Override
     public List<GlobalParam> getGlobalParams() {
         return globalParams;
@@ -197,6 +471,26 @@ public class HttpServerConfig implements IHttpServerConfig {
         return rateLimitPerMinute != null ? rateLimitPerMinute.get() : 100;
     }
 
+    @Override
+    public int getRateLimitMaxClients() {
+        return rateLimitMaxClients != null ? rateLimitMaxClients.get() : 10000;
+    }
+
+    @Override
+    public boolean isIdempotencyEnabled() {
+        return idempotencyEnabled != null ? idempotencyEnabled.get() : true;
+    }
+
+    @Override
+    public int getIdempotencyWindowSeconds() {
+        return idempotencyWindowSeconds != null ? idempotencyWindowSeconds.get() : 300;
+    }
+
+    @Override
+    public int getIdempotencyMaxKeys() {
+        return idempotencyMaxKeys != null ? idempotencyMaxKeys.get() : 10000;
+    }
+
     @Override
     public boolean requireAuth() {
         return requireAuth != null && requireAuth.get();
@@ -209,6 +503,21 @@ public class HttpServerConfig implements IHttpServerConfig {
         return (List<String>) apiKeys.get();
     }
 
+    @Override
+    public boolean isSignatureRequired() {
+        return signatureRequired != null && signatureRequired.get();
+    }
+
+    @Override
+    public int getSignatureMaxSkewSeconds() {
+        return signatureMaxSkewSeconds != null ? signatureMaxSkewSeconds.get() : 300;
+    }
+
+    @Override
+    public int getReplayCacheSize() {
+        return replayCacheSize != null ? replayCacheSize.get() : 100000;
+    }
+
     @Override
     public boolean isCorsEnabled() {
         return corsEnabled != null && corsEnabled.get();
@@ -220,5 +529,44 @@ public class HttpServerConfig implements IHttpServerConfig {
         if (corsOrigins == null) return List.of("*");
         return (List<String>) corsOrigins.get();
     }
-}
 
+    @Override
+    public boolean isMetricsEnabled() {
+        return metricsEnabled != null ? metricsEnabled.get() : true;
+    }
+
+    @Override
+    public EnumAccessLogLevel getAccessLogLevel() {
+        return accessLogLevel != null ? accessLogLevel.get() : EnumAccessLogLevel.INFO;
+    }
+
+    @Override
+    public double getAccessLogSampleRate() {
+        return accessLogSampleRate != null ? accessLogSampleRate.get() : 1.0;
+    }
+
+    @Override
+    public int getEventStreamMaxClients() {
+        return eventStreamMaxClients != null ? eventStreamMaxClients.get() : 64;
+    }
+
+    @Override
+    public int getEventStreamBufferSize() {
+        return eventStreamBufferSize != null ? eventStreamBufferSize.get() : 256;
+    }
+
+    @Override
+    public boolean isWebSocketEnabled() {
+        return webSocketEnabled != null ? webSocketEnabled.get() : false;
+    }
+
+    @Override
+    public int getWebSocketPort() {
+        return webSocketPort != null ? webSocketPort.get() : 8081;
+    }
+
+    @Override
+    public int getWebSocketMaxConnections() {
+        return webSocketMaxConnections != null ? webSocketMaxConnections.get() : 64;
+    }
+}
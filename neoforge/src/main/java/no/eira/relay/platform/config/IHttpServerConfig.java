@@ -1,10 +1,36 @@
 package no.eira.relay.platform.config;
 
+import no.eira.relay.enums.EnumAccessLogLevel;
+import no.eira.relay.enums.EnumExecutorMode;
+import no.eira.relay.enums.EnumTransport;
+
 import java.util.List;
 
 public interface IHttpServerConfig {
 
     int getPort();
+    int getMaxBodyBytes();
+
+    // Transport
+    EnumTransport getTransport();
+    int getNioSelectorThreads();
+    int getNioBufferSize();
+    int getKeepAliveMaxRequests();
+    int getIdleTimeoutSeconds();
+
+    // Request execution
+    EnumExecutorMode getExecutorMode();
+    int getMaxConcurrentRequests();
+    int getWorkerThreads();
+    int getWorkerQueueCapacity();
+    int getDispatchBudgetMillis();
+    int getWaitTimeoutMillis();
+
+    // Outbound requests (HTTP Sender)
+    int getConnectTimeoutSeconds();
+    int getRequestTimeoutSeconds();
+    boolean preferHttp2();
+    int getClientThreads();
 
     List<GlobalParam> getGlobalParams();
 
@@ -13,13 +39,40 @@ public interface IHttpServerConfig {
     // Rate limiting
     boolean isRateLimitEnabled();
     int getRateLimitPerMinute();
+    int getRateLimitMaxClients();
+
+    // Idempotency (Idempotency-Key header)
+    boolean isIdempotencyEnabled();
+    int getIdempotencyWindowSeconds();
+    int getIdempotencyMaxKeys();
 
     // Authentication
     boolean requireAuth();
     List<String> getApiKeys();
 
+    // Webhook signatures (receiver blocks)
+    boolean isSignatureRequired();
+    int getSignatureMaxSkewSeconds();
+    int getReplayCacheSize();
+
     // CORS
     boolean isCorsEnabled();
     List<String> getCorsOrigins();
+
+    // Middleware
+    boolean isMetricsEnabled();
+
+    // Access log
+    EnumAccessLogLevel getAccessLogLevel();
+    double getAccessLogSampleRate();
+
+    // Event stream (GET /events)
+    int getEventStreamMaxClients();
+    int getEventStreamBufferSize();
+
+    // WebSocket (/ws)
+    boolean isWebSocketEnabled();
+    int getWebSocketPort();
+    int getWebSocketMaxConnections();
 }
 
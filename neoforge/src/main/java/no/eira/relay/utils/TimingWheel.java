@@ -0,0 +1,144 @@
+package no.eira.relay.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel for tick-based timeouts.
+ *
+ * Entries are placed in the slot for their expiry tick (modulo the wheel size),
+ * so advancing one tick only looks at a single slot instead of every scheduled
+ * entry. Entries further out than one revolution share a slot with nearer ones
+ * and are skipped until their tick comes around. Each entry knows its place
+ * in its slot, so cancelling one is constant time.
+ *
+ * Not thread-safe; schedule and advance from the main server thread.
+ */
+public class TimingWheel<T> {
+
+    private final List<Timeout<T>>[] slots;
+    private final int mask;
+    private long currentTick;
+    private int size;
+
+    /**
+     * Create a timing wheel
+     * @param slotCount Number of slots, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int slotCount) {
+        int slotsRounded = Integer.highestOneBit(Math.max(1, slotCount - 1)) << 1;
+        this.slots = new List[slotsRounded];
+        this.mask = slotsRounded - 1;
+    }
+
+    /**
+     * Schedule a value to expire after the given number of ticks
+     * @param value The value passed back on expiry
+     * @param delayTicks Ticks from now (at least 1)
+     * @return A handle for cancelling the entry
+     */
+    public Timeout<T> schedule(T value, long delayTicks) {
+        long deadline = currentTick + Math.max(1, delayTicks);
+        int index = (int) (deadline & mask);
+        if (slots[index] == null) {
+            slots[index] = new ArrayList<>();
+        }
+        Timeout<T> timeout = new Timeout<>(value, deadline);
+        timeout.position = slots[index].size();
+        slots[index].add(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Remove a scheduled entry so it never expires
+     * @return false if it already expired or was cancelled
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.position < 0) return false;
+        removeAt(slots[(int) (timeout.deadline & mask)], timeout.position);
+        return true;
+    }
+
+    /**
+     * Move the wheel forward one tick and hand every value expiring on it to the consumer
+     */
+    public void advance(Consumer<T> onExpired) {
+        currentTick++;
+        List<Timeout<T>> slot = slots[(int) (currentTick & mask)];
+        if (slot == null || slot.isEmpty()) return;
+
+        int i = 0;
+        while (i < slot.size()) {
+            Timeout<T> timeout = slot.get(i);
+            if (timeout.deadline <= currentTick) {
+                // The moved entry lands at i and is checked on the next pass
+                removeAt(slot, i);
+                onExpired.accept(timeout.value);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // Swap-remove the entry at the position, keeping the moved entry's position current
+    private void removeAt(List<Timeout<T>> slot, int position) {
+        Timeout<T> removed = slot.get(position);
+        int last = slot.size() - 1;
+        if (position != last) {
+            Timeout<T> moved = slot.get(last);
+            slot.set(position, moved);
+            moved.position = position;
+        }
+        slot.remove(last);
+        removed.position = -1;
+        size--;
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Number of scheduled values that have not expired yet
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * A scheduled value, returned by schedule
+     */
+    public static final class Timeout<T> {
+        private final T value;
+        private final long deadline;
+        // Index in its slot, or -1 once expired or cancelled
+        private int position;
+
+        private Timeout(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public T value() {
+            return value;
+        }
+
+        /**
+         * The wheel tick the value expires on
+         */
+        public long deadline() {
+            return deadline;
+        }
+
+        public boolean isPending() {
+            return position >= 0;
+        }
+    }
+}